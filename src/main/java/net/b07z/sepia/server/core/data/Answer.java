@@ -1,10 +1,8 @@
 package net.b07z.sepia.server.core.data;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import net.b07z.sepia.server.core.server.ConfigDefaults;
-import net.b07z.sepia.server.core.tools.JSON;
+import net.b07z.sepia.server.core.tools.JsonMappers;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
@@ -28,6 +26,10 @@ public class Answer {
 	public static final String ANSWERS_INDEX = "answers";
 	public static final String ANSWERS_TYPE = "all";
 	
+	static {
+		JsonMappers.prepare(JsonMappers.Style.snake_case, Answer.class);		//create Jackson reader and writer before first request
+	}
+	
 	// NOTE: keep in sync with answers-mapping.json! Only this way we can use Jackson to automatically 
 	// serialize and deserialize from/to JSON.
 	private Language language;
@@ -282,9 +284,7 @@ public class Answer {
 	 * @param json - string with Answer in JSON format (as exported by toJsonString()).
 	 */
 	public static Answer importAnswerJSON(String json) throws IOException{
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
-		Answer answer = mapper.readValue(json, Answer.class);
+		Answer answer = JsonMappers.reader(JsonMappers.Style.snake_case, Answer.class).readValue(json);
 		return answer;
 	}
 	/**
@@ -292,8 +292,7 @@ public class Answer {
 	 * @param json - string with Answer in JSON format (as exported by toJsonString()).
 	 */
 	public static Answer importAnswerJSON(JSONObject json) throws IOException{
-		//Unfortunately this method has to convert back to string first :-(
-		return importAnswerJSON(json.toJSONString());
+		return JsonMappers.fromJson(JsonMappers.Style.snake_case, json, Answer.class);
 	}
 
 	/**
@@ -301,19 +300,21 @@ public class Answer {
 	 */
 	public String toJsonString() {
 		try {
-			ObjectMapper mapper = new ObjectMapper();
-			mapper.setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
-			return mapper.writeValueAsString(this);
+			return JsonMappers.writer(JsonMappers.Style.snake_case, getClass()).writeValueAsString(this);
 		} catch (JsonProcessingException e) {
 			throw new RuntimeException("Error serializing " + this + " to JSON", e);
 		}
 	}
 	/**
-	 * Convert object first to JSON string and then to JSONObject. Kind of stupid I know, but ...<br>
-	 * Throws error on parsing exception.
+	 * Convert object to JSONObject (directly, without JSON string in between).<br>
+	 * Throws error on serialization exception.
 	 */
 	public JSONObject toJson(){
-		return JSON.parseStringOrFail(toJsonString());
+		try {
+			return JsonMappers.toJson(JsonMappers.Style.snake_case, this);
+		} catch (IOException e) {
+			throw new RuntimeException("Error serializing " + this + " to JSON", e);
+		}
 	}
 
 	@Override
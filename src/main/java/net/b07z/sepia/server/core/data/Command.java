@@ -2,11 +2,9 @@ package net.b07z.sepia.server.core.data;
 
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.PropertyNamingStrategies;
-import com.fasterxml.jackson.databind.SerializationFeature;
 
 import net.b07z.sepia.server.core.tools.JSON;
+import net.b07z.sepia.server.core.tools.JsonMappers;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
@@ -23,6 +21,12 @@ public class Command {
 
 	//database types to organize commands
 	public static final String COMMANDS_TYPE = "all";
+	
+	static {
+		//create Jackson readers and writers before first request
+		JsonMappers.prepare(JsonMappers.Style.snake_case, Command.class);
+		JsonMappers.prepare(JsonMappers.Style.snake_case, Sentence.class);
+	}
 
 	//variables to define the command
 	private List<Sentence> sentences = new ArrayList<>();
@@ -46,9 +50,14 @@ public class Command {
 
 	public static Command importAnswerJSON(String json) {
 		try {
-			ObjectMapper mapper = new ObjectMapper();
-			mapper.setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
-			return mapper.readValue(json, Command.class);
+			return JsonMappers.reader(JsonMappers.Style.snake_case, Command.class).readValue(json);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	public static Command importAnswerJSON(JSONObject json) {
+		try {
+			return JsonMappers.fromJson(JsonMappers.Style.snake_case, json, Command.class);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -334,23 +343,22 @@ public class Command {
 	 * @return String in JSON format
 	 */
 	public String toJsonString() {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.enable(SerializationFeature.INDENT_OUTPUT);
-		mapper.enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
-		mapper.setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
 		try {
-			return mapper.writeValueAsString(this);
+			return JsonMappers.snakeCasePrettySortedWriter().writeValueAsString(this);
 		} catch (JsonProcessingException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
 	/**
-	 * Fist gets the string via {@link #toJsonString()} and then parses the result to a JSONObject.<br>
-	 * Note: this could/should be done in a more efficient way ...
+	 * Convert the command to a JSONObject (directly, without JSON string in between).
 	 */
 	public JSONObject toJson() {
-		return JSON.parseStringOrFail(toJsonString());
+		try {
+			return JsonMappers.toJson(JsonMappers.Style.snake_case, this);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 }
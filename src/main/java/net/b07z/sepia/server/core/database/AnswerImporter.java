@@ -37,12 +37,22 @@ public class AnswerImporter {
 	public void run(File file, Language language, boolean isMachineTranslated) throws IOException {
 		List<String> lines = Files.readAllLines(file.toPath());
 		int n = 0;
-		for (String line : lines) {
-			Answer answer = Answer.importAnswerString(line, language, isMachineTranslated);
-			//System.out.println(answer);
-			database.setAnyItemData(Answer.ANSWERS_INDEX, Answer.ANSWERS_TYPE, answer.toJson());		
-			//System.out.println(answer.toJsonString());
-			n++;
+		//write in batches (e.g. Elasticsearch "_bulk") instead of one call per answer
+		try (BatchWriter writer = new BatchWriter(database)){
+			for (String line : lines) {
+				Answer answer = Answer.importAnswerString(line, language, isMachineTranslated);
+				//System.out.println(answer);
+				writer.add(BatchAction.index(Answer.ANSWERS_INDEX, Answer.ANSWERS_TYPE, null, answer.toJson()));
+				//System.out.println(answer.toJsonString());
+				n++;
+			}
+			writer.flush();
+			if (writer.getFailedCount() > 0){
+				Debugger.println("Failed to import answers: " + writer.getFailedCount() + " of " + n, 1);
+			}
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Answer import was interrupted", e);
 		}
 		Debugger.println("Imported answers: " + n, 3);
 	}
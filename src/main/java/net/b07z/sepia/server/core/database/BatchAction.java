@@ -0,0 +1,89 @@
+package net.b07z.sepia.server.core.database;
+
+import org.json.simple.JSONObject;
+
+/**
+ * One write action (index, update or delete) of a batch, see {@link DatabaseInterface#writeBatch(java.util.List)}.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class BatchAction {
+
+	public enum Type {
+		index,		//create or replace item (random id if id is null)
+		update,		//update or create item (like updateItemData)
+		delete
+	}
+
+	private final Type type;
+	private final String index;
+	private final String docType;
+	private final String id;
+	private final JSONObject data;
+	private String dataString = null;
+
+	private BatchAction(Type type, String index, String docType, String id, JSONObject data){
+		this.type = type;
+		this.index = index;
+		this.docType = docType;
+		this.id = id;
+		this.data = data;
+	}
+
+	/**
+	 * Create or replace item at "index/type/id" (like setItemData) or add item with random id if id is null (like setAnyItemData).
+	 */
+	public static BatchAction index(String index, String type, String id, JSONObject data){
+		return new BatchAction(Type.index, index, type, id, data);
+	}
+	/**
+	 * Update or create item at "index/type/id" (like updateItemData).
+	 */
+	public static BatchAction update(String index, String type, String id, JSONObject data){
+		return new BatchAction(Type.update, index, type, id, data);
+	}
+	/**
+	 * Delete item at "index/type/id" (like deleteItem).
+	 */
+	public static BatchAction delete(String index, String type, String id){
+		return new BatchAction(Type.delete, index, type, id, null);
+	}
+
+	public Type getType(){
+		return type;
+	}
+	public String getIndex(){
+		return index;
+	}
+	public String getDocType(){
+		return docType;
+	}
+	public String getId(){
+		return id;
+	}
+	public JSONObject getData(){
+		return data;
+	}
+	/**
+	 * Data as JSON string (created once and cached, so don't modify data after first call).
+	 */
+	public String getDataString(){
+		if (dataString == null && data != null){
+			dataString = data.toJSONString();
+		}
+		return dataString;
+	}
+	/**
+	 * Rough size of this action in bytes (used to limit batch size).
+	 */
+	public int estimateSize(){
+		String d = getDataString();
+		return 64 + index.length() + docType.length() + ((id != null)? id.length() : 0) + ((d != null)? d.length() : 0);
+	}
+
+	@Override
+	public String toString(){
+		return type.name() + " " + index + "/" + docType + "/" + id;
+	}
+}
@@ -0,0 +1,299 @@
+package net.b07z.sepia.server.core.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import net.b07z.sepia.server.core.tools.Debugger;
+import net.b07z.sepia.server.core.tools.JSON;
+
+/**
+ * Buffers write actions and sends them in batches via {@link DatabaseInterface#writeBatch(List)} (e.g. Elasticsearch "_bulk").
+ * A batch is sent when it reaches the max. number of actions, the max. size in bytes or when the first action waited longer than
+ * the linger time. Batches are written by a background thread, if the database can't keep up {@link #add(BatchAction)} blocks
+ * until there is space again (backpressure).<br>
+ * <br>
+ * NOTE: Call {@link #close()} (or use try-with-resources) to write remaining actions.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class BatchWriter implements AutoCloseable {
+
+	/**
+	 * Listener that receives the result of every batch, e.g. to handle failed items.
+	 */
+	public interface Listener {
+		/**
+		 * Called after a batch was written.
+		 * @param actions - actions of batch
+		 * @param result - result of {@link DatabaseInterface#writeBatch(List)} with "items" in same order as actions
+		 */
+		void onBatchWritten(List<BatchAction> actions, JSONObject result);
+	}
+
+	//Defaults
+	public static int defaultMaxActions = 1000;
+	public static long defaultMaxBytes = 5 * 1024 * 1024;
+	public static long defaultLingerMs = 1000;
+	public static int defaultMaxPendingBatches = 2;
+
+	private final DatabaseInterface database;
+	private final int maxActions;
+	private final long maxBytes;
+	private final long lingerMs;
+	private final BlockingQueue<List<BatchAction>> queue;
+	private volatile Listener listener;
+
+	private List<BatchAction> buffer;
+	private long bufferBytes = 0;
+	private long bufferStart = 0;
+
+	private final Object idleLock = new Object();
+	private int pendingBatches = 0;
+	private boolean closed = false;				//guarded by 'this'
+	private volatile boolean running = true;	//worker stops when false and queue is empty
+	private final Thread worker;
+
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	/**
+	 * Create batch writer with default limits.
+	 * @param database - database to write to
+	 */
+	public BatchWriter(DatabaseInterface database){
+		this(database, defaultMaxActions, defaultMaxBytes, defaultLingerMs, defaultMaxPendingBatches);
+	}
+	/**
+	 * Create batch writer.
+	 * @param database - database to write to
+	 * @param maxActions - max. number of actions per batch
+	 * @param maxBytes - max. (estimated) size of batch in bytes
+	 * @param lingerMs - max. time an action waits in buffer before the batch is sent
+	 * @param maxPendingBatches - max. number of full batches waiting to be written before {@link #add(BatchAction)} blocks
+	 */
+	public BatchWriter(DatabaseInterface database, int maxActions, long maxBytes, long lingerMs, int maxPendingBatches){
+		this.database = database;
+		this.maxActions = Math.max(1, maxActions);
+		this.maxBytes = maxBytes;
+		this.lingerMs = Math.max(10, lingerMs);
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, maxPendingBatches));
+		this.buffer = new ArrayList<>(this.maxActions);
+		this.worker = new Thread(this::work, "batch-writer");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * Set a listener that receives all batch results.
+	 */
+	public void setListener(Listener listener){
+		this.listener = listener;
+	}
+
+	/**
+	 * Add action to buffer. Blocks if too many batches are waiting to be written.
+	 * @param action - {@link BatchAction}
+	 * @throws InterruptedException if interrupted while waiting for space
+	 */
+	public void add(BatchAction action) throws InterruptedException {
+		List<BatchAction> fullBatch = null;
+		synchronized (this){
+			//NOTE: checked under the same lock as the final buffer swap in close() so no action can slip in after it
+			if (closed){
+				throw new IllegalStateException("BatchWriter is closed");
+			}
+			if (buffer.isEmpty()){
+				bufferStart = System.currentTimeMillis();
+			}
+			buffer.add(action);
+			bufferBytes += action.estimateSize();
+			if (buffer.size() >= maxActions || bufferBytes >= maxBytes){
+				fullBatch = takeBuffer();
+			}
+		}
+		if (fullBatch != null){
+			enqueue(fullBatch);		//NOTE: blocks outside of lock so the worker can still take lingering buffers
+		}
+	}
+
+	/**
+	 * Send buffered actions and wait until all batches are written.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void flush() throws InterruptedException {
+		List<BatchAction> batch = null;
+		synchronized (this){
+			if (!buffer.isEmpty()){
+				batch = takeBuffer();
+			}
+		}
+		if (batch != null){
+			enqueue(batch);
+		}
+		synchronized (idleLock){
+			while (pendingBatches > 0){
+				idleLock.wait();
+			}
+		}
+	}
+
+	/**
+	 * Write remaining actions and stop background thread. Calls to {@link #add(BatchAction)} after this fail with an
+	 * {@link IllegalStateException}.
+	 */
+	@Override
+	public void close(){
+		List<BatchAction> batch = null;
+		synchronized (this){
+			if (closed){
+				return;
+			}
+			closed = true;
+			if (!buffer.isEmpty()){
+				batch = takeBuffer();
+			}
+		}
+		try{
+			if (batch != null){
+				enqueue(batch);
+			}
+			//wait for last batch and full batches that were taken by 'add' before we closed
+			synchronized (idleLock){
+				while (pendingBatches > 0){
+					idleLock.wait();
+				}
+			}
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		running = false;
+		worker.interrupt();
+	}
+
+	/**
+	 * Get counters.
+	 * @return JSONObject with "written" (successful actions), "failed" (failed actions) and "batches"
+	 */
+	public JSONObject getStatistics(){
+		return JSON.make(
+			"written", written.get(),
+			"failed", failed.get(),
+			"batches", batches.get()
+		);
+	}
+	/**
+	 * Number of actions that failed so far.
+	 */
+	public long getFailedCount(){
+		return failed.get();
+	}
+	/**
+	 * Number of actions that were written successfully so far.
+	 */
+	public long getWrittenCount(){
+		return written.get();
+	}
+
+	//------------------------------------
+
+	/**
+	 * Replace buffer with a new one and count the old one as pending batch (call inside synchronized block).
+	 */
+	private List<BatchAction> takeBuffer(){
+		List<BatchAction> batch = buffer;
+		buffer = new ArrayList<>(maxActions);
+		bufferBytes = 0;
+		synchronized (idleLock){
+			pendingBatches++;
+		}
+		return batch;
+	}
+	/**
+	 * Put batch into queue. Blocks if queue is full.
+	 */
+	private void enqueue(List<BatchAction> batch) throws InterruptedException {
+		try{
+			queue.put(batch);
+		}catch (InterruptedException e){
+			//NOTE: batch is lost, count it as failed
+			failed.addAndGet(batch.size());
+			synchronized (idleLock){
+				pendingBatches--;
+				idleLock.notifyAll();
+			}
+			throw e;
+		}
+	}
+	/**
+	 * Take buffer if the oldest action waited longer than linger time.
+	 */
+	private synchronized List<BatchAction> takeLingeringBuffer(){
+		if (!buffer.isEmpty() && (System.currentTimeMillis() - bufferStart) >= lingerMs){
+			return takeBuffer();
+		}
+		return null;
+	}
+
+	private void work(){
+		long pollMs = Math.max(5, lingerMs / 4);
+		while (running || !queue.isEmpty()){
+			List<BatchAction> batch;
+			try{
+				batch = queue.poll(pollMs, TimeUnit.MILLISECONDS);
+			}catch (InterruptedException e){
+				batch = queue.poll();
+				if (batch == null){
+					continue;
+				}
+			}
+			if (batch == null){
+				batch = takeLingeringBuffer();
+			}
+			if (batch != null){
+				try{
+					write(batch);
+				}finally{
+					synchronized (idleLock){
+						pendingBatches--;
+						idleLock.notifyAll();
+					}
+				}
+			}
+		}
+	}
+
+	private void write(List<BatchAction> batch){
+		JSONObject result;
+		try{
+			result = database.writeBatch(batch);
+		}catch (Exception e){
+			Debugger.println("BatchWriter - failed to write batch of " + batch.size() + " actions: " + e.getMessage(), 1);
+			JSONArray items = new JSONArray();
+			for (BatchAction a : batch){
+				JSON.add(items, JSON.make("code", 1, "_id", a.getId(), "error", e.getMessage()));
+			}
+			result = JSON.make("code", 1, "errors", batch.size(), "items", items);
+		}
+		int errors = JSON.getIntegerOrDefault(result, "errors", 0);
+		batches.incrementAndGet();
+		failed.addAndGet(errors);
+		written.addAndGet(batch.size() - errors);
+		Listener l = listener;
+		if (l != null){
+			try{
+				l.onBatchWritten(batch, result);
+			}catch (Exception e){
+				Debugger.println("BatchWriter - listener failed: " + e.getMessage(), 1);
+			}
+		}
+	}
+}
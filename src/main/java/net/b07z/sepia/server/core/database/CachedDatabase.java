@@ -0,0 +1,366 @@
+package net.b07z.sepia.server.core.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONObject;
+
+import net.b07z.sepia.server.core.java.LruCache;
+import net.b07z.sepia.server.core.tools.JSON;
+
+/**
+ * Caching decorator for any {@link DatabaseInterface} (usually {@link Elasticsearch}). Results of {@code getItem}, {@code getItemFiltered}
+ * and {@code getItems} are kept in memory (LRU with max. size and time-to-live) and writes through this class
+ * ({@code setItemData}, {@code updateItemData}, {@code deleteItem}, {@code writeBatch}, ...) invalidate the affected entries.
+ * Reads that started before a write are not stored afterwards and entries are never replaced by an older version
+ * (based on "_seq_no"/"_primary_term" or "_version" of the result).<br>
+ * <br>
+ * NOTE: Writes that don't go through this class (e.g. other servers or direct calls of {@link Elasticsearch#deleteFromDocument})
+ * are only visible after the TTL, use {@link #invalidate(String, String, String)} if necessary. Results are copied on the way in and out,
+ * so callers can modify them.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class CachedDatabase implements DatabaseInterface {
+
+	private final DatabaseInterface database;
+	private final long ttlMs;
+	private final LruCache<String, DocEntry> cache;
+	
+	//write tracking to reject results of reads that started before a write (all guarded by cache lock)
+	private static final int MAX_TRACKED_WRITES = 10000;
+	private long writeCounter = 0;
+	private long forgottenWrite = 0;		//latest write that was dropped from 'lastWrites'
+	private long lastWriteAll = 0;
+	private final Map<String, Long> lastWriteIndex = new HashMap<>();
+	private final Map<String, Long> lastWrites = new LinkedHashMap<String, Long>(){
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest){
+			if (size() > MAX_TRACKED_WRITES){
+				forgottenWrite = Math.max(forgottenWrite, eldest.getValue());
+				return true;
+			}
+			return false;
+		}
+	};
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong expired = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	private final AtomicLong staleRejected = new AtomicLong();
+
+	/**
+	 * Cached results of one document (one per source filter).
+	 */
+	private static class DocEntry {
+		final Map<String, CachedValue> values = new HashMap<>();
+	}
+	private static class CachedValue {
+		final JSONObject result;
+		final long created;
+		final long[] version;
+
+		CachedValue(JSONObject result, long[] version){
+			this.result = result;
+			this.created = System.currentTimeMillis();
+			this.version = version;
+		}
+	}
+
+	/**
+	 * Create cache in front of a database.
+	 * @param database - the actual database
+	 * @param maxDocuments - max. number of documents in cache
+	 * @param ttlMs - time-to-live of entries (ms)
+	 */
+	public CachedDatabase(DatabaseInterface database, int maxDocuments, long ttlMs){
+		this.database = database;
+		this.ttlMs = ttlMs;
+		this.cache = new LruCache<>(maxDocuments + 1, true);
+	}
+
+	/**
+	 * Get the database behind the cache.
+	 */
+	public DatabaseInterface getDatabase(){
+		return database;
+	}
+
+	/**
+	 * Remove all entries of a document.
+	 */
+	public void invalidate(String index, String type, String itemId){
+		String docKey = getDocKey(index, type, itemId);
+		synchronized (cache){
+			lastWrites.remove(docKey);
+			lastWrites.put(docKey, ++writeCounter);
+			cache.remove(docKey);
+		}
+		invalidations.incrementAndGet();
+	}
+	/**
+	 * Remove all entries of an index (or all entries if index is null).
+	 */
+	public void invalidateIndex(String index){
+		synchronized (cache){
+			writeCounter++;
+			if (index == null){
+				lastWriteAll = writeCounter;
+				cache.clear();
+			}else{
+				lastWriteIndex.put(index, writeCounter);
+				cache.keySet().removeIf(docKey -> docKey.startsWith(index + "/"));
+			}
+		}
+		invalidations.incrementAndGet();
+	}
+
+	/**
+	 * Get cache counters.
+	 * @return JSONObject with "size", "hits", "misses", "hitRate", "expired", "invalidations" and "staleRejected" (results not stored because of a newer write)
+	 */
+	public JSONObject getStatistics(){
+		long h = hits.get();
+		long m = misses.get();
+		int size;
+		synchronized (cache){
+			size = cache.size();
+		}
+		JSONObject stats = JSON.make(
+			"size", size,
+			"hits", h,
+			"misses", m,
+			"hitRate", (h + m > 0)? ((double) h / (h + m)) : 0.0,
+			"expired", expired.get(),
+			"invalidations", invalidations.get()
+		);
+		JSON.put(stats, "staleRejected", staleRejected.get());
+		return stats;
+	}
+
+	//------------------------------------
+
+	private static String getDocKey(String index, String type, String itemId){
+		return index + "/" + type + "/" + itemId;
+	}
+	private static String getFilterKey(String[] filters){
+		return (filters == null)? "" : String.join(",", filters);
+	}
+
+	/**
+	 * Get copy of cached result or null.
+	 */
+	private JSONObject getCached(String docKey, String filterKey){
+		synchronized (cache){
+			DocEntry entry = cache.get(docKey);
+			CachedValue value = (entry != null)? entry.values.get(filterKey) : null;
+			if (value != null){
+				if ((System.currentTimeMillis() - value.created) < ttlMs){
+					hits.incrementAndGet();
+					return JSON.deepCopy(value.result);
+				}
+				entry.values.remove(filterKey);
+				if (entry.values.isEmpty()){
+					cache.remove(docKey);
+				}
+				expired.incrementAndGet();
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+	/**
+	 * Get current write counter (call before reading from database).
+	 */
+	private long getGeneration(){
+		synchronized (cache){
+			return writeCounter;
+		}
+	}
+	/**
+	 * Get counter of last write that affected the document (call inside synchronized block).
+	 */
+	private long getLastWrite(String index, String docKey){
+		Long doc = lastWrites.get(docKey);
+		long last = (doc != null)? doc : forgottenWrite;
+		return Math.max(last, Math.max(lastWriteAll, lastWriteIndex.getOrDefault(index, 0l)));
+	}
+	/**
+	 * Store copy of result if it was found, no write happened since the read started and there is no newer version in cache.
+	 */
+	private void store(String index, String docKey, String filterKey, JSONObject result, long generationAtRead){
+		if (result == null || !JSON.getBoolean(result, "found")){
+			return;
+		}
+		long[] version = getVersion(result);
+		synchronized (cache){
+			if (getLastWrite(index, docKey) > generationAtRead){
+				staleRejected.incrementAndGet();
+				return;
+			}
+			DocEntry entry = cache.get(docKey);
+			if (entry == null){
+				entry = new DocEntry();
+				cache.put(docKey, entry);
+			}
+			for (CachedValue other : entry.values.values()){
+				if (isOlder(version, other.version)){
+					staleRejected.incrementAndGet();
+					return;
+				}
+			}
+			entry.values.values().removeIf(other -> isOlder(other.version, version));
+			entry.values.put(filterKey, new CachedValue(JSON.deepCopy(result), version));
+		}
+	}
+	/**
+	 * Get version as [primary_term, seq_no] or [0, version] or null.
+	 */
+	private static long[] getVersion(JSONObject result){
+		if (result.containsKey("_seq_no") && result.containsKey("_primary_term")){
+			return new long[]{ JSON.getLongOrDefault(result, "_primary_term", 0), JSON.getLongOrDefault(result, "_seq_no", 0) };
+		}else if (result.containsKey("_version")){
+			return new long[]{ 0, JSON.getLongOrDefault(result, "_version", 0) };
+		}
+		return null;
+	}
+	private static boolean isOlder(long[] version, long[] other){
+		if (version == null || other == null){
+			return false;
+		}
+		return (version[0] < other[0]) || (version[0] == other[0] && version[1] < other[1]);
+	}
+
+	//-------INTERFACE IMPLEMENTATIONS---------
+
+	@Override
+	public JSONObject getItem(String index, String type, String item_id){
+		return getItemFiltered(index, type, item_id, null);
+	}
+	@Override
+	public JSONObject getItemFiltered(String index, String type, String item_id, String[] filters){
+		String docKey = getDocKey(index, type, item_id);
+		String filterKey = getFilterKey(filters);
+		JSONObject cached = getCached(docKey, filterKey);
+		if (cached != null){
+			return cached;
+		}
+		long generation = getGeneration();
+		JSONObject result = (filters == null)? database.getItem(index, type, item_id) : database.getItemFiltered(index, type, item_id, filters);
+		store(index, docKey, filterKey, result, generation);
+		return result;
+	}
+	@Override
+	public Map<String, JSONObject> getItems(String index, String type, Collection<String> ids, String[] filters){
+		String filterKey = getFilterKey(filters);
+		Map<String, JSONObject> items = new LinkedHashMap<>();
+		List<String> missing = new ArrayList<>();
+		for (String id : ids){
+			if (items.containsKey(id)){
+				continue;
+			}
+			String docKey = getDocKey(index, type, id);
+			JSONObject cached = getCached(docKey, filterKey);
+			items.put(id, cached);
+			if (cached == null){
+				missing.add(id);
+			}
+		}
+		if (!missing.isEmpty()){
+			long generation = getGeneration();
+			Map<String, JSONObject> loaded = database.getItems(index, type, missing, filters);
+			for (String id : missing){
+				JSONObject result = loaded.get(id);
+				if (result == null){
+					result = JSON.make("_id", id, "found", false);
+				}
+				store(index, getDocKey(index, type, id), filterKey, result, generation);
+				items.put(id, result);
+			}
+		}
+		return items;
+	}
+
+	@Override
+	public int setItemData(String index, String type, String item_id, JSONObject data){
+		try{
+			return database.setItemData(index, type, item_id, data);
+		}finally{
+			invalidate(index, type, item_id);
+		}
+	}
+	@Override
+	public JSONObject setAnyItemData(String index, String type, JSONObject data){
+		return database.setAnyItemData(index, type, data);
+	}
+	@Override
+	public int updateItemData(String index, String type, String item_id, JSONObject data){
+		try{
+			return database.updateItemData(index, type, item_id, data);
+		}finally{
+			invalidate(index, type, item_id);
+		}
+	}
+	@Override
+	public JSONObject writeBatch(List<BatchAction> actions){
+		try{
+			return database.writeBatch(actions);
+		}finally{
+			for (BatchAction a : actions){
+				if (a.getId() != null){
+					invalidate(a.getIndex(), a.getDocType(), a.getId());
+				}
+			}
+		}
+	}
+
+	@Override
+	public JSONObject searchSimple(String path, String search_term){
+		return database.searchSimple(path, search_term);
+	}
+	@Override
+	public JSONObject searchByJson(String path, String jsonQuery){
+		return database.searchByJson(path, jsonQuery);
+	}
+
+	@Override
+	public int deleteItem(String index, String type, String item_id){
+		try{
+			return database.deleteItem(index, type, item_id);
+		}finally{
+			invalidate(index, type, item_id);
+		}
+	}
+	@Override
+	public int deleteAnything(String path){
+		try{
+			return database.deleteAnything(path);
+		}finally{
+			invalidateIndex(getIndexOfPath(path));
+		}
+	}
+	@Override
+	public JSONObject deleteByJson(String path, String jsonQuery){
+		try{
+			return database.deleteByJson(path, jsonQuery);
+		}finally{
+			invalidateIndex(getIndexOfPath(path));
+		}
+	}
+	/**
+	 * Get index of path like "index/type/..." or null for all.
+	 */
+	private static String getIndexOfPath(String path){
+		String p = (path == null)? "" : path.replaceFirst("^/", "");
+		String index = p.split("/")[0];
+		return (index.isEmpty() || index.contains("*") || index.contains(","))? null : index;
+	}
+}
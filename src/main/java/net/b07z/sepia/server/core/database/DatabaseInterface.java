@@ -1,7 +1,15 @@
 package net.b07z.sepia.server.core.database;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import net.b07z.sepia.server.core.tools.JSON;
+
 /**
  * Interface for classes that supply database access. First and foremost this is meant to be an interface for Elasticsearch (and not DynamoDB, but feel free ...).
  * 
@@ -49,6 +57,34 @@ public interface DatabaseInterface {
 	 */
 	public JSONObject getItemFiltered(String index, String type, String item_id, String[] filters);
 	
+	/**
+	 * Get many items of "index/type" at once. The default implementation calls {@link #getItem(String, String, String)} 
+	 * (or {@link #getItemFiltered(String, String, String, String[])}) for each id, databases that support multi-get (e.g. Elasticsearch "_mget")
+	 * should override it.
+	 * @param index - index or table name like e.g. "account" or "knowledge"
+	 * @param type - subclass name, e.g. "user"
+	 * @param ids - unique item ids
+	 * @param filters - String array with filters like ["name", "address"] or null for all fields
+	 * @return Map with ids as keys (in order of ids) and results as value, each with "found": true/false and data in "_source" if found
+	 */
+	public default Map<String, JSONObject> getItems(String index, String type, Collection<String> ids, String[] filters){
+		Map<String, JSONObject> items = new LinkedHashMap<>();
+		for (String id : ids){
+			if (items.containsKey(id)){
+				continue;
+			}
+			JSONObject item = (filters == null)? getItem(index, type, id) : getItemFiltered(index, type, id, filters);
+			if (item == null){
+				item = new JSONObject();
+			}
+			if (!JSON.getBoolean(item, "found")){
+				JSON.put(item, "found", false);
+			}
+			items.put(id, item);
+		}
+		return items;
+	}
+	
 	/**
 	 * Update or create the data/properties/values of an item of "type" at "index". 
 	 * @param index - index or table name like e.g. "account" or "knowledge"
@@ -98,5 +134,39 @@ public interface DatabaseInterface {
 	 * @return JSONObject with delete result or error description
 	 */
 	public JSONObject deleteByJson(String path, String jsonQuery);
+	
+	/**
+	 * Execute many write actions at once. The default implementation simply calls the single methods one after another,
+	 * databases that support batch operations (e.g. Elasticsearch "_bulk") should override it. See {@link BatchWriter} for buffered writes.
+	 * @param actions - list of {@link BatchAction}
+	 * @return JSON with "code" (0 - all good, 1 - at least one action failed), "errors" (number of failed actions) and "items",
+	 * an array with one result per action in same order: {"code":0 or 1, "_id":"...", "error":"..." (if failed)}
+	 */
+	public default JSONObject writeBatch(List<BatchAction> actions){
+		JSONArray items = new JSONArray();
+		int errors = 0;
+		for (BatchAction a : actions){
+			JSONObject item;
+			switch (a.getType()){
+				case index:
+					if (a.getId() == null){
+						item = setAnyItemData(a.getIndex(), a.getDocType(), a.getData());
+					}else{
+						item = JSON.make("code", setItemData(a.getIndex(), a.getDocType(), a.getId(), a.getData()), "_id", a.getId());
+					}
+					break;
+				case update:
+					item = JSON.make("code", updateItemData(a.getIndex(), a.getDocType(), a.getId(), a.getData()), "_id", a.getId());
+					break;
+				default:
+					item = JSON.make("code", deleteItem(a.getIndex(), a.getDocType(), a.getId()), "_id", a.getId());
+			}
+			if (JSON.getIntegerOrDefault(item, "code", 1) != 0){
+				errors++;
+			}
+			JSON.add(items, item);
+		}
+		return JSON.make("code", (errors == 0)? 0 : 1, "errors", errors, "items", items);
+	}
 
 }
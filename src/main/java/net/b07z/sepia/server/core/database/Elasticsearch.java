@@ -1,10 +1,29 @@
 package net.b07z.sepia.server.core.database;
 
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 import net.b07z.sepia.server.core.database.DatabaseInterface;
@@ -12,32 +31,55 @@ import net.b07z.sepia.server.core.tools.Connectors;
 import net.b07z.sepia.server.core.tools.Debugger;
 import net.b07z.sepia.server.core.tools.Is;
 import net.b07z.sepia.server.core.tools.JSON;
+import net.b07z.sepia.server.core.tools.JsonPath;
 
 /**
- * Class to handle an Elasticsearch node.
+ * Class to handle an Elasticsearch node or cluster (see {@link ElasticsearchNodes} for multiple nodes).
  * 
  * @author Florian Quirin
  *
  */
 public class Elasticsearch implements DatabaseInterface {
 	
-	//ElasticSearch address
+	//Settings
+	public static boolean usePointInTime = true;		//use point-in-time + search_after to iterate documents (ES 7.12+), scroll is used as fallback
+	public static String searchKeepAlive = "1m";		//keep-alive of point-in-time or scroll context between two pages
+	public static int mgetChunkSize = 500;				//max. ids per "_mget" request
+	public static int mgetMaxConcurrency = 4;			//max. parallel "_mget" requests for large id sets
+	public static long mgetTimeoutMs = 30000;			//max. time for all "_mget" requests of one call
+	
+	public static int maxRetries = 2;					//max. retries of reads on other nodes if a node fails
+	
+	//ElasticSearch nodes
+	protected final ElasticsearchNodes nodes;
+	/**
+	 * URL of the first configured node.
+	 * @deprecated requests are routed via {@link #nodes}, this is only kept for subclasses that read it (changing it has no effect)
+	 */
+	@Deprecated
 	protected String server;
 	
 	private String esAuthType;
 	private String esAuthData;
 	
+	private volatile SearchBatcher searchBatcher = null;
+	private volatile UpdateCoalescer updateCoalescer = null;
+	private ScheduledFuture<?> sniffTask = null;
+	private static ScheduledExecutorService sniffScheduler = null;
+	
+	private static final JsonPath HITS_PATH = JsonPath.compile("hits.hits");
+	
 	/**
 	 * Create Elasticsearch class with default server. 
 	 */
 	public Elasticsearch(){
-		this.server = "http://localhost:9999";
+		this("http://localhost:9999");
 	}
 	/**
 	 * Create Elasticsearch class with custom server. 
 	 */
 	public Elasticsearch(String server){
-		this.server = server;
+		this(server, null, null);
 	}
 	/**
 	 * Create Elasticsearch class with custom server and authentication data.
@@ -46,41 +88,174 @@ public class Elasticsearch implements DatabaseInterface {
 	 * @param authData - authentication data (or null), e.g. base64 encoded 'username:password' string
 	 */
 	public Elasticsearch(String server, String authType, String authData) {
-		this.server = server;
+		this(Arrays.asList(server), authType, authData);
+	}
+	/**
+	 * Create Elasticsearch class with multiple nodes of a cluster and authentication data. Requests are balanced over all alive nodes
+	 * (see {@link ElasticsearchNodes}) and reads are retried on another node if a node fails (see {@link #maxRetries}).
+	 * @param servers - endpoint URLs of Elasticsearch nodes, e.g. ["http://es1:9200", "http://es2:9200"]
+	 * @param authType - authentication type (or null), e.g. 'Basic' or 'Bearer'
+	 * @param authData - authentication data (or null), e.g. base64 encoded 'username:password' string
+	 */
+	public Elasticsearch(Collection<String> servers, String authType, String authData) {
+		this.nodes = new ElasticsearchNodes(servers);
+		this.server = this.nodes.getNodes().get(0).getUrl();
 		this.esAuthType = authType;
 		this.esAuthData = authData;
 	}
 	
-	private Map<String, String> addAuthHeader(Map<String, String> headers){
-		return Connectors.addAuthHeader(headers, esAuthType, esAuthData);
+	/**
+	 * Get nodes of this client, e.g. to check their health via {@link ElasticsearchNodes#getStatistics()}.
+	 */
+	public ElasticsearchNodes getNodes(){
+		return nodes;
 	}
 	
-	//HTTP call methods for ES
-	private JSONObject esHttpGET(String url){
-		if (Is.notNullOrEmpty(this.esAuthData)){
-			return Connectors.httpGET(url, null, addAuthHeader(null));
-		}else{
-			return Connectors.httpGET(url);
+	/**
+	 * Load node list from cluster ("_nodes/http") and use it for all further requests. The scheme (http/https) of the first node is kept.
+	 * Nodes are addressed by their published host names, IPs only if {@link ElasticsearchNodes#sniffUseIpAddresses} is set.
+	 * @return true if node list was updated
+	 */
+	public boolean sniffNodes(){
+		JSONObject result = esHttpGET("/_nodes/http");
+		if (!Connectors.httpSuccess(result)){
+			Debugger.println("sniffNodes - ElasticSearch - failed to load nodes: " + Connectors.httpError(result), 1);
+			return false;
 		}
+		String firstUrl = nodes.getNodes().get(0).getUrl();
+		String scheme = firstUrl.contains("://")? firstUrl.substring(0, firstUrl.indexOf("://")) : "http";
+		List<String> urls = ElasticsearchNodes.getNodeUrls(result, scheme);
+		if (urls.isEmpty()){
+			Debugger.println("sniffNodes - ElasticSearch - cluster returned no usable HTTP nodes, keeping: " + nodes.getUrls(), 1);
+			return false;
+		}
+		nodes.setNodes(urls);
+		return true;
+	}
+	/**
+	 * Call {@link #sniffNodes()} now and then periodically in background.
+	 * @param intervalMs - time between two sniffs
+	 */
+	public synchronized void startSniffing(long intervalMs){
+		stopSniffing();
+		sniffTask = getSniffScheduler().scheduleWithFixedDelay(() -> {
+			try{
+				sniffNodes();
+			}catch (Exception e){
+				Debugger.println("sniffNodes - ElasticSearch - error: " + e.getMessage(), 1);
+			}
+		}, 0, intervalMs, TimeUnit.MILLISECONDS);
 	}
-	private JSONObject esHttpPOST(String url, String queryJson, Map<String, String> headers){
-		if (Is.notNullOrEmpty(this.esAuthData)){
-			headers = addAuthHeader(headers);
+	/**
+	 * Stop periodic sniffing.
+	 */
+	public synchronized void stopSniffing(){
+		if (sniffTask != null){
+			sniffTask.cancel(false);
+			sniffTask = null;
 		}
-		return Connectors.httpPOST(url, queryJson, headers);
 	}
-	private JSONObject esHttpPUT(String url, String queryJson, Map<String, String> headers){
-		if (Is.notNullOrEmpty(this.esAuthData)){
-			headers = addAuthHeader(headers);
+	private static synchronized ScheduledExecutorService getSniffScheduler(){
+		if (sniffScheduler == null){
+			ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+				Thread t = new Thread(r, "es-sniffer");
+				t.setDaemon(true);
+				return t;
+			});
+			scheduler.setRemoveOnCancelPolicy(true);
+			sniffScheduler = scheduler;
 		}
-		return Connectors.httpPUT(url, queryJson, headers);
+		return sniffScheduler;
 	}
-	private JSONObject esHttpDELETE(String url){
-		if (Is.notNullOrEmpty(this.esAuthData)){
-			return Connectors.httpDELETE(url, addAuthHeader(null));
-		}else{
-			return Connectors.httpDELETE(url);
+	
+	private Map<String, String> addAuthHeader(Map<String, String> headers){
+		return Connectors.addAuthHeader(headers, esAuthType, esAuthData);
+	}
+	
+	/**
+	 * Send request to a node. If the node fails (I/O error, circuit open, 502/503/504) it is marked as dead and
+	 * reads are retried on other nodes.
+	 * @param isRead - true if request can be repeated safely (search, get, etc.)
+	 * @param call - function that sends the request to the given node URL
+	 */
+	private JSONObject esRequest(boolean isRead, Function<String, JSONObject> call){
+		int maxAttempts = isRead? Math.max(1, Math.min(nodes.size(), maxRetries + 1)) : 1;
+		List<ElasticsearchNodes.Node> tried = new ArrayList<>(maxAttempts);
+		JSONObject result = null;
+		for (int i = 0; i < maxAttempts; i++){
+			ElasticsearchNodes.Node node = nodes.select(tried);
+			if (node == null){
+				break;
+			}
+			node.start();
+			boolean failed = true;
+			try{
+				result = call.apply(node.getUrl());
+				failed = isNodeFailure(result);
+			}finally{
+				node.finish(failed);
+			}
+			if (!failed){
+				break;
+			}
+			tried.add(node);
+		}
+		return result;
+	}
+	/**
+	 * Is the result a failure of the node (and not of the request)?
+	 */
+	private static boolean isNodeFailure(JSONObject result){
+		if (result == null){
+			return true;
+		}
+		if (Connectors.httpSuccess(result)){
+			return false;
+		}
+		int code;
+		try{
+			code = Integer.parseInt(String.valueOf(result.get("code")));
+		}catch (NumberFormatException e){
+			return false;
 		}
+		return code == -1 || code == Connectors.CODE_CIRCUIT_OPEN || code == 502 || code == 503 || code == 504;
+	}
+	
+	//HTTP call methods for ES - 'endpoint' is relative to node, e.g. "/index/type/id"
+	private JSONObject esHttpGET(String endpoint){
+		return esRequest(true, server -> {
+			if (Is.notNullOrEmpty(this.esAuthData)){
+				return Connectors.httpGET(server + endpoint, null, addAuthHeader(null));
+			}else{
+				return Connectors.httpGET(server + endpoint);
+			}
+		});
+	}
+	private JSONObject esHttpPOST(String endpoint, String queryJson, Map<String, String> headers){
+		return esHttpPOST(endpoint, queryJson, headers, false);
+	}
+	private JSONObject esHttpPOST(String endpoint, String queryJson, Map<String, String> headers, boolean isRead){
+		Map<String, String> requestHeaders = (Is.notNullOrEmpty(this.esAuthData))? addAuthHeader(headers) : headers;
+		return esRequest(isRead, server -> Connectors.httpPOST(server + endpoint, queryJson, requestHeaders));
+	}
+	private JSONObject esHttpPUT(String endpoint, String queryJson, Map<String, String> headers){
+		Map<String, String> requestHeaders = (Is.notNullOrEmpty(this.esAuthData))? addAuthHeader(headers) : headers;
+		return esRequest(false, server -> Connectors.httpPUT(server + endpoint, queryJson, requestHeaders));
+	}
+	private JSONObject esHttpDELETE(String endpoint, String dataJson){
+		HashMap<String, String> headers = new HashMap<String, String>();
+		headers.put("Content-Type", "application/json");
+		Map<String, String> requestHeaders = (Is.notNullOrEmpty(this.esAuthData))? addAuthHeader(headers) : headers;
+		return esRequest(true, server -> Connectors.httpDELETE(server + endpoint, dataJson, requestHeaders));		//only used to release search contexts
+	}
+	private JSONObject esHttpDELETE(String endpoint){
+		return esRequest(false, server -> {
+			if (Is.notNullOrEmpty(this.esAuthData)){
+				return Connectors.httpDELETE(server + endpoint, addAuthHeader(null));
+			}else{
+				return Connectors.httpDELETE(server + endpoint);
+			}
+		});
 	}
 	
 	//-------INTERFACE IMPLEMENTATIONS---------
@@ -105,24 +280,38 @@ public class Elasticsearch implements DatabaseInterface {
 		sources = sources.replaceFirst(",$", "").trim();
 		return getDocument(index, type, item_id, sources);
 	}
+	public Map<String, JSONObject> getItems(String index, String type, Collection<String> ids, String[] filters){
+		return getDocuments(index, type, ids, (filters != null)? Arrays.asList(filters) : null);
+	}
 	//UPDATE
 	public int updateItemData(String index, String type, String item_id, JSONObject data) {
 		return updateDocument(index, type, item_id, data);
 	}
 	//SEARCH SIMPLE
-	public JSONObject searchSimple(String path, String search_term){		
+	public JSONObject searchSimple(String path, String search_term){
+		return searchSimple(path, search_term, null);
+	}
+	/**
+	 * Simple search (query string) with trimmed response.
+	 * @param path - e.g. "index/type/"
+	 * @param search_term - query string, e.g. "name:Florian"
+	 * @param filter - {@link ResponseFilter} with "filter_path", source includes/excludes or compact mode (or null for full response)
+	 */
+	public JSONObject searchSimple(String path, String search_term, ResponseFilter filter){		
 		//Build URL
 		if (!path.endsWith("/")) { path = path + "/"; }
 		try{
-			String url = server + "/" + path + "_search?q=" + URLEncoder.encode(search_term, "UTF-8");
+			String endpoint = "/" + path + "_search?q=" + URLEncoder.encode(search_term, "UTF-8");
+			if (filter != null){
+				endpoint = filter.addToEndpoint(endpoint, ResponseFilter.SEARCH_COMPACT_PATH, null);
+			}
 		
-			JSONObject result = esHttpGET(url);
+			JSONObject result = esHttpGET(endpoint);
 			//System.out.println(result.toJSONString()); 		//debug
 			
-			//success?
-			//if (Connectors.httpSuccess(result)){
-			//	return result;
-			//}
+			if (filter != null && filter.isCompact()){
+				return ResponseFilter.compactSearchResult(result);
+			}
 			return result;
 
 		//error
@@ -135,18 +324,42 @@ public class Elasticsearch implements DatabaseInterface {
 	}
 	//SEARCH COMPLEX
 	public JSONObject searchByJson(String path, String jsonQuery) {
+		SearchBatcher batcher = searchBatcher;
+		if (batcher != null){
+			return batcher.searchByJson(path, jsonQuery);
+		}
+		return searchByJsonNow(path, jsonQuery, null);
+	}
+	/**
+	 * Search with trimmed response (not micro-batched).
+	 * @param path - e.g. "index/type/"
+	 * @param jsonQuery - query as JSON string
+	 * @param filter - {@link ResponseFilter} with "filter_path", source includes/excludes or compact mode (or null for full response)
+	 */
+	public JSONObject searchByJson(String path, String jsonQuery, ResponseFilter filter) {
+		if (filter == null){
+			return searchByJson(path, jsonQuery);
+		}
+		return searchByJsonNow(path, jsonQuery, filter);
+	}
+	/**
+	 * Search without micro-batching.
+	 */
+	JSONObject searchByJsonNow(String path, String jsonQuery, ResponseFilter filter) {
 		if (!path.endsWith("/")) { path = path + "/"; }
 		try{
-			String url = server + "/" + path + "_search";
-			//System.out.println("url: " + url); 		//debug
+			String endpoint = "/" + path + "_search";
+			if (filter != null){
+				endpoint = filter.addToEndpoint(endpoint, ResponseFilter.SEARCH_COMPACT_PATH, null);
+			}
+			//System.out.println("endpoint: " + endpoint); 		//debug
 			//System.out.println("query: " + jsonQuery); 		//debug
-			JSONObject result = esHttpPOST(url, jsonQuery, null);
+			JSONObject result = esHttpPOST(endpoint, jsonQuery, null, true);
 			//System.out.println(result.toJSONString()); 		//debug
 			
-			//success?
-			//if (Connectors.httpSuccess(result)){
-			//	return result;
-			//}
+			if (filter != null && filter.isCompact()){
+				return ResponseFilter.compactSearchResult(result);
+			}
 			return result;
 			
 		//error
@@ -157,6 +370,10 @@ public class Elasticsearch implements DatabaseInterface {
 			return res;
 		}
 	}
+	//BATCH
+	public JSONObject writeBatch(List<BatchAction> actions){
+		return writeBulk(actions);
+	}
 	//DELETE
 	public int deleteItem(String index, String type, String item_id) {
 		return deleteDocument(index, type, item_id);
@@ -168,10 +385,10 @@ public class Elasticsearch implements DatabaseInterface {
 	public JSONObject deleteByJson(String path, String jsonQuery) {
 		if (!path.endsWith("/")) { path = path + "/"; }
 		try{
-			String url = server + "/" + path + "_delete_by_query";
-			//System.out.println("url: " + url); 		//debug
+			String endpoint = "/" + path + "_delete_by_query";
+			//System.out.println("endpoint: " + endpoint); 		//debug
 			//System.out.println("query: " + jsonQuery); 		//debug
-			JSONObject result = esHttpPOST(url, jsonQuery, null);
+			JSONObject result = esHttpPOST(endpoint, jsonQuery, null);
 			//System.out.println(result.toJSONString()); 		//debug
 			
 			//success?
@@ -197,7 +414,7 @@ public class Elasticsearch implements DatabaseInterface {
 	 */
 	public JSONObject writeMapping(String index, JSONObject data){
 		//Build URL
-		String url = server + "/" + index;
+		String endpoint = "/" + index;
 		
 		String dataStr = data.toJSONString();
 		
@@ -206,7 +423,7 @@ public class Elasticsearch implements DatabaseInterface {
 		headers.put("Content-Type", "application/json");
 		headers.put("Content-Length", Integer.toString(dataStr.getBytes().length));
 
-		JSONObject result = esHttpPUT(url, dataStr, headers);
+		JSONObject result = esHttpPUT(endpoint, dataStr, headers);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
@@ -226,9 +443,9 @@ public class Elasticsearch implements DatabaseInterface {
 	 */
 	public JSONObject getMappings(){		
 		//Build URL
-		String url = server + "/" + "_mappings";
+		String endpoint = "/" + "_mappings";
 		
-		JSONObject result = esHttpGET(url);
+		JSONObject result = esHttpGET(endpoint);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
@@ -252,7 +469,7 @@ public class Elasticsearch implements DatabaseInterface {
 	 */
 	public int writeDocument(String index, String type, String id, JSONObject data){		
 		//Build URL
-		String url = server + "/" + index + "/" + type + "/" + id;
+		String endpoint = "/" + index + "/" + type + "/" + id;
 		
 		String dataStr = data.toJSONString();
 		
@@ -261,7 +478,7 @@ public class Elasticsearch implements DatabaseInterface {
 		headers.put("Content-Type", "application/json");
 		headers.put("Content-Length", Integer.toString(dataStr.getBytes().length));
 		
-		JSONObject result = esHttpPUT(url, dataStr, headers);
+		JSONObject result = esHttpPUT(endpoint, dataStr, headers);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
@@ -283,8 +500,8 @@ public class Elasticsearch implements DatabaseInterface {
 	 */
 	public JSONObject writeDocument(String index, String type, JSONObject data){		
 		//Build URL
-		String url = server + "/" + index + "/" + type;
-		//System.out.println("writeDocument URL: " + url); 		//debug
+		String endpoint = "/" + index + "/" + type;
+		//System.out.println("writeDocument endpoint: " + endpoint); 		//debug
 		
 		String dataStr = data.toJSONString();
 		
@@ -293,7 +510,7 @@ public class Elasticsearch implements DatabaseInterface {
 		headers.put("Content-Type", "application/json");
 		headers.put("Content-Length", Integer.toString(dataStr.getBytes().length));
 		
-		JSONObject result = esHttpPOST(url, dataStr, headers);
+		JSONObject result = esHttpPOST(endpoint, dataStr, headers);
 		//System.out.println("writeDocument Result: " + result.toJSONString()); 				//debug
 		
 		//success?
@@ -329,26 +546,19 @@ public class Elasticsearch implements DatabaseInterface {
 	 */
 	public int updateDocument(String index, String type, String id, JSONObject data, int retry){
 		//Build URL
-		String url = server + "/" + index + "/" + type + "/" + id + "/_update";
+		String endpoint = "/" + index + "/" + type + "/" + id + "/_update";
 		if (retry != 0){
-			url += ("?retry_on_conflict=" + retry);
+			endpoint += ("?retry_on_conflict=" + retry);
 		}
 		
-		//Check data for script and upsert to get update or create behavior
-		if (!data.containsKey("script") && !data.containsKey("doc_as_upsert")){
-			JSONObject dataUpdate = new JSONObject();
-			JSON.put(dataUpdate, "doc", data);
-			JSON.put(dataUpdate, "doc_as_upsert", Boolean.TRUE);
-			data = dataUpdate;
-		}
-		String dataStr = data.toJSONString();
+		String dataStr = getUpdateBody(data).toJSONString();
 		
 		//headers
 		HashMap<String, String> headers = new HashMap<String, String>();
 		headers.put("Content-Type", "application/json");
 		headers.put("Content-Length", Integer.toString(dataStr.getBytes().length));
 		
-		JSONObject result = esHttpPOST(url, dataStr, headers);
+		JSONObject result = esHttpPOST(endpoint, dataStr, headers);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
@@ -362,6 +572,73 @@ public class Elasticsearch implements DatabaseInterface {
 		}
 	}
 	
+	/**
+	 * Update or create document at "id" of "type" in "index" without waiting for the result. If update coalescing is enabled
+	 * (see {@link #enableUpdateCoalescing(long, int)}) updates of the same document within the window are merged and written together,
+	 * else the update is written directly.
+	 * @param index - index name, e.g. "account"
+	 * @param type - type name, e.g. "user"
+	 * @param id - id name/number, e.g. user_id
+	 * @param data - JSON data to put inside id (can also include a script, upsert is added automatically)
+	 * @return future with error code (0 - no error, 1 - no connection or fail) that completes when the update was written
+	 */
+	public CompletableFuture<Integer> updateDocumentAsync(String index, String type, String id, JSONObject data){
+		UpdateCoalescer coalescer = updateCoalescer;
+		if (coalescer != null){
+			return coalescer.update(index, type, id, data);
+		}
+		return CompletableFuture.completedFuture(updateDocument(index, type, id, data));
+	}
+	/**
+	 * Enable write-behind coalescing for {@link #updateDocumentAsync(String, String, String, JSONObject)}, see {@link UpdateCoalescer}.
+	 * @param windowMs - time updates are collected before they are written (e.g. 500ms)
+	 * @param maxPending - write immediately when this many documents have pending updates
+	 */
+	public synchronized void enableUpdateCoalescing(long windowMs, int maxPending){
+		disableUpdateCoalescing();
+		updateCoalescer = new UpdateCoalescer(this, windowMs, maxPending);
+	}
+	/**
+	 * Write pending updates and disable update coalescing (default).
+	 */
+	public synchronized void disableUpdateCoalescing(){
+		UpdateCoalescer coalescer = updateCoalescer;
+		updateCoalescer = null;
+		if (coalescer != null){
+			coalescer.close();
+		}
+	}
+	/**
+	 * Write pending updates of update coalescing now (if enabled).
+	 */
+	public void flushUpdates(){
+		UpdateCoalescer coalescer = updateCoalescer;
+		if (coalescer != null){
+			coalescer.flush();
+		}
+	}
+	/**
+	 * Get statistics of update coalescing or null if it is disabled.
+	 * @return JSONObject with "updates", "merged", "written", "failed" and "batches"
+	 */
+	public JSONObject getUpdateCoalescingStatistics(){
+		UpdateCoalescer coalescer = updateCoalescer;
+		return (coalescer != null)? coalescer.getStatistics() : null;
+	}
+	
+	/**
+	 * Check data for script and upsert to get update or create behavior.
+	 */
+	private static JSONObject getUpdateBody(JSONObject data){
+		if (!data.containsKey("script") && !data.containsKey("doc_as_upsert")){
+			JSONObject dataUpdate = new JSONObject();
+			JSON.put(dataUpdate, "doc", data);
+			JSON.put(dataUpdate, "doc_as_upsert", Boolean.TRUE);
+			return dataUpdate;
+		}
+		return data;
+	}
+	
 	/**
 	 * Remove field of document at index/type/id.
 	 * @param index - index name, e.g. "account"
@@ -372,7 +649,7 @@ public class Elasticsearch implements DatabaseInterface {
 	 */
 	public int deleteFromDocument(String index, String type, String id, String field){		
 		//Build URL
-		String url = server + "/" + index + "/" + type + "/" + id + "/_update";
+		String endpoint = "/" + index + "/" + type + "/" + id + "/_update";
 		
 		JSONObject data;
 		if (field.contains(".")){
@@ -410,7 +687,7 @@ public class Elasticsearch implements DatabaseInterface {
 		headers.put("Content-Type", "application/json");
 		headers.put("Content-Length", Integer.toString(dataStr.getBytes().length));
 		
-		JSONObject result = esHttpPOST(url, dataStr, headers);
+		JSONObject result = esHttpPOST(endpoint, dataStr, headers);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
@@ -433,9 +710,9 @@ public class Elasticsearch implements DatabaseInterface {
 	 */
 	public JSONObject getDocument(String index, String type, String id){		
 		//Build URL
-		String url = server + "/" + index + "/" + type + "/" + id;
+		String endpoint = "/" + index + "/" + type + "/" + id;
 		
-		JSONObject result = esHttpGET(url);
+		JSONObject result = esHttpGET(endpoint);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
@@ -459,6 +736,29 @@ public class Elasticsearch implements DatabaseInterface {
 	public JSONObject getDocument(String index, String type, String id, String sources){
 		return getDocument(index, type, id + "?_source=" + sources.replaceAll("\\s+", "").trim());
 	}
+	/**
+	 * Get document at path "index/type/id" with trimmed response.
+	 * @param index - index name, e.g. "account"
+	 * @param type - type name, e.g. "user"
+	 * @param id - id name/number, e.g. user_id
+	 * @param filter - {@link ResponseFilter} with "filter_path", source includes/excludes or compact mode
+	 * @return JSONObject with document data or error
+	 */
+	public JSONObject getDocumentFiltered(String index, String type, String id, ResponseFilter filter){
+		String endpoint = filter.addToEndpoint("/" + index + "/" + type + "/" + id, ResponseFilter.DOCUMENT_COMPACT_PATH, null);
+		
+		JSONObject result = esHttpGET(endpoint);
+		
+		//success?
+		if (Connectors.httpSuccess(result)){
+			return filter.isCompact()? ResponseFilter.compactDocument(result) : result;
+		
+		//error
+		}else{
+			Debugger.println("getDocument - ElasticSearch - error in '" + index + "/" + type + "': " + result.toJSONString(), 1);
+			return result;
+		}
+	}
 	
 	/**
 	 * Get multiple documents of path "index/type" and filter by sources list.
@@ -470,26 +770,455 @@ public class Elasticsearch implements DatabaseInterface {
 	 * @return
 	 */
 	public JSONObject getDocuments(String index, String type, int from, int size, Collection<String> sources){
+		return getDocumentsFiltered(index, type, from, size, Is.notNullOrEmpty(sources)? ResponseFilter.create().includes(sources) : null);
+	}
+	/**
+	 * Get multiple documents of path "index/type" with trimmed response.
+	 * @param index - index name, e.g. "users"
+	 * @param type - type name, e.g. "all"
+	 * @param from - start from result page X (e.g.: 0)
+	 * @param size - return this many results (e.g.: 50)
+	 * @param filter - {@link ResponseFilter} with "filter_path", source includes/excludes or compact mode (or null for full response)
+	 * @return search result or null
+	 */
+	public JSONObject getDocumentsFiltered(String index, String type, int from, int size, ResponseFilter filter){
 		//Build URL
-		String url = server + "/" + index + "/" + type + "/_search" + "?from=" + from + "&size=" + size;
-		if (Is.notNullOrEmpty(sources)){
-			url += "&_source=" + String.join(",", sources);
+		String endpoint = "/" + index + "/" + type + "/_search" + "?from=" + from + "&size=" + size;
+		if (filter != null){
+			endpoint = filter.addToEndpoint(endpoint, ResponseFilter.SEARCH_COMPACT_PATH, null);
 		}
 		
-		JSONObject result = esHttpGET(url);
+		JSONObject result = esHttpGET(endpoint);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
 		if (Connectors.httpSuccess(result)){
-			return result;
+			return (filter != null && filter.isCompact())? ResponseFilter.compactSearchResult(result) : result;
 
 		//error
 		}else{
-			Debugger.println("getDocuments - ElasticSearch - error in '" + index + "/" + type + "' with requested sources '" + sources + "': " + result.toJSONString(), 1);
+			Debugger.println("getDocuments - ElasticSearch - error in '" + index + "/" + type + "': " + result.toJSONString(), 1);
 			return null;
 		}
 	}
 	
+	/**
+	 * Write many documents with one "_bulk" request. Use {@link BatchWriter} to buffer single writes and send them in bulks.
+	 * @param actions - list of {@link BatchAction} (index, update or delete)
+	 * @return JSON with "code" (0 - all good, 1 - no connection or at least one item failed), "errors" (number of failed items) and "items",
+	 * an array with one result per action in same order: {"code":0 or 1, "_id":"...", "status":201, "error":"..." (if failed)}
+	 */
+	public JSONObject writeBulk(List<BatchAction> actions){
+		if (actions.isEmpty()){
+			return JSON.make("code", 0, "errors", 0, "items", new JSONArray());
+		}
+		//Build URL
+		String endpoint = "/_bulk";
+		
+		//Build NDJSON body - each action has a meta line and (except delete) a source line
+		StringBuilder sb = new StringBuilder(actions.size() * 256);
+		for (BatchAction a : actions){
+			JSONObject meta = JSON.make("_index", a.getIndex(), "_type", a.getDocType());
+			if (a.getId() != null){
+				JSON.put(meta, "_id", a.getId());
+			}
+			sb.append(JSON.make(a.getType().name(), meta).toJSONString()).append("\n");
+			if (a.getType() == BatchAction.Type.update){
+				sb.append(getUpdateBody(a.getData()).toJSONString()).append("\n");
+			}else if (a.getType() == BatchAction.Type.index){
+				sb.append(a.getDataString()).append("\n");
+			}
+		}
+		
+		//headers
+		HashMap<String, String> headers = new HashMap<String, String>();
+		headers.put("Content-Type", "application/x-ndjson");
+		
+		JSONObject result = esHttpPOST(endpoint, sb.toString(), headers);
+		//System.out.println(result.toJSONString()); 		//debug
+		
+		JSONArray items = new JSONArray();
+		int errors = 0;
+		JSONArray resultItems = JSON.getJArray(result, "items");
+		if (!Connectors.httpSuccess(result) || resultItems == null || resultItems.size() != actions.size()){
+			Debugger.println("writeBulk - ElasticSearch - error in bulk of " + actions.size() + " actions: " + result.toJSONString(), 1);
+			for (BatchAction a : actions){
+				JSON.add(items, JSON.make("code", 1, "_id", a.getId(), "error", "bulk request failed"));
+			}
+			return JSON.make("code", 1, "errors", actions.size(), "items", items);
+		}
+		for (Object o : resultItems){
+			//each item looks like {"index": {"_id": "...", "status": 201, "error": {...}}}
+			JSONObject itemRes = (JSONObject) ((JSONObject) o).values().iterator().next();
+			int status = JSON.getIntegerOrDefault(itemRes, "status", 500);
+			JSONObject item = JSON.make("_id", itemRes.get("_id"), "status", status);
+			//NOTE: deleting a missing doc (404) is no error for us (same as a successful delete)
+			boolean isDeleteMiss = status == 404 && !itemRes.containsKey("error");
+			if ((status >= 200 && status < 300) || isDeleteMiss){
+				JSON.put(item, "code", 0);
+			}else{
+				JSON.put(item, "code", 1);
+				Object error = itemRes.get("error");
+				JSON.put(item, "error", (error != null)? error.toString() : ("status " + status));
+				errors++;
+			}
+			JSON.add(items, item);
+		}
+		if (errors > 0){
+			Debugger.println("writeBulk - ElasticSearch - " + errors + " of " + actions.size() + " actions failed, first error: " 
+					+ getFirstBulkError(items), 1);
+		}
+		return JSON.make("code", (errors == 0)? 0 : 1, "errors", errors, "items", items);
+	}
+	private static String getFirstBulkError(JSONArray items){
+		for (Object o : items){
+			Object error = ((JSONObject) o).get("error");
+			if (error != null){
+				return error.toString();
+			}
+		}
+		return "";
+	}
+	
+	/**
+	 * Enable micro-batching for {@link #searchByJson(String, String)}: searches that are issued by different threads within a short
+	 * time window are sent together as one "_msearch" request. Each caller waits at most 'windowMs' longer than for a single search.
+	 * @param windowMs - time to wait for more searches after the first one (e.g. 5ms)
+	 * @param maxBatchSize - send batch immediately when it has this many searches
+	 */
+	public void enableSearchBatching(long windowMs, int maxBatchSize){
+		this.searchBatcher = new SearchBatcher(this, windowMs, maxBatchSize);
+	}
+	/**
+	 * Disable micro-batching of searches (default).
+	 */
+	public void disableSearchBatching(){
+		this.searchBatcher = null;
+	}
+	/**
+	 * Get statistics of search micro-batching or null if it is disabled.
+	 * @return JSONObject with "searches", "batches" and "averageBatchSize"
+	 */
+	public JSONObject getSearchBatchingStatistics(){
+		SearchBatcher batcher = searchBatcher;
+		return (batcher != null)? batcher.getStatistics() : null;
+	}
+	
+	/**
+	 * Run many searches with one "_msearch" request.
+	 * @param paths - paths for each search, e.g. "index/type/" or "index/" (same format as in {@link #searchByJson(String, String)})
+	 * @param jsonQueries - query for each search as JSON string
+	 * @return results in same order as the queries, each in the format of {@link #searchByJson(String, String)} 
+	 * (check with {@code Connectors.httpSuccess(...)})
+	 */
+	public List<JSONObject> multiSearchByJson(List<String> paths, List<String> jsonQueries){
+		if (paths.size() != jsonQueries.size()){
+			throw new IllegalArgumentException("paths and queries must have same size");
+		}
+		List<JSONObject> results = new ArrayList<>(paths.size());
+		if (paths.isEmpty()){
+			return results;
+		}
+		//Build URL
+		String endpoint = "/_msearch";
+		
+		//Build NDJSON body - each search has a header line with index (and type) and a query line
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < paths.size(); i++){
+			String[] parts = paths.get(i).replaceFirst("^/", "").split("/");
+			JSONObject header = JSON.make("index", parts[0]);
+			if (parts.length > 1 && Is.notNullOrEmpty(parts[1])){
+				JSON.put(header, "type", parts[1]);
+			}
+			String query = jsonQueries.get(i);
+			if (query.indexOf('\n') >= 0){
+				query = JSON.parseStringOrFail(query).toJSONString();		//NDJSON needs single line
+			}
+			sb.append(header.toJSONString()).append("\n").append(query).append("\n");
+		}
+		
+		//headers
+		HashMap<String, String> headers = new HashMap<String, String>();
+		headers.put("Content-Type", "application/x-ndjson");
+		
+		JSONObject result = esHttpPOST(endpoint, sb.toString(), headers, true);
+		//System.out.println(result.toJSONString()); 		//debug
+		
+		JSONArray responses = JSON.getJArray(result, "responses");
+		if (!Connectors.httpSuccess(result) || responses == null || responses.size() != paths.size()){
+			Debugger.println("multiSearchByJson - ElasticSearch - error in multi-search with " + paths.size() + " queries: " + result.toJSONString(), 1);
+			for (int i = 0; i < paths.size(); i++){
+				results.add(JSON.make(Connectors.HTTP_REST_SUCCESS, false, "code", result.get("code"), "error", result.get("error")));
+			}
+			return results;
+		}
+		for (Object o : responses){
+			JSONObject res = (JSONObject) o;
+			int status = JSON.getIntegerOrDefault(res, "status", 200);
+			if (res.containsKey("error") || status >= 300){
+				//same format as failed single search
+				results.add(JSON.make(Connectors.HTTP_REST_SUCCESS, false, "code", status, "error", String.valueOf(res.get("error"))));
+			}else{
+				JSON.put(res, Connectors.HTTP_REST_SUCCESS, true);
+				results.add(res);
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Get many documents of path "index/type" by id with "_mget". Large id sets are split into chunks of {@link #mgetChunkSize}
+	 * that are requested in parallel.
+	 * @param index - index name, e.g. "users"
+	 * @param type - type name, e.g. "all" (or null)
+	 * @param ids - document ids
+	 * @param sources - fields to extract, e.g. ["key1", "key2"], or null for all
+	 * @return Map with ids as keys (in order of ids) and documents as value, each with "found": true/false and "_source" if found.
+	 * If a request fails the documents get "found": false and "error".
+	 */
+	public Map<String, JSONObject> getDocuments(String index, String type, Collection<String> ids, Collection<String> sources){
+		return getDocumentsFiltered(index, type, ids, Is.notNullOrEmpty(sources)? ResponseFilter.create().includes(sources) : null);
+	}
+	/**
+	 * Get many documents of path "index/type" by id with "_mget" and trimmed response, see {@link #getDocuments(String, String, Collection, Collection)}.
+	 * @param index - index name, e.g. "users"
+	 * @param type - type name, e.g. "all" (or null)
+	 * @param ids - document ids
+	 * @param filter - {@link ResponseFilter} with "filter_path" (applied to each doc, e.g. "docs._source.name"), source includes/excludes 
+	 * or compact mode (or null for full documents)
+	 * @return Map with ids as keys (in order of ids) and documents as value
+	 */
+	public Map<String, JSONObject> getDocumentsFiltered(String index, String type, Collection<String> ids, ResponseFilter filter){
+		Map<String, JSONObject> docs = new HashMap<>();
+		List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+		if (uniqueIds.isEmpty()){
+			return new LinkedHashMap<>();
+		}
+		//Build URL
+		String endpoint = "/" + (Is.notNullOrEmpty(type)? (index + "/" + type) : index) + "/_mget";
+		if (filter != null){
+			endpoint = filter.addToEndpoint(endpoint, ResponseFilter.MGET_COMPACT_PATH, "docs._id,docs.found,docs.error,error,status");
+		}
+		
+		//headers
+		HashMap<String, String> headers = new HashMap<String, String>();
+		headers.put("Content-Type", "application/json");
+		
+		//split into chunks
+		List<List<String>> chunks = new ArrayList<>();
+		List<String> bodies = new ArrayList<>();
+		for (int i = 0; i < uniqueIds.size(); i += mgetChunkSize){
+			List<String> chunk = uniqueIds.subList(i, Math.min(uniqueIds.size(), i + mgetChunkSize));
+			chunks.add(chunk);
+			bodies.add(JSON.make("ids", JSON.stringListToJSONArray(chunk)).toJSONString());
+		}
+		List<JSONObject> results;
+		if (chunks.size() == 1){
+			results = Arrays.asList(esHttpPOST(endpoint, bodies.get(0), headers, true));
+		}else{
+			//parallel requests balanced over nodes, chunks of failed nodes are retried afterwards
+			Map<String, String> requestHeaders = (Is.notNullOrEmpty(this.esAuthData))? addAuthHeader(headers) : headers;
+			List<ElasticsearchNodes.Node> chunkNodes = new ArrayList<>();
+			List<Connectors.Request> requests = new ArrayList<>();
+			for (String body : bodies){
+				ElasticsearchNodes.Node node = nodes.select(null);
+				node.start();
+				chunkNodes.add(node);
+				requests.add(Connectors.Request.post(node.getUrl() + endpoint, body, requestHeaders));
+			}
+			results = new ArrayList<>(Connectors.executeAll(requests, mgetMaxConcurrency, mgetTimeoutMs));
+			for (int c = 0; c < chunks.size(); c++){
+				boolean failed = isNodeFailure(results.get(c));
+				chunkNodes.get(c).finish(failed);
+				if (failed && nodes.size() > 1){
+					results.set(c, esHttpPOST(endpoint, bodies.get(c), headers, true));
+				}
+			}
+		}
+		
+		for (int c = 0; c < chunks.size(); c++){
+			JSONObject result = results.get(c);
+			JSONArray resultDocs = JSON.getJArray(result, "docs");
+			if (!Connectors.httpSuccess(result) || resultDocs == null){
+				Debugger.println("getDocuments - ElasticSearch - error in '" + index + "/" + type + "' for " + chunks.get(c).size() + " ids: " + result.toJSONString(), 1);
+				for (String id : chunks.get(c)){
+					docs.put(id, JSON.make("_id", id, "found", false, "error", result.get("error")));
+				}
+				continue;
+			}
+			for (Object o : resultDocs){
+				JSONObject doc = (JSONObject) o;
+				if (!doc.containsKey("found")){
+					JSON.put(doc, "found", false);		//e.g. doc with "error"
+				}
+				docs.put((String) doc.get("_id"), (filter != null && filter.isCompact())? ResponseFilter.compactDocument(doc) : doc);
+			}
+		}
+		//make sure every id has an entry (in order of request)
+		Map<String, JSONObject> ordered = new LinkedHashMap<>();
+		for (String id : uniqueIds){
+			JSONObject doc = docs.get(id);
+			ordered.put(id, (doc != null)? doc : JSON.make("_id", id, "found", false));
+		}
+		return ordered;
+	}
+	
+	/**
+	 * Iterate over all documents of "index/type" that match a query. Results are loaded lazily page by page with point-in-time
+	 * and "search_after" (or scroll if point-in-time is not supported or disabled via {@link #usePointInTime}), so memory use does
+	 * not depend on the number of hits and there is no "max_result_window" limit.<br>
+	 * NOTE: Close the stream (e.g. try-with-resources) if you stop early (e.g. with 'limit' or 'findFirst') to release the
+	 * search context on the server. It is released automatically when the last page was read.
+	 * @param index - index name, e.g. "users"
+	 * @param type - type name, e.g. "all" (ignored for point-in-time search since it works on index level) or null
+	 * @param query - query object, e.g. {"term": {"language": "en"}}, or null for all documents
+	 * @param pageSize - number of documents loaded per request (e.g.: 500)
+	 * @param sources - fields to extract, e.g. ["key1", "key2"], or null for all
+	 * @return lazy {@link Stream} of hits, each like {"_id": "...", "_source": {...}}. Throws a RuntimeException if a page request fails.
+	 */
+	public Stream<JSONObject> streamDocuments(String index, String type, JSONObject query, int pageSize, Collection<String> sources){
+		HitIterator it = new HitIterator(index, type, query, pageSize, sources);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(it::close);
+	}
+	/**
+	 * Iterate over all documents of "index/type". See {@link #streamDocuments(String, String, JSONObject, int, Collection)}.
+	 */
+	public Stream<JSONObject> streamDocuments(String index, String type, int pageSize, Collection<String> sources){
+		return streamDocuments(index, type, null, pageSize, sources);
+	}
+	
+	/**
+	 * Iterator over search hits that loads one page at a time (point-in-time + search_after or scroll).
+	 */
+	private class HitIterator implements Iterator<JSONObject> {
+		private final String index;
+		private final String type;
+		private final JSONObject query;
+		private final int pageSize;
+		private final Collection<String> sources;
+		
+		private boolean started = false;
+		private boolean exhausted = false;
+		private String pitId = null;
+		private String scrollId = null;
+		private JSONArray searchAfter = null;
+		private Iterator<?> page = Collections.emptyIterator();
+		
+		HitIterator(String index, String type, JSONObject query, int pageSize, Collection<String> sources){
+			this.index = index;
+			this.type = type;
+			this.query = query;
+			this.pageSize = Math.max(1, pageSize);
+			this.sources = sources;
+		}
+		
+		@Override
+		public boolean hasNext(){
+			while (!page.hasNext() && !exhausted){
+				loadNextPage();
+			}
+			return page.hasNext();
+		}
+		@Override
+		public JSONObject next(){
+			if (!hasNext()){
+				throw new NoSuchElementException();
+			}
+			return (JSONObject) page.next();
+		}
+		
+		private JSONObject getSearchBody(){
+			JSONObject body = new JSONObject();
+			JSON.put(body, "size", pageSize);
+			JSON.put(body, "query", (query != null)? query : JSON.make("match_all", new JSONObject()));
+			if (Is.notNullOrEmpty(sources)){
+				JSON.put(body, "_source", JSON.stringCollectionToJSONArray(sources));
+			}
+			return body;
+		}
+		
+		private void loadNextPage(){
+			JSONObject result = null;
+			if (!started){
+				started = true;
+				if (usePointInTime){
+					JSONObject pit = esHttpPOST("/" + index + "/_pit?keep_alive=" + searchKeepAlive, "", null, true);
+					if (Connectors.httpSuccess(pit) && pit.containsKey("id")){
+						pitId = (String) pit.get("id");
+					}else{
+						Debugger.println("streamDocuments - ElasticSearch - point-in-time not available for '" + index + "', using scroll.", 3);
+					}
+				}
+			}
+			if (pitId != null){
+				JSONObject body = getSearchBody();
+				JSON.put(body, "pit", JSON.make("id", pitId, "keep_alive", searchKeepAlive));
+				JSON.put(body, "sort", JSON.makeArray(JSON.make("_shard_doc", "asc")));
+				if (searchAfter != null){
+					JSON.put(body, "search_after", searchAfter);
+				}
+				result = esHttpPOST("/_search", body.toJSONString(), null, true);
+				if (Connectors.httpSuccess(result)){
+					if (result.containsKey("pit_id")){
+						pitId = (String) result.get("pit_id");
+					}
+				}else if (searchAfter == null){
+					//first page failed (e.g. older version without '_shard_doc') - release and try scroll
+					Debugger.println("streamDocuments - ElasticSearch - point-in-time search failed for '" + index + "', using scroll.", 3);
+					esHttpDELETE("/_pit", JSON.make("id", pitId).toJSONString());
+					pitId = null;
+				}
+			}
+			if (pitId == null){
+				if (scrollId == null){
+					JSONObject body = getSearchBody();
+					JSON.put(body, "sort", JSON.makeArray("_doc"));
+					String path = Is.notNullOrEmpty(type)? (index + "/" + type) : index;
+					result = esHttpPOST("/" + path + "/_search?scroll=" + searchKeepAlive, body.toJSONString(), null, true);
+				}else{
+					JSONObject body = JSON.make("scroll", searchKeepAlive, "scroll_id", scrollId);
+					result = esHttpPOST("/_search/scroll", body.toJSONString(), null, true);
+				}
+			}
+			if (!Connectors.httpSuccess(result)){
+				close();
+				throw new RuntimeException("streamDocuments - ElasticSearch - failed to load page of '" + index + "': " + result.toJSONString());
+			}
+			if (result.containsKey("_scroll_id")){
+				scrollId = (String) result.get("_scroll_id");
+			}
+			JSONArray hits = HITS_PATH.getJArray(result);
+			if (hits == null || hits.isEmpty()){
+				page = Collections.emptyIterator();
+				close();
+				return;
+			}
+			if (pitId != null){
+				searchAfter = JSON.getJArray((JSONObject) hits.get(hits.size() - 1), "sort");
+			}
+			page = hits.iterator();
+			if (hits.size() < pageSize){
+				close();		//last page, release context early (remaining hits of this page are still delivered)
+			}
+		}
+		
+		/**
+		 * Release point-in-time or scroll context (if any) and stop loading pages.
+		 */
+		void close(){
+			exhausted = true;
+			if (pitId != null){
+				esHttpDELETE("/_pit", JSON.make("id", pitId).toJSONString());
+				pitId = null;
+			}
+			if (scrollId != null){
+				esHttpDELETE("/_search/scroll", JSON.make("scroll_id", scrollId).toJSONString());
+				scrollId = null;
+			}
+		}
+	}
+	
 	/**
 	 * Delete document at "index/type/id".
 	 * @param index - index name, e.g. "account"
@@ -499,9 +1228,9 @@ public class Elasticsearch implements DatabaseInterface {
 	 */
 	public int deleteDocument(String index, String type, String id){
 		//Build URL
-		String url = server + "/" + index + "/" + type + "/" + id;
+		String endpoint = "/" + index + "/" + type + "/" + id;
 		
-		JSONObject result = esHttpDELETE(url);
+		JSONObject result = esHttpDELETE(endpoint);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
@@ -521,9 +1250,9 @@ public class Elasticsearch implements DatabaseInterface {
 	 */
 	public int deleteAny(String path){
 		//Build URL
-		String url = server + "/" + path;
+		String endpoint = "/" + path;
 		
-		JSONObject result = esHttpDELETE(url);
+		JSONObject result = esHttpDELETE(endpoint);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
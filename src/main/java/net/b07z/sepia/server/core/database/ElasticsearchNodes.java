@@ -0,0 +1,277 @@
+package net.b07z.sepia.server.core.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import net.b07z.sepia.server.core.tools.Debugger;
+import net.b07z.sepia.server.core.tools.JSON;
+
+/**
+ * Node list of an {@link Elasticsearch} cluster with health-aware selection. Requests go to the alive node with the least
+ * outstanding requests (or round-robin, see {@link #strategy}). Nodes that fail (I/O error, circuit open, 502/503/504) are marked
+ * dead for a backoff time that doubles with every consecutive failure. After the backoff a node gets requests again (resurrection)
+ * and is alive again after the first success. If all nodes are dead the one with the shortest remaining backoff is used.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class ElasticsearchNodes {
+
+	public enum Strategy {
+		round_robin,
+		least_outstanding
+	}
+
+	//Settings
+	public static Strategy strategy = Strategy.least_outstanding;
+	public static long deadBackoffMs = 1000;			//backoff after first failure, doubles with every further failure
+	public static long maxDeadBackoffMs = 60000;
+	public static boolean sniffUseIpAddresses = false;	//use IPs of sniffed nodes instead of host names (breaks TLS host name verification)
+
+	private volatile List<Node> nodes;
+	private final AtomicInteger roundRobin = new AtomicInteger();
+
+	/**
+	 * One node of the cluster.
+	 */
+	public static class Node {
+		private final String url;
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private final AtomicLong requests = new AtomicLong();
+		private final AtomicLong totalFailures = new AtomicLong();
+		private int failures = 0;			//consecutive failures (guarded by this)
+		private long deadUntil = 0;			//(guarded by this)
+
+		Node(String url){
+			this.url = url;
+		}
+
+		/**
+		 * Base URL of node, e.g. "http://localhost:9200".
+		 */
+		public String getUrl(){
+			return url;
+		}
+		/**
+		 * True if node has no recent failures (or its backoff is over).
+		 */
+		public synchronized boolean isAlive(){
+			return failures == 0 || System.currentTimeMillis() >= deadUntil;
+		}
+		synchronized long getDeadUntil(){
+			return (failures == 0)? 0 : deadUntil;
+		}
+
+		/**
+		 * Count request start (call before request).
+		 */
+		void start(){
+			outstanding.incrementAndGet();
+			requests.incrementAndGet();
+		}
+		/**
+		 * Count request end and update health (call after request).
+		 * @param failed - true if node did not answer or was unavailable
+		 */
+		void finish(boolean failed){
+			outstanding.decrementAndGet();
+			if (failed){
+				totalFailures.incrementAndGet();
+				long backoff;
+				synchronized (this){
+					failures++;
+					backoff = Math.min(maxDeadBackoffMs, deadBackoffMs << Math.min(failures - 1, 20));
+					deadUntil = System.currentTimeMillis() + backoff;
+				}
+				Debugger.println("ElasticsearchNodes - node '" + url + "' marked as dead for " + backoff + "ms", 1);
+			}else{
+				boolean wasDead;
+				synchronized (this){
+					wasDead = failures > 0;
+					failures = 0;
+					deadUntil = 0;
+				}
+				if (wasDead){
+					Debugger.println("ElasticsearchNodes - node '" + url + "' is alive again", 3);
+				}
+			}
+		}
+
+		synchronized JSONObject getStatistics(){
+			long now = System.currentTimeMillis();
+			return JSON.make(
+				"alive", isAlive(),
+				"outstanding", outstanding.get(),
+				"requests", requests.get(),
+				"failures", totalFailures.get(),
+				"deadForMs", (failures > 0)? Math.max(0, deadUntil - now) : 0
+			);
+		}
+	}
+
+	/**
+	 * Create node list.
+	 * @param urls - base URLs of nodes, e.g. ["http://es1:9200", "http://es2:9200"]
+	 */
+	public ElasticsearchNodes(Collection<String> urls){
+		if (urls == null || urls.isEmpty()){
+			throw new IllegalArgumentException("at least one node URL is required");
+		}
+		List<Node> list = new ArrayList<>();
+		for (String url : urls){
+			list.add(new Node(normalizeUrl(url)));
+		}
+		this.nodes = Collections.unmodifiableList(list);
+	}
+
+	private static String normalizeUrl(String url){
+		return url.endsWith("/")? url.substring(0, url.length() - 1) : url;
+	}
+
+	/**
+	 * Current nodes.
+	 */
+	public List<Node> getNodes(){
+		return nodes;
+	}
+	/**
+	 * Number of nodes.
+	 */
+	public int size(){
+		return nodes.size();
+	}
+
+	/**
+	 * Replace node list (e.g. after sniffing). Nodes that are already known keep their health state. An empty list is ignored.
+	 * @param urls - base URLs of nodes
+	 */
+	public synchronized void setNodes(Collection<String> urls){
+		if (urls == null || urls.isEmpty()){
+			return;
+		}
+		Map<String, Node> known = new LinkedHashMap<>();
+		for (Node n : nodes){
+			known.put(n.url, n);
+		}
+		List<Node> list = new ArrayList<>();
+		for (String url : urls){
+			String u = normalizeUrl(url);
+			Node n = known.get(u);
+			list.add((n != null)? n : new Node(u));
+		}
+		if (!new ArrayList<>(known.keySet()).equals(getUrlList(list))){
+			Debugger.println("ElasticsearchNodes - node list changed to: " + getUrlList(list), 3);
+		}
+		this.nodes = Collections.unmodifiableList(list);
+	}
+
+	private static List<String> getUrlList(List<Node> list){
+		List<String> urls = new ArrayList<>();
+		for (Node n : list){
+			urls.add(n.url);
+		}
+		return urls;
+	}
+
+	/**
+	 * Select node for next request.
+	 * @param exclude - nodes that should not be used (e.g. already tried), can be null
+	 * @return node or null if all nodes are excluded
+	 */
+	public Node select(Collection<Node> exclude){
+		List<Node> current = nodes;
+		int size = current.size();
+		int offset = Math.floorMod(roundRobin.getAndIncrement(), size);
+		Node best = null;
+		Node leastDead = null;
+		for (int i = 0; i < size; i++){
+			Node n = current.get((offset + i) % size);
+			if (exclude != null && exclude.contains(n)){
+				continue;
+			}
+			if (!n.isAlive()){
+				if (leastDead == null || n.getDeadUntil() < leastDead.getDeadUntil()){
+					leastDead = n;
+				}
+				continue;
+			}
+			if (strategy == Strategy.round_robin){
+				return n;
+			}
+			if (best == null || n.outstanding.get() < best.outstanding.get()){
+				best = n;
+			}
+		}
+		return (best != null)? best : leastDead;
+	}
+
+	/**
+	 * Get node URLs from the result of "GET _nodes/http". The host name of each "publish_address" ("host/ip:port") is used,
+	 * nodes that publish only an IP are skipped unless {@link #sniffUseIpAddresses} is true (then IPs are used for all nodes).
+	 * @param result - response of ES
+	 * @param scheme - scheme to use, e.g. "http" or "https"
+	 * @return list of URLs (empty if result has no usable nodes)
+	 */
+	public static List<String> getNodeUrls(JSONObject result, String scheme){
+		List<String> urls = new ArrayList<>();
+		JSONObject nodes = (JSONObject) result.get("nodes");
+		if (nodes == null){
+			return urls;
+		}
+		for (Object o : nodes.values()){
+			JSONObject http = (JSONObject) ((JSONObject) o).get("http");
+			if (http == null){
+				continue;		//node without HTTP
+			}
+			String address = (String) http.get("publish_address");
+			if (address == null){
+				continue;
+			}
+			//format can be "host/ip:port" or "ip:port"
+			int slash = address.indexOf('/');
+			int colon = address.lastIndexOf(':');
+			if (sniffUseIpAddresses){
+				if (slash >= 0){
+					address = address.substring(slash + 1);
+				}
+			}else if (slash > 0 && colon > slash){
+				address = address.substring(0, slash) + address.substring(colon);		//host:port
+			}else{
+				continue;		//no host name
+			}
+			urls.add(scheme + "://" + address);
+		}
+		return urls;
+	}
+
+	/**
+	 * Get statistics of all nodes.
+	 * @return JSONObject with node URLs as keys and "alive", "outstanding", "requests", "failures", "deadForMs" as value
+	 */
+	public JSONObject getStatistics(){
+		JSONObject stats = new JSONObject();
+		for (Node n : nodes){
+			JSON.put(stats, n.url, n.getStatistics());
+		}
+		return stats;
+	}
+	/**
+	 * URLs of all nodes.
+	 */
+	public JSONArray getUrls(){
+		JSONArray urls = new JSONArray();
+		for (Node n : nodes){
+			JSON.add(urls, n.url);
+		}
+		return urls;
+	}
+}
@@ -0,0 +1,1031 @@
+package net.b07z.sepia.server.core.database;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import net.b07z.sepia.server.core.tools.Connectors;
+import net.b07z.sepia.server.core.tools.Debugger;
+import net.b07z.sepia.server.core.tools.JSON;
+
+/**
+ * In-process implementation of {@link DatabaseInterface} for tests and small single-box setups. Documents are stored in concurrent maps
+ * per index/type and every index keeps an inverted term index, so searches don't need to scan all documents.
+ * Results have the same format as {@link Elasticsearch} results.<br>
+ * <br>
+ * Supported in {@link #searchByJson(String, String)} and {@link #deleteByJson(String, String)} (the queries of {@link net.b07z.sepia.server.core.tools.EsQueryBuilder}):
+ * "match_all", "match" (OR or "operator": "and"), "match_phrase" (all terms), "term", "terms", "range" (gt, gte, lt, lte),
+ * "exists", "prefix", "nested" and "bool" with "must", "filter", "should" ("minimum_should_match") and "must_not".
+ * The body can have "from", "size", "sort" (by field values) and "_source" (list of fields).<br>
+ * Text is analyzed similar to the standard analyzer (lower-case, split at non-alphanumeric characters). "term" matches the exact value
+ * or a single analyzed token. There is no relevance scoring, hits are sorted by time of last write if no "sort" is given.<br>
+ * <br>
+ * NOTE: Scripted updates are not supported. Use {@link #saveSnapshot(String)} and {@link #loadSnapshot(String)} to keep data on disk.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class InMemoryDatabase implements DatabaseInterface {
+
+	private final Map<String, IndexData> indices = new ConcurrentHashMap<>();
+	private final AtomicLong seqNo = new AtomicLong();
+
+	/**
+	 * Stored document (immutable, replaced on every write).
+	 */
+	private static class StoredDoc {
+		final JSONObject source;
+		final long version;
+		final long seqNo;
+
+		StoredDoc(JSONObject source, long version, long seqNo){
+			this.source = source;
+			this.version = version;
+			this.seqNo = seqNo;
+		}
+	}
+
+	/**
+	 * Documents and term index of one index. Writes and searches are guarded by the lock, single reads use the concurrent maps directly.
+	 */
+	private static class IndexData {
+		final Map<String, Map<String, StoredDoc>> types = new ConcurrentHashMap<>();
+		final TermIndex terms = new TermIndex();
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	}
+
+	/**
+	 * Inverted index: field -> term -> keys of documents ("type/id").
+	 */
+	private static class TermIndex {
+		final Map<String, Map<String, Set<String>>> tokens = new HashMap<>();		//analyzed tokens
+		final Map<String, Map<String, Set<String>>> exact = new HashMap<>();		//exact values
+		final Map<String, Set<String>> fields = new HashMap<>();					//documents that have the field (or object)
+		final Set<String> docs = new HashSet<>();
+
+		void add(String docKey, JSONObject source){
+			docs.add(docKey);
+			forEachValue(source, "", (field, value) -> {
+				fields.computeIfAbsent(field, k -> new HashSet<>()).add(docKey);
+				if (value instanceof JSONObject){
+					return;
+				}
+				String exactValue = normalize(value);
+				exact.computeIfAbsent(field, k -> new HashMap<>()).computeIfAbsent(exactValue, k -> new HashSet<>()).add(docKey);
+				for (String token : getValueTokens(value)){
+					tokens.computeIfAbsent(field, k -> new HashMap<>()).computeIfAbsent(token, k -> new HashSet<>()).add(docKey);
+				}
+			});
+		}
+		void remove(String docKey, JSONObject source){
+			docs.remove(docKey);
+			forEachValue(source, "", (field, value) -> {
+				removeFrom(fields, field, docKey);
+				if (value instanceof JSONObject){
+					return;
+				}
+				String exactValue = normalize(value);
+				removeFrom(exact.get(field), exactValue, docKey);
+				for (String token : getValueTokens(value)){
+					removeFrom(tokens.get(field), token, docKey);
+				}
+			});
+		}
+		private static void removeFrom(Map<String, Set<String>> postings, String term, String docKey){
+			if (postings == null){
+				return;
+			}
+			Set<String> set = postings.get(term);
+			if (set != null){
+				set.remove(docKey);
+				if (set.isEmpty()){
+					postings.remove(term);
+				}
+			}
+		}
+		Set<String> getTokens(String field, String token){
+			Map<String, Set<String>> postings = tokens.get(field);
+			Set<String> set = (postings != null)? postings.get(token) : null;
+			return (set != null)? set : Collections.emptySet();
+		}
+		Set<String> getExact(String field, String value){
+			Map<String, Set<String>> postings = exact.get(field);
+			Set<String> set = (postings != null)? postings.get(value) : null;
+			return (set != null)? set : Collections.emptySet();
+		}
+	}
+
+	private interface ValueConsumer {
+		void accept(String field, Object value);
+	}
+
+	/**
+	 * Call consumer for every object and leaf value of source with full field path (arrays are flattened like in Elasticsearch).
+	 */
+	private static void forEachValue(Object value, String field, ValueConsumer consumer){
+		if (value instanceof JSONObject){
+			if (!field.isEmpty()){
+				consumer.accept(field, value);
+			}
+			for (Object e : ((JSONObject) value).entrySet()){
+				Map.Entry<?, ?> entry = (Map.Entry<?, ?>) e;
+				forEachValue(entry.getValue(), field.isEmpty()? (String) entry.getKey() : (field + "." + entry.getKey()), consumer);
+			}
+		}else if (value instanceof JSONArray){
+			for (Object o : (JSONArray) value){
+				forEachValue(o, field, consumer);
+			}
+		}else if (value != null){
+			consumer.accept(field, value);
+		}
+	}
+
+	/**
+	 * Value as string for exact matching (numbers like 5 and 5.0 are equal).
+	 */
+	private static String normalize(Object value){
+		if (value instanceof Number){
+			double d = ((Number) value).doubleValue();
+			if (d == Math.rint(d) && !Double.isInfinite(d) && Math.abs(d) < 9.0E15){
+				return Long.toString((long) d);
+			}
+			return Double.toString(d);
+		}
+		return String.valueOf(value);
+	}
+
+	/**
+	 * Get tokens of value (text is analyzed, numbers and booleans are one token).
+	 */
+	private static List<String> getValueTokens(Object value){
+		if (value instanceof String){
+			return analyze((String) value);
+		}
+		return Collections.singletonList(normalize(value).toLowerCase());
+	}
+	/**
+	 * Split text into lower-case tokens similar to the Elasticsearch standard analyzer.
+	 */
+	static List<String> analyze(String text){
+		List<String> tokens = new ArrayList<>();
+		for (String t : text.toLowerCase().split("[^\\p{L}\\p{N}]+")){
+			if (!t.isEmpty()){
+				tokens.add(t);
+			}
+		}
+		return tokens;
+	}
+
+	//-------------------------------------
+
+	private IndexData getIndex(String index, boolean create){
+		return create? indices.computeIfAbsent(index, k -> new IndexData()) : indices.get(index);
+	}
+
+	private static String getDocKey(String type, String id){
+		return type + "/" + id;
+	}
+
+	/**
+	 * Write document and update term index.
+	 * @return new version
+	 */
+	private long put(String index, String type, String id, JSONObject source){
+		IndexData data = getIndex(index, true);
+		data.lock.writeLock().lock();
+		try{
+			Map<String, StoredDoc> docs = data.types.computeIfAbsent(type, k -> new ConcurrentHashMap<>());
+			String docKey = getDocKey(type, id);
+			StoredDoc old = docs.get(id);
+			if (old != null){
+				data.terms.remove(docKey, old.source);
+			}
+			StoredDoc doc = new StoredDoc(source, (old != null)? (old.version + 1) : 1, seqNo.incrementAndGet());
+			docs.put(id, doc);
+			data.terms.add(docKey, source);
+			return doc.version;
+		}finally{
+			data.lock.writeLock().unlock();
+		}
+	}
+	/**
+	 * Remove document and its terms.
+	 * @return true if document existed
+	 */
+	private boolean remove(IndexData data, String type, String id){
+		data.lock.writeLock().lock();
+		try{
+			Map<String, StoredDoc> docs = data.types.get(type);
+			StoredDoc old = (docs != null)? docs.remove(id) : null;
+			if (old != null){
+				data.terms.remove(getDocKey(type, id), old.source);
+				return true;
+			}
+			return false;
+		}finally{
+			data.lock.writeLock().unlock();
+		}
+	}
+	private StoredDoc getStored(String index, String type, String id){
+		IndexData data = getIndex(index, false);
+		Map<String, StoredDoc> docs = (data != null)? data.types.get(type) : null;
+		return (docs != null)? docs.get(id) : null;
+	}
+
+	//-------INTERFACE IMPLEMENTATIONS---------
+
+	@Override
+	public int setItemData(String index, String type, String item_id, JSONObject data){
+		put(index, type, item_id, JSON.deepCopy(data));
+		return 0;
+	}
+	@Override
+	public JSONObject setAnyItemData(String index, String type, JSONObject data){
+		String id = UUID.randomUUID().toString().replace("-", "").substring(0, 20);
+		put(index, type, id, JSON.deepCopy(data));
+		return JSON.make("code", 0, "_id", id);
+	}
+
+	@Override
+	public JSONObject getItem(String index, String type, String item_id){
+		return getItemFiltered(index, type, item_id, null);
+	}
+	@Override
+	public JSONObject getItemFiltered(String index, String type, String item_id, String[] filters){
+		StoredDoc doc = getStored(index, type, item_id);
+		if (doc == null){
+			//same as Elasticsearch "not found"
+			return JSON.make(Connectors.HTTP_REST_SUCCESS, false, "code", 404, "_id", item_id, "found", false);
+		}
+		JSONObject result = JSON.make(
+			"_index", index,
+			"_type", type,
+			"_id", item_id,
+			"_version", doc.version,
+			"_seq_no", doc.seqNo,
+			"_primary_term", 1
+		);
+		JSON.put(result, "found", true);
+		JSON.put(result, "_source", filterSource(doc.source, (filters != null)? Arrays.asList(filters) : null));
+		JSON.put(result, Connectors.HTTP_REST_SUCCESS, true);
+		return result;
+	}
+
+	@Override
+	public int updateItemData(String index, String type, String item_id, JSONObject data){
+		if (data.containsKey("script")){
+			Debugger.println("InMemoryDatabase - updateItemData - scripts are not supported: " + index + "/" + type + "/" + item_id, 1);
+			return 1;
+		}
+		JSONObject update = PartialUpdates.getPartialDocument(data);
+		IndexData indexData = getIndex(index, true);
+		indexData.lock.writeLock().lock();		//NOTE: reentrant, keeps read-modify-write atomic
+		try{
+			StoredDoc old = getStored(index, type, item_id);
+			JSONObject source = (old != null)? JSON.deepCopy(old.source) : new JSONObject();
+			PartialUpdates.mergeInto(source, update);
+			put(index, type, item_id, source);
+		}finally{
+			indexData.lock.writeLock().unlock();
+		}
+		return 0;
+	}
+
+	@Override
+	public JSONObject searchSimple(String path, String search_term){
+		String[] indexAndType = parsePath(path);
+		return search(indexAndType[0], indexAndType[1], JSON.make("query", getSimpleQuery(search_term)));
+	}
+	/**
+	 * Convert simple search term (like Elasticsearch "q=...") to query.
+	 */
+	static JSONObject getSimpleQuery(String search_term){
+		JSONObject query;
+		String term = (search_term == null)? "*" : search_term.trim();
+		if (term.isEmpty() || term.equals("*")){
+			query = JSON.make("match_all", new JSONObject());
+		}else{
+			//terms are combined with OR (default operator), "field:value" searches in field, rest in all fields
+			JSONArray should = new JSONArray();
+			for (String part : term.split("\\s+")){
+				if (part.equals("AND") || part.equals("OR")){
+					continue;
+				}
+				int colon = part.indexOf(':');
+				if (colon > 0){
+					JSON.add(should, JSON.make("match", JSON.make(part.substring(0, colon), part.substring(colon + 1))));
+				}else{
+					JSON.add(should, JSON.make("match", JSON.make("*", part)));
+				}
+			}
+			query = JSON.make("bool", JSON.make("should", should));
+		}
+		return query;
+	}
+
+	@Override
+	public JSONObject searchByJson(String path, String jsonQuery){
+		String[] indexAndType = parsePath(path);
+		try{
+			return search(indexAndType[0], indexAndType[1], JSON.parseStringOrFail(jsonQuery));
+		}catch (Exception e){
+			return JSON.make(Connectors.HTTP_REST_SUCCESS, false, "code", 400, "error", e.getMessage());
+		}
+	}
+
+	@Override
+	public int deleteItem(String index, String type, String item_id){
+		IndexData data = getIndex(index, false);
+		if (data == null || !remove(data, type, item_id)){
+			return 1;		//like Elasticsearch 404
+		}
+		return 0;
+	}
+
+	@Override
+	public int deleteAnything(String path){
+		String[] parts = path.replaceFirst("^/", "").split("/");
+		String index = parts[0];
+		IndexData data = getIndex(index, false);
+		if (index.isEmpty() || data == null){
+			return 1;
+		}
+		if (parts.length == 1){
+			indices.remove(index);
+		}else if (parts.length == 2){
+			Map<String, StoredDoc> docs = data.types.get(parts[1]);
+			if (docs != null){
+				for (String id : new ArrayList<>(docs.keySet())){
+					remove(data, parts[1], id);
+				}
+			}
+		}else{
+			return deleteItem(index, parts[1], parts[2]);
+		}
+		return 0;
+	}
+
+	@Override
+	public JSONObject deleteByJson(String path, String jsonQuery){
+		String[] indexAndType = parsePath(path);
+		JSONObject body;
+		try{
+			body = JSON.parseStringOrFail(jsonQuery);
+		}catch (Exception e){
+			return JSON.make(Connectors.HTTP_REST_SUCCESS, false, "code", 400, "error", e.getMessage());
+		}
+		JSONObject query = getQuery(body);
+		long deleted = 0;
+		for (String index : getIndexNames(indexAndType[0])){
+			IndexData data = getIndex(index, false);
+			if (data == null){
+				continue;
+			}
+			data.lock.writeLock().lock();
+			try{
+				for (String docKey : new ArrayList<>(findDocs(data, indexAndType[1], query))){
+					int slash = docKey.indexOf('/');
+					if (remove(data, docKey.substring(0, slash), docKey.substring(slash + 1))){
+						deleted++;
+					}
+				}
+			}finally{
+				data.lock.writeLock().unlock();
+			}
+		}
+		JSONObject result = JSON.make("took", 0, "timed_out", false, "total", deleted, "deleted", deleted, "failures", new JSONArray());
+		JSON.put(result, Connectors.HTTP_REST_SUCCESS, true);
+		return result;
+	}
+
+	//-------SEARCH---------
+
+	/**
+	 * Get [index, type] of path like "index/type/" or "index/" (type is null). Index can be "_all", "*" or a comma separated list.
+	 */
+	static String[] parsePath(String path){
+		String[] parts = path.replaceFirst("^/", "").split("/");
+		String index = parts[0];
+		String type = (parts.length > 1 && !parts[1].isEmpty())? parts[1] : null;
+		return new String[]{ index, type };
+	}
+	private List<String> getIndexNames(String indexPattern){
+		if (indexPattern.isEmpty() || indexPattern.equals("_all") || indexPattern.equals("*")){
+			return new ArrayList<>(indices.keySet());
+		}
+		List<String> names = new ArrayList<>();
+		for (String name : indexPattern.split(",")){
+			if (indices.containsKey(name)){
+				names.add(name);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Search hit (also used by {@link LogDatabase}).
+	 */
+	static class Hit {
+		final String index;
+		final String type;
+		final String id;
+		final JSONObject source;
+		final long seqNo;
+
+		Hit(String index, String type, String id, JSONObject source, long seqNo){
+			this.index = index;
+			this.type = type;
+			this.id = id;
+			this.source = source;
+			this.seqNo = seqNo;
+		}
+	}
+
+	private JSONObject search(String indexPattern, String type, JSONObject body){
+		JSONObject query = getQuery(body);
+		List<Hit> hits = new ArrayList<>();
+		for (String index : getIndexNames(indexPattern)){
+			IndexData data = getIndex(index, false);
+			if (data == null){
+				continue;
+			}
+			data.lock.readLock().lock();
+			try{
+				for (String docKey : findDocs(data, type, query)){
+					int slash = docKey.indexOf('/');
+					String docType = docKey.substring(0, slash);
+					String id = docKey.substring(slash + 1);
+					Map<String, StoredDoc> docs = data.types.get(docType);
+					StoredDoc doc = (docs != null)? docs.get(id) : null;
+					if (doc != null){
+						hits.add(new Hit(index, docType, id, doc.source, doc.seqNo));
+					}
+				}
+			}finally{
+				data.lock.readLock().unlock();
+			}
+		}
+		return buildSearchResult(hits, body);
+	}
+	
+	/**
+	 * Get query of search body (or "match_all").
+	 */
+	static JSONObject getQuery(JSONObject body){
+		return (body.containsKey("query"))? (JSONObject) body.get("query") : JSON.make("match_all", new JSONObject());
+	}
+
+	/**
+	 * Sort hits and build Elasticsearch search result with "from", "size", "sort" and "_source" of body.
+	 */
+	static JSONObject buildSearchResult(List<Hit> hits, JSONObject body){
+		hits.sort(getComparator(body.get("sort")));
+
+		int from = Math.max(0, JSON.getIntegerOrDefault(body, "from", 0));
+		int size = Math.max(0, JSON.getIntegerOrDefault(body, "size", 10));
+		List<String> sources = getSourceFilter(body.get("_source"));
+		boolean noSource = Boolean.FALSE.equals(body.get("_source"));
+
+		JSONArray hitsArray = new JSONArray();
+		for (int i = from; i < Math.min(hits.size(), from + size); i++){
+			Hit h = hits.get(i);
+			JSONObject hit = JSON.make(
+				"_index", h.index,
+				"_type", h.type,
+				"_id", h.id,
+				"_score", 1.0
+			);
+			if (!noSource){
+				JSON.put(hit, "_source", filterSource(h.source, sources));
+			}
+			JSON.add(hitsArray, hit);
+		}
+		JSONObject result = JSON.make(
+			"took", 0,
+			"timed_out", false,
+			"hits", JSON.make(
+				"total", JSON.make("value", hits.size(), "relation", "eq"),
+				"max_score", hits.isEmpty()? null : 1.0,
+				"hits", hitsArray
+			)
+		);
+		JSON.put(result, Connectors.HTTP_REST_SUCCESS, true);
+		return result;
+	}
+
+	/**
+	 * Find keys of documents that match query (call inside read or write lock).
+	 */
+	private static Set<String> findDocs(IndexData data, String type, JSONObject query){
+		Set<String> docKeys = evaluate(data.terms, query, docKey -> {
+			int slash = docKey.indexOf('/');
+			Map<String, StoredDoc> docs = data.types.get(docKey.substring(0, slash));
+			StoredDoc doc = (docs != null)? docs.get(docKey.substring(slash + 1)) : null;
+			return (doc != null)? doc.source : null;
+		});
+		if (type != null){
+			String prefix = type + "/";
+			Set<String> filtered = new HashSet<>();
+			for (String k : docKeys){
+				if (k.startsWith(prefix)){
+					filtered.add(k);
+				}
+			}
+			return filtered;
+		}
+		return docKeys;
+	}
+
+	/**
+	 * Check if a single document matches query (used to scan documents that are not in a term index).
+	 */
+	static boolean matches(JSONObject query, JSONObject source){
+		TermIndex terms = new TermIndex();
+		terms.add("doc", source);
+		return !evaluate(terms, query, docKey -> source).isEmpty();
+	}
+
+	/**
+	 * Evaluate query on term index.
+	 * @param terms - term index
+	 * @param query - query like {"match": {...}}
+	 * @param sources - function to get source of document key (to resolve nested queries)
+	 * @return keys of matching documents (new set)
+	 */
+	@SuppressWarnings("unchecked")
+	private static Set<String> evaluate(TermIndex terms, JSONObject query, Function<String, JSONObject> sources){
+		if (query.isEmpty()){
+			return new HashSet<>(terms.docs);
+		}
+		String clause = (String) query.keySet().iterator().next();
+		Object clauseValue = query.get(clause);
+		switch (clause){
+			case "match_all":
+				return new HashSet<>(terms.docs);
+			case "match_none":
+				return new HashSet<>();
+			case "bool":
+				return evaluateBool(terms, (JSONObject) clauseValue, sources);
+			case "match":
+			case "match_phrase":
+			{
+				Map.Entry<String, Object> e = getFieldEntry((JSONObject) clauseValue);
+				Object value = e.getValue();
+				boolean and = clause.equals("match_phrase");
+				if (value instanceof JSONObject){
+					JSONObject options = (JSONObject) value;
+					and = and || "and".equalsIgnoreCase((String) options.get("operator"));
+					value = options.get("query");
+				}
+				List<String> tokens = getValueTokens(value);
+				Set<String> result = null;
+				for (String token : tokens){
+					Set<String> postings = getTokenPostings(terms, e.getKey(), token);
+					if (result == null){
+						result = new HashSet<>(postings);
+					}else if (and){
+						result.retainAll(postings);
+					}else{
+						result.addAll(postings);
+					}
+				}
+				return (result != null)? result : new HashSet<>();
+			}
+			case "term":
+			{
+				Map.Entry<String, Object> e = getFieldEntry((JSONObject) clauseValue);
+				Object value = e.getValue();
+				if (value instanceof JSONObject){
+					value = ((JSONObject) value).get("value");
+				}
+				return getTermPostings(terms, e.getKey(), value);
+			}
+			case "terms":
+			{
+				Map.Entry<String, Object> e = getFieldEntry((JSONObject) clauseValue);
+				Set<String> result = new HashSet<>();
+				for (Object value : (JSONArray) e.getValue()){
+					result.addAll(getTermPostings(terms, e.getKey(), value));
+				}
+				return result;
+			}
+			case "range":
+			{
+				Map.Entry<String, Object> e = getFieldEntry((JSONObject) clauseValue);
+				JSONObject conditions = (JSONObject) e.getValue();
+				Set<String> result = new HashSet<>();
+				Map<String, Set<String>> postings = terms.exact.get(e.getKey());
+				if (postings != null){
+					for (Map.Entry<String, Set<String>> p : postings.entrySet()){
+						if (isInRange(p.getKey(), conditions)){
+							result.addAll(p.getValue());
+						}
+					}
+				}
+				return result;
+			}
+			case "prefix":
+			{
+				Map.Entry<String, Object> e = getFieldEntry((JSONObject) clauseValue);
+				Object value = e.getValue();
+				if (value instanceof JSONObject){
+					value = ((JSONObject) value).get("value");
+				}
+				String prefix = String.valueOf(value);
+				Set<String> result = new HashSet<>();
+				Map<String, Set<String>> postings = terms.exact.get(e.getKey());
+				if (postings != null){
+					postings.forEach((v, docs) -> { if (v.startsWith(prefix)) result.addAll(docs); });
+				}
+				postings = terms.tokens.get(e.getKey());
+				if (postings != null){
+					postings.forEach((v, docs) -> { if (v.startsWith(prefix)) result.addAll(docs); });
+				}
+				return result;
+			}
+			case "exists":
+			{
+				Set<String> docs = terms.fields.get((String) ((JSONObject) clauseValue).get("field"));
+				return (docs != null)? new HashSet<>(docs) : new HashSet<>();
+			}
+			case "nested":
+				return evaluateNested(terms, (JSONObject) clauseValue, sources);
+			default:
+				throw new IllegalArgumentException("query type not supported: " + clause);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map.Entry<String, Object> getFieldEntry(JSONObject clause){
+		if (clause.size() != 1){
+			throw new IllegalArgumentException("query needs exactly one field: " + clause.toJSONString());
+		}
+		return (Map.Entry<String, Object>) clause.entrySet().iterator().next();
+	}
+
+	/**
+	 * Get documents with token in field ("*" or "_all" for any field).
+	 */
+	private static Set<String> getTokenPostings(TermIndex terms, String field, String token){
+		if (field.equals("*") || field.equals("_all")){
+			Set<String> result = new HashSet<>();
+			for (Map<String, Set<String>> postings : terms.tokens.values()){
+				Set<String> docs = postings.get(token);
+				if (docs != null){
+					result.addAll(docs);
+				}
+			}
+			return result;
+		}
+		return terms.getTokens(field, token);
+	}
+	/**
+	 * Get documents with exact value (keyword field) or single token (text field) in field.
+	 */
+	private static Set<String> getTermPostings(TermIndex terms, String field, Object value){
+		String v = normalize(value);
+		Set<String> result = new HashSet<>(terms.getExact(field, v));
+		result.addAll(terms.getTokens(field, v));
+		return result;
+	}
+
+	private static boolean isInRange(String value, JSONObject conditions){
+		for (Object k : conditions.keySet()){
+			Object limit = conditions.get(k);
+			if (limit == null){
+				continue;
+			}
+			int c = compareValues(value, normalize(limit));
+			switch ((String) k){
+				case "gt": if (c <= 0) return false; break;
+				case "gte": if (c < 0) return false; break;
+				case "lt": if (c >= 0) return false; break;
+				case "lte": if (c > 0) return false; break;
+				default: break;		//e.g. "format", "boost"
+			}
+		}
+		return true;
+	}
+	/**
+	 * Compare values numerically if both are numbers, else as strings.
+	 */
+	private static int compareValues(String a, String b){
+		try{
+			return Double.compare(Double.parseDouble(a), Double.parseDouble(b));
+		}catch (NumberFormatException e){
+			return a.compareTo(b);
+		}
+	}
+
+	private static Set<String> evaluateBool(TermIndex terms, JSONObject bool, Function<String, JSONObject> sources){
+		Set<String> result = null;
+		for (String key : new String[]{ "must", "filter" }){
+			for (JSONObject q : getClauses(bool.get(key))){
+				Set<String> docs = evaluate(terms, q, sources);
+				if (result == null){
+					result = docs;
+				}else{
+					result.retainAll(docs);
+				}
+			}
+		}
+		List<JSONObject> should = getClauses(bool.get("should"));
+		if (!should.isEmpty()){
+			//should is required if there is no must/filter or minimum_should_match is set
+			int minShould = (result == null)? 1 : 0;
+			Object msm = bool.get("minimum_should_match");
+			if (msm != null){
+				try{
+					minShould = Integer.parseInt(msm.toString().trim());
+				}catch (NumberFormatException e){
+					minShould = 1;		//e.g. percentage
+				}
+			}
+			if (minShould > 0){
+				Map<String, Integer> counts = new HashMap<>();
+				for (JSONObject q : should){
+					for (String docKey : evaluate(terms, q, sources)){
+						counts.merge(docKey, 1, Integer::sum);
+					}
+				}
+				Set<String> shouldDocs = new HashSet<>();
+				for (Map.Entry<String, Integer> e : counts.entrySet()){
+					if (e.getValue() >= minShould){
+						shouldDocs.add(e.getKey());
+					}
+				}
+				if (result == null){
+					result = shouldDocs;
+				}else{
+					result.retainAll(shouldDocs);
+				}
+			}
+		}
+		if (result == null){
+			result = new HashSet<>(terms.docs);
+		}
+		for (JSONObject q : getClauses(bool.get("must_not"))){
+			result.removeAll(evaluate(terms, q, sources));
+		}
+		return result;
+	}
+	private static List<JSONObject> getClauses(Object clauses){
+		List<JSONObject> list = new ArrayList<>();
+		if (clauses instanceof JSONObject){
+			list.add((JSONObject) clauses);
+		}else if (clauses instanceof JSONArray){
+			for (Object o : (JSONArray) clauses){
+				list.add((JSONObject) o);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Nested query: all conditions have to match inside the same object of the nested array.
+	 */
+	private static Set<String> evaluateNested(TermIndex terms, JSONObject nested, Function<String, JSONObject> sources){
+		String path = (String) nested.get("path");
+		JSONObject query = (JSONObject) nested.get("query");
+		Set<String> result = new HashSet<>();
+		Set<String> candidates = terms.fields.get(path);
+		if (candidates == null){
+			return result;
+		}
+		for (String docKey : candidates){
+			JSONObject source = sources.apply(docKey);
+			if (source == null){
+				continue;
+			}
+			for (Object o : getValuesAtPath(source, path)){
+				if (!(o instanceof JSONObject)){
+					continue;
+				}
+				//index single nested object with full field names, e.g. "sentences.text"
+				TermIndex objectTerms = new TermIndex();
+				String[] pathParts = path.split("\\.");
+				JSONObject wrapped = (JSONObject) o;
+				for (int i = pathParts.length - 1; i >= 0; i--){
+					wrapped = JSON.make(pathParts[i], wrapped);
+				}
+				objectTerms.add(docKey, wrapped);
+				if (!evaluate(objectTerms, query, sources).isEmpty()){
+					result.add(docKey);
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get all values at path (arrays are flattened).
+	 */
+	private static List<Object> getValuesAtPath(JSONObject source, String path){
+		List<Object> current = new ArrayList<>();
+		current.add(source);
+		for (String part : path.split("\\.")){
+			List<Object> next = new ArrayList<>();
+			for (Object o : current){
+				Object v = (o instanceof JSONObject)? ((JSONObject) o).get(part) : null;
+				if (v instanceof JSONArray){
+					for (Object item : (JSONArray) v){
+						next.add(item);
+					}
+				}else if (v != null){
+					next.add(v);
+				}
+			}
+			current = next;
+		}
+		return current;
+	}
+
+	/**
+	 * Comparator for "sort" like [{"field": {"order": "desc"}}, {"field2": "asc"}, "field3"] (default and tie-breaker: write order, oldest first).
+	 */
+	private static Comparator<Hit> getComparator(Object sort){
+		Comparator<Hit> comparator = null;
+		for (Object s : (sort instanceof JSONArray)? (JSONArray) sort : (sort != null)? Arrays.asList(sort) : Collections.emptyList()){
+			String field;
+			boolean desc = false;
+			if (s instanceof JSONObject){
+				Map.Entry<String, Object> e = getFieldEntry((JSONObject) s);
+				field = e.getKey();
+				Object order = (e.getValue() instanceof JSONObject)? ((JSONObject) e.getValue()).get("order") : e.getValue();
+				desc = "desc".equalsIgnoreCase(String.valueOf(order));
+			}else{
+				field = String.valueOf(s);
+			}
+			if (field.equals("_score") || field.equals("_doc")){
+				continue;
+			}
+			Comparator<Hit> c = getFieldComparator(field, desc);
+			comparator = (comparator == null)? c : comparator.thenComparing(c);
+		}
+		Comparator<Hit> byWrite = (a, b) -> Long.compare(a.seqNo, b.seqNo);
+		return (comparator == null)? byWrite : comparator.thenComparing(byWrite);
+	}
+	private static Comparator<Hit> getFieldComparator(String field, boolean desc){
+		return (a, b) -> {
+			List<Object> va = getValuesAtPath(a.source, field);
+			List<Object> vb = getValuesAtPath(b.source, field);
+			if (va.isEmpty() || vb.isEmpty()){
+				return Boolean.compare(va.isEmpty(), vb.isEmpty());		//missing values last
+			}
+			int c = compareValues(normalize(va.get(0)), normalize(vb.get(0)));
+			return desc? -c : c;
+		};
+	}
+
+	private static List<String> getSourceFilter(Object source){
+		if (source instanceof String){
+			return Arrays.asList(((String) source).split(","));
+		}else if (source instanceof JSONArray){
+			List<String> fields = new ArrayList<>();
+			for (Object o : (JSONArray) source){
+				fields.add(String.valueOf(o));
+			}
+			return fields;
+		}else if (source instanceof JSONObject){
+			return getSourceFilter(((JSONObject) source).get("includes"));
+		}
+		return null;
+	}
+
+	/**
+	 * Copy of source with only the given fields (dot notation allowed) or full copy if fields are null or empty.
+	 */
+	static JSONObject filterSource(JSONObject source, Collection<String> fields){
+		if (fields == null || fields.isEmpty()){
+			return JSON.deepCopy(source);
+		}
+		JSONObject filtered = new JSONObject();
+		for (String field : fields){
+			String[] parts = field.trim().split("\\.");
+			Object value = source;
+			for (String p : parts){
+				value = (value instanceof JSONObject)? ((JSONObject) value).get(p) : null;
+			}
+			if (value == null){
+				continue;
+			}
+			JSONObject target = filtered;
+			for (int i = 0; i < parts.length - 1; i++){
+				Object next = target.get(parts[i]);
+				if (!(next instanceof JSONObject)){
+					next = new JSONObject();
+					JSON.put(target, parts[i], next);
+				}
+				target = (JSONObject) next;
+			}
+			if (value instanceof JSONObject){
+				value = JSON.deepCopy((JSONObject) value);
+			}else if (value instanceof JSONArray){
+				value = JSON.deepCopy((JSONArray) value);
+			}
+			JSON.put(target, parts[parts.length - 1], value);
+		}
+		return filtered;
+	}
+
+	//-------SNAPSHOTS---------
+
+	/**
+	 * Write all documents to file (one JSON line per document: {"_index", "_type", "_id", "_source"}). The file is written to a temporary
+	 * file first and then moved, so an existing snapshot is never half-written.
+	 * @param filePath - path to snapshot file
+	 * @return number of documents written
+	 * @throws IOException
+	 */
+	public long saveSnapshot(String filePath) throws IOException {
+		Path target = new File(filePath).toPath();
+		Path tmp = new File(filePath + ".tmp").toPath();
+		long n = 0;
+		try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)){
+			for (Map.Entry<String, IndexData> index : indices.entrySet()){
+				IndexData data = index.getValue();
+				data.lock.readLock().lock();
+				try{
+					for (Map.Entry<String, Map<String, StoredDoc>> type : data.types.entrySet()){
+						for (Map.Entry<String, StoredDoc> doc : type.getValue().entrySet()){
+							writer.write(JSON.make(
+								"_index", index.getKey(),
+								"_type", type.getKey(),
+								"_id", doc.getKey(),
+								"_source", doc.getValue().source
+							).toJSONString());
+							writer.write("\n");
+							n++;
+						}
+					}
+				}finally{
+					data.lock.readLock().unlock();
+				}
+			}
+		}
+		Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return n;
+	}
+
+	/**
+	 * Load documents of snapshot file (see {@link #saveSnapshot(String)}). Existing documents with same id are replaced.
+	 * @param filePath - path to snapshot file
+	 * @return number of documents loaded
+	 * @throws IOException
+	 */
+	public long loadSnapshot(String filePath) throws IOException {
+		long n = 0;
+		try (BufferedReader reader = Files.newBufferedReader(new File(filePath).toPath(), StandardCharsets.UTF_8)){
+			String line;
+			while ((line = reader.readLine()) != null){
+				if (line.trim().isEmpty()){
+					continue;
+				}
+				JSONObject doc = JSON.parseStringOrFail(line);
+				put((String) doc.get("_index"), (String) doc.get("_type"), (String) doc.get("_id"), (JSONObject) doc.get("_source"));
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Number of documents per index.
+	 * @return JSONObject with index names as keys and document count as value
+	 */
+	public JSONObject getStatistics(){
+		JSONObject stats = new JSONObject();
+		for (Map.Entry<String, IndexData> index : indices.entrySet()){
+			long n = 0;
+			for (Map<String, StoredDoc> docs : index.getValue().types.values()){
+				n += docs.size();
+			}
+			JSON.put(stats, index.getKey(), n);
+		}
+		return stats;
+	}
+}
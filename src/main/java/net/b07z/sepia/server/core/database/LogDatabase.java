@@ -0,0 +1,986 @@
+package net.b07z.sepia.server.core.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import net.b07z.sepia.server.core.tools.Connectors;
+import net.b07z.sepia.server.core.tools.Debugger;
+import net.b07z.sepia.server.core.tools.JSON;
+
+/**
+ * File-backed implementation of {@link DatabaseInterface} for single-box setups. Every write is appended to a log of segment files
+ * ("segment-00000001.log", ...) and a hash table in a memory-mapped file ("index-00000001.hash") maps "index/type/id" to the position of the
+ * latest record. Reads need one lookup and one positional read, writes one append. Old versions and deleted documents stay in the log
+ * until {@link #compact()} copies the live records to new segments (automatically in background when the garbage ratio is reached).<br>
+ * <br>
+ * Record format: [int length][int crc32][byte op][long seqNo][long version][int keyLength][key][JSON source] (length and CRC of the part after them).<br>
+ * Crash recovery: the index is marked "clean" only by {@link #close()}. If it is not clean (or missing/broken) on start, it is rebuilt by
+ * replaying all segments in order, a torn or corrupt record at the end of a segment is cut off.<br>
+ * Searches ({@link #searchSimple}, {@link #searchByJson}, {@link #deleteByJson}) support the same queries as {@link InMemoryDatabase}
+ * but scan all live documents (there is no term index), so they are meant for small data sets.<br>
+ * <br>
+ * NOTE: Writes go to the OS page cache and survive a crash of the process. Set {@link #syncEveryWrite} to survive power loss too (slow).
+ * Scripted updates are not supported. Only one instance may use a directory at a time.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class LogDatabase implements DatabaseInterface, AutoCloseable {
+
+	//Settings
+	public static boolean syncEveryWrite = false;
+	public static long maxSegmentBytes = 64 * 1024 * 1024;
+	public static double compactionGarbageRatio = 0.5;
+	public static long minCompactionBytes = 16 * 1024 * 1024;
+	public static int initialCapacity = 1024;
+
+	private static final String INDEX_PREFIX = "index-";
+	private static final String INDEX_SUFFIX = ".hash";
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	//index file header: magic, version, capacity, size, used, clean, lastSeqNo
+	private static final int MAGIC = 0x5345504c;		//"SEPL"
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_BYTES = 64;
+	private static final int H_CAPACITY = 8;
+	private static final int H_SIZE = 12;
+	private static final int H_USED = 16;
+	private static final int H_CLEAN = 20;
+	private static final int H_SEQ_NO = 24;
+	//slot: long hash, int segment (0 - empty, -1 - deleted), long offset, int length
+	private static final int SLOT_BYTES = 24;
+	private static final int EMPTY = 0;
+	private static final int DELETED = -1;
+	private static final double MAX_LOAD = 0.7;
+
+	//record: length and crc, then op, seqNo, version, keyLength
+	private static final int RECORD_HEADER_BYTES = 8;
+	private static final int PAYLOAD_HEADER_BYTES = 21;
+	private static final byte OP_PUT = 1;
+	private static final byte OP_DELETE = 2;
+
+	private static ExecutorService compactionExecutor;
+
+	private final Path dir;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+	private int activeSegment;
+	private long activeSize;
+	private FileChannel indexChannel;
+	private MappedByteBuffer index;
+	private int indexGeneration;		//new index files get a new number, a mapped file can't be replaced or deleted on all platforms
+	private int capacity;
+	private long lastSeqNo;
+	private volatile long liveBytes;
+	private volatile long totalBytes;
+	private volatile boolean closed = false;
+
+	private final AtomicBoolean compacting = new AtomicBoolean();
+	private final AtomicLong compactions = new AtomicLong();
+	private final AtomicLong recoveredRecords = new AtomicLong();
+	private final AtomicLong truncatedBytes = new AtomicLong();
+
+	/**
+	 * Record read from log.
+	 */
+	private static class Record {
+		byte op;
+		long seqNo;
+		long version;
+		String key;
+		byte[] source;
+		int slot = -1;		//index slot (only set by lookups)
+
+		JSONObject getSource(){
+			return JSON.parseString(new String(source, StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Open database in directory (created if necessary). Rebuilds the index from the log if the last session did not close properly.
+	 * @param directory - folder for segments and index
+	 * @throws IOException if files can't be read or written
+	 */
+	public LogDatabase(String directory) throws IOException {
+		this.dir = new File(directory).toPath();
+		Files.createDirectories(dir);
+		try{
+			open();
+		}catch (IOException | RuntimeException e){
+			closeFiles();
+			throw e;
+		}
+	}
+
+	private void open() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)){
+			for (Path p : files){
+				String name = p.getFileName().toString();
+				try{
+					int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+					FileChannel channel = openSegment(id);
+					segments.put(id, channel);
+					totalBytes += channel.size();
+				}catch (NumberFormatException e){
+					Debugger.println("LogDatabase - ignored unknown file: " + p, 1);
+				}
+			}
+		}
+		List<Integer> indexFiles = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, INDEX_PREFIX + "*" + INDEX_SUFFIX)){
+			for (Path p : files){
+				String name = p.getFileName().toString();
+				try{
+					indexFiles.add(Integer.parseInt(name.substring(INDEX_PREFIX.length(), name.length() - INDEX_SUFFIX.length())));
+				}catch (NumberFormatException e){
+					Debugger.println("LogDatabase - ignored unknown file: " + p, 1);
+				}
+			}
+		}
+		indexGeneration = indexFiles.isEmpty()? 0 : indexFiles.stream().max(Integer::compare).get();
+		if (indexFiles.isEmpty() || !loadIndex(getIndexPath(indexGeneration))){
+			if (!segments.isEmpty()){
+				Debugger.println("LogDatabase - index missing or not closed properly, replaying log of: " + dir, 3);
+			}
+			createIndex(getCapacityFor(0));
+			replay();
+		}
+		for (int gen : indexFiles){
+			if (gen != indexGeneration){
+				deleteIndexFile(gen);
+			}
+		}
+		if (segments.isEmpty()){
+			segments.put(1, openSegment(1));
+		}
+		activeSegment = segments.lastKey();
+		activeSize = segments.lastEntry().getValue().size();
+		//mark as open - if we crash from here on the index is rebuilt on next start
+		index.putInt(H_CLEAN, 0);
+		index.force();
+	}
+
+	private FileChannel openSegment(int id) throws IOException {
+		return FileChannel.open(getSegmentPath(id), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+	private Path getSegmentPath(int id){
+		return dir.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+	}
+	private Path getIndexPath(int generation){
+		return dir.resolve(String.format("%s%08d%s", INDEX_PREFIX, generation, INDEX_SUFFIX));
+	}
+	/**
+	 * Delete old index file. Can fail as long as it is still mapped (e.g. on Windows), then it is deleted on next start.
+	 */
+	private void deleteIndexFile(int generation){
+		try{
+			Files.deleteIfExists(getIndexPath(generation));
+		}catch (IOException e){
+			Debugger.println("LogDatabase - old index file will be deleted on next start: " + getIndexPath(generation), 3);
+		}
+	}
+
+	//-------HASH INDEX---------
+
+	/**
+	 * Map existing index file if it is valid and was closed properly.
+	 */
+	private boolean loadIndex(Path indexFile) throws IOException {
+		if (!Files.exists(indexFile) || Files.size(indexFile) < HEADER_BYTES){
+			return false;
+		}
+		FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+		int cap = buffer.getInt(H_CAPACITY);
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION || buffer.getInt(H_CLEAN) != 1
+				|| cap <= 0 || Integer.bitCount(cap) != 1 || channel.size() != HEADER_BYTES + (long) cap * SLOT_BYTES){
+			channel.close();
+			return false;
+		}
+		indexChannel = channel;
+		index = buffer;
+		capacity = cap;
+		lastSeqNo = buffer.getLong(H_SEQ_NO);
+		liveBytes = 0;
+		for (int i = 0; i < capacity; i++){
+			if (getSlotSegment(i) > 0){
+				if (!segments.containsKey(getSlotSegment(i))){
+					Debugger.println("LogDatabase - index points to missing segment, rebuilding index.", 1);
+					closeIndex();
+					return false;
+				}
+				liveBytes += getSlotLength(i);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Create empty index file with next generation number and map it.
+	 */
+	private void createIndex(int cap) throws IOException {
+		closeIndex();
+		indexGeneration++;
+		Path indexFile = getIndexPath(indexGeneration);
+		MappedByteBuffer buffer = writeEmptyIndex(indexFile, cap);
+		indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		index = buffer;
+		capacity = cap;
+		liveBytes = 0;
+	}
+	private static MappedByteBuffer writeEmptyIndex(Path indexFile, int cap) throws IOException {
+		try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)){
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) cap * SLOT_BYTES);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, FORMAT_VERSION);
+			buffer.putInt(H_CAPACITY, cap);
+			return buffer;		//NOTE: mapping stays valid after channel is closed
+		}
+	}
+	private void closeIndex() throws IOException {
+		if (indexChannel != null){
+			indexChannel.close();
+			indexChannel = null;
+			index = null;
+		}
+	}
+
+	private static int getCapacityFor(int entries){
+		int cap = Math.max(16, Integer.highestOneBit(Math.max(1, initialCapacity) - 1) << 1);
+		while (entries >= cap * MAX_LOAD){
+			cap <<= 1;
+		}
+		return cap;
+	}
+
+	private long slotPos(int i){
+		return HEADER_BYTES + (long) i * SLOT_BYTES;
+	}
+	private long getSlotHash(int i){
+		return index.getLong((int) slotPos(i));
+	}
+	private int getSlotSegment(int i){
+		return index.getInt((int) slotPos(i) + 8);
+	}
+	private long getSlotOffset(int i){
+		return index.getLong((int) slotPos(i) + 12);
+	}
+	private int getSlotLength(int i){
+		return index.getInt((int) slotPos(i) + 20);
+	}
+	private void setSlot(int i, long hash, int segment, long offset, int length){
+		int pos = (int) slotPos(i);
+		index.putLong(pos, hash);
+		index.putInt(pos + 8, segment);
+		index.putLong(pos + 12, offset);
+		index.putInt(pos + 20, length);
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of key.
+	 */
+	private static long hash(byte[] key){
+		long h = 0xcbf29ce484222325L;
+		for (byte b : key){
+			h ^= (b & 0xff);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * Find latest record of key (with its index slot) or null. The key of candidate slots is verified with the record in the log,
+	 * so callers should reuse the result instead of looking up again.
+	 */
+	private Record findRecord(String key, long hash) throws IOException {
+		int mask = capacity - 1;
+		for (int n = 0, i = (int) (hash & mask); n < capacity; n++, i = (i + 1) & mask){
+			int segment = getSlotSegment(i);
+			if (segment == EMPTY){
+				return null;
+			}else if (segment > 0 && getSlotHash(i) == hash){
+				Record record = readRecord(segment, getSlotOffset(i), getSlotLength(i));
+				if (key.equals(record.key)){
+					record.slot = i;
+					return record;
+				}
+			}
+		}
+		return null;
+	}
+	/**
+	 * Find slot of key or -1.
+	 */
+	private int findSlot(String key, long hash) throws IOException {
+		Record record = findRecord(key, hash);
+		return (record != null)? record.slot : -1;
+	}
+	/**
+	 * Find first free (empty or deleted) slot for a key that is not in the index.
+	 */
+	private int findFreeSlot(long hash){
+		int mask = capacity - 1;
+		int i = (int) (hash & mask);
+		while (getSlotSegment(i) > 0){
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Point key to new record (call inside write lock).
+	 * @param slot - current slot of key (see {@link #findSlot(String, long)}) or -1 for a new key
+	 */
+	private void indexPut(int slot, long hash, int segment, long offset, int length) throws IOException {
+		if (slot >= 0){
+			liveBytes -= getSlotLength(slot);
+		}else{
+			if (index.getInt(H_USED) + 1 >= capacity * MAX_LOAD){
+				resizeIndex(getCapacityFor(index.getInt(H_SIZE) + 1));
+			}
+			slot = findFreeSlot(hash);
+			if (getSlotSegment(slot) == EMPTY){
+				index.putInt(H_USED, index.getInt(H_USED) + 1);
+			}
+			index.putInt(H_SIZE, index.getInt(H_SIZE) + 1);
+		}
+		setSlot(slot, hash, segment, offset, length);
+		liveBytes += length;
+	}
+	/**
+	 * Remove key from index (call inside write lock).
+	 * @param slot - current slot of key (see {@link #findSlot(String, long)})
+	 */
+	private void indexRemove(int slot){
+		liveBytes -= getSlotLength(slot);
+		setSlot(slot, 0, DELETED, 0, 0);
+		index.putInt(H_SIZE, index.getInt(H_SIZE) - 1);
+	}
+
+	/**
+	 * Write live slots to a new index file (next generation) and switch to it (also removes deleted slots).
+	 * The old file is not replaced but deleted afterwards, because a mapped file can't be replaced on all platforms (e.g. Windows).
+	 */
+	private void resizeIndex(int newCapacity) throws IOException {
+		int oldGeneration = indexGeneration;
+		Path indexFile = getIndexPath(oldGeneration + 1);
+		MappedByteBuffer buffer = writeEmptyIndex(indexFile, newCapacity);
+		int mask = newCapacity - 1;
+		int size = 0;
+		for (int i = 0; i < capacity; i++){
+			int segment = getSlotSegment(i);
+			if (segment > 0){
+				long hash = getSlotHash(i);
+				int j = (int) (hash & mask);
+				while (buffer.getInt(HEADER_BYTES + j * SLOT_BYTES + 8) != EMPTY){
+					j = (j + 1) & mask;
+				}
+				int pos = HEADER_BYTES + j * SLOT_BYTES;
+				buffer.putLong(pos, hash);
+				buffer.putInt(pos + 8, segment);
+				buffer.putLong(pos + 12, getSlotOffset(i));
+				buffer.putInt(pos + 20, getSlotLength(i));
+				size++;
+			}
+		}
+		buffer.putInt(H_SIZE, size);
+		buffer.putInt(H_USED, size);
+		buffer.putLong(H_SEQ_NO, lastSeqNo);
+		buffer.force();
+		//NOTE: new index is not clean, if we crash before the old one is deleted the highest generation is used and replayed
+		closeIndex();
+		indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		index = buffer;
+		capacity = newCapacity;
+		indexGeneration = oldGeneration + 1;
+		deleteIndexFile(oldGeneration);
+	}
+
+	//-------LOG---------
+
+	private static String getKey(String index, String type, String id){
+		return index + "/" + type + "/" + id;
+	}
+
+	/**
+	 * Read and check complete record.
+	 */
+	private Record readRecord(int segment, long offset, int length) throws IOException {
+		FileChannel channel = segments.get(segment);
+		if (channel == null){
+			throw new IOException("Missing segment: " + segment);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		readFully(channel, buffer, offset);
+		Record record = parseRecord(buffer.array(), 0, length);
+		if (record == null){
+			throw new IOException("Corrupt record in segment " + segment + " at " + offset);
+		}
+		return record;
+	}
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()){
+			int n = channel.read(buffer, position);
+			if (n < 0){
+				throw new IOException("Unexpected end of segment");
+			}
+			position += n;
+		}
+	}
+
+	/**
+	 * Parse record (starting with length and CRC) or return null if it is broken.
+	 */
+	private static Record parseRecord(byte[] data, int start, int length){
+		ByteBuffer buffer = ByteBuffer.wrap(data, start, length);
+		int payloadLength = buffer.getInt();
+		int crc = buffer.getInt();
+		if (payloadLength < PAYLOAD_HEADER_BYTES || payloadLength != length - RECORD_HEADER_BYTES){
+			return null;
+		}
+		CRC32 crc32 = new CRC32();
+		crc32.update(data, start + RECORD_HEADER_BYTES, payloadLength);
+		if ((int) crc32.getValue() != crc){
+			return null;
+		}
+		Record record = new Record();
+		record.op = buffer.get();
+		record.seqNo = buffer.getLong();
+		record.version = buffer.getLong();
+		int keyLength = buffer.getInt();
+		if (keyLength < 0 || keyLength > payloadLength - PAYLOAD_HEADER_BYTES){
+			return null;
+		}
+		int keyStart = start + RECORD_HEADER_BYTES + PAYLOAD_HEADER_BYTES;
+		record.key = new String(data, keyStart, keyLength, StandardCharsets.UTF_8);
+		record.source = Arrays.copyOfRange(data, keyStart + keyLength, start + length);
+		return record;
+	}
+
+	/**
+	 * Append record to active segment (call inside write lock).
+	 * @return [segment, offset, length]
+	 */
+	private long[] append(byte op, long seqNo, long version, byte[] key, byte[] source) throws IOException {
+		if (activeSize >= maxSegmentBytes){
+			if (syncEveryWrite){
+				segments.get(activeSegment).force(false);
+			}
+			activeSegment++;
+			activeSize = 0;
+			segments.put(activeSegment, openSegment(activeSegment));
+		}
+		int payloadLength = PAYLOAD_HEADER_BYTES + key.length + source.length;
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + payloadLength);
+		buffer.putInt(payloadLength);
+		buffer.putInt(0);		//CRC is set below
+		buffer.put(op);
+		buffer.putLong(seqNo);
+		buffer.putLong(version);
+		buffer.putInt(key.length);
+		buffer.put(key);
+		buffer.put(source);
+		CRC32 crc32 = new CRC32();
+		crc32.update(buffer.array(), RECORD_HEADER_BYTES, payloadLength);
+		buffer.putInt(4, (int) crc32.getValue());
+		buffer.flip();
+
+		FileChannel channel = segments.get(activeSegment);
+		long offset = activeSize;
+		long position = offset;
+		while (buffer.hasRemaining()){
+			position += channel.write(buffer, position);
+		}
+		if (syncEveryWrite){
+			channel.force(false);
+		}
+		activeSize = position;
+		totalBytes += position - offset;
+		return new long[]{ activeSegment, offset, position - offset };
+	}
+
+	/**
+	 * Replay all segments in order to rebuild the index. Cuts off broken records at the end of a segment.
+	 */
+	private void replay() throws IOException {
+		for (Map.Entry<Integer, FileChannel> e : segments.entrySet()){
+			int segment = e.getKey();
+			FileChannel channel = e.getValue();
+			long size = channel.size();
+			long position = 0;
+			ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+			while (position < size){
+				Record record = null;
+				int length = 0;
+				if (size - position >= RECORD_HEADER_BYTES){
+					header.clear();
+					readFully(channel, header, position);
+					int payloadLength = header.getInt(0);
+					if (payloadLength >= PAYLOAD_HEADER_BYTES && payloadLength <= size - position - RECORD_HEADER_BYTES){
+						length = RECORD_HEADER_BYTES + payloadLength;
+						ByteBuffer buffer = ByteBuffer.allocate(length);
+						readFully(channel, buffer, position);
+						record = parseRecord(buffer.array(), 0, length);
+					}
+				}
+				if (record == null){
+					Debugger.println("LogDatabase - cut off broken record in segment " + segment + " at " + position
+							+ " (" + (size - position) + " bytes)", 1);
+					truncatedBytes.addAndGet(size - position);
+					totalBytes -= size - position;
+					channel.truncate(position);
+					break;
+				}
+				long hash = hash(record.key.getBytes(StandardCharsets.UTF_8));
+				int slot = findSlot(record.key, hash);
+				if (record.op == OP_PUT){
+					indexPut(slot, hash, segment, position, length);
+				}else if (slot >= 0){
+					indexRemove(slot);
+				}
+				lastSeqNo = Math.max(lastSeqNo, record.seqNo);
+				recoveredRecords.incrementAndGet();
+				position += length;
+			}
+			channel.force(false);
+		}
+		index.putLong(H_SEQ_NO, lastSeqNo);
+	}
+
+	/**
+	 * Write new version of document (call inside write lock).
+	 */
+	private void put(String key, JSONObject source) throws IOException {
+		checkOpen();
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		long hash = hash(keyBytes);
+		Record old = findRecord(key, hash);		//one lookup for version and slot
+		long version = (old != null)? (old.version + 1) : 1;
+		long[] pos = append(OP_PUT, ++lastSeqNo, version, keyBytes, source.toJSONString().getBytes(StandardCharsets.UTF_8));
+		indexPut((old != null)? old.slot : -1, hash, (int) pos[0], pos[1], (int) pos[2]);
+	}
+	/**
+	 * Write delete record if document exists (call inside write lock).
+	 * @return true if document existed
+	 */
+	private boolean remove(String key) throws IOException {
+		checkOpen();
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int slot = findSlot(key, hash(keyBytes));
+		if (slot < 0){
+			return false;
+		}
+		append(OP_DELETE, ++lastSeqNo, 0, keyBytes, new byte[0]);
+		indexRemove(slot);
+		return true;
+	}
+	/**
+	 * Get latest record of key or null (call inside read or write lock).
+	 */
+	private Record getRecord(String key) throws IOException {
+		checkOpen();
+		return findRecord(key, hash(key.getBytes(StandardCharsets.UTF_8)));
+	}
+	private void checkOpen(){
+		if (closed){
+			throw new IllegalStateException("LogDatabase is closed");
+		}
+	}
+
+	//-------COMPACTION---------
+
+	/**
+	 * Copy all live records to new segments and delete the old ones. Blocks reads and writes while running.
+	 * @return number of bytes that were freed
+	 * @throws IOException if segments can't be written
+	 */
+	public long compact() throws IOException {
+		lock.writeLock().lock();
+		try{
+			checkOpen();
+			long before = totalBytes;
+			//live slots in log order, so old segments are read sequentially
+			List<int[]> live = new ArrayList<>(index.getInt(H_SIZE));
+			for (int i = 0; i < capacity; i++){
+				if (getSlotSegment(i) > 0){
+					live.add(new int[]{ i, getSlotSegment(i) });
+				}
+			}
+			live.sort((a, b) -> (a[1] != b[1])? Integer.compare(a[1], b[1]) : Long.compare(getSlotOffset(a[0]), getSlotOffset(b[0])));
+
+			List<Integer> oldSegments = new ArrayList<>(segments.keySet());
+			int segment = segments.lastKey() + 1;
+			FileChannel out = openSegment(segment);
+			segments.put(segment, out);
+			long position = 0;
+			long[][] moved = new long[live.size()][];
+			for (int n = 0; n < live.size(); n++){
+				int slot = live.get(n)[0];
+				if (position >= maxSegmentBytes){
+					out.force(false);
+					segment++;
+					out = openSegment(segment);
+					segments.put(segment, out);
+					position = 0;
+				}
+				ByteBuffer buffer = ByteBuffer.allocate(getSlotLength(slot));
+				readFully(segments.get(getSlotSegment(slot)), buffer, getSlotOffset(slot));
+				buffer.flip();
+				moved[n] = new long[]{ segment, position };
+				while (buffer.hasRemaining()){
+					position += out.write(buffer, position);
+				}
+			}
+			out.force(false);
+			//NOTE: until the old segments are gone a replay sees the copies after the originals, so the result is the same
+			for (int n = 0; n < live.size(); n++){
+				int slot = live.get(n)[0];
+				setSlot(slot, getSlotHash(slot), (int) moved[n][0], moved[n][1], getSlotLength(slot));
+			}
+			index.force();
+			for (int old : oldSegments){
+				segments.remove(old).close();
+				Files.deleteIfExists(getSegmentPath(old));
+			}
+			activeSegment = segment;
+			activeSize = position;
+			totalBytes = liveBytes;
+			compactions.incrementAndGet();
+			Debugger.println("LogDatabase - compacted " + dir + ", freed " + (before - totalBytes) + " bytes", 3);
+			return before - totalBytes;
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Start compaction in background if there is enough garbage (call after writes, outside of lock).
+	 */
+	private void maybeCompact(){
+		long total = totalBytes;
+		if (total < minCompactionBytes || (total - liveBytes) < total * compactionGarbageRatio || !compacting.compareAndSet(false, true)){
+			return;
+		}
+		getCompactionExecutor().execute(() -> {
+			try{
+				if (!closed){
+					compact();
+				}
+			}catch (Exception e){
+				Debugger.println("LogDatabase - compaction failed: " + e.getMessage(), 1);
+			}finally{
+				compacting.set(false);
+			}
+		});
+	}
+	private static synchronized ExecutorService getCompactionExecutor(){
+		if (compactionExecutor == null){
+			compactionExecutor = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "log-db-compaction");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return compactionExecutor;
+	}
+
+	/**
+	 * Write everything to disk, mark index as clean and close all files.
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try{
+			if (closed){
+				return;
+			}
+			for (FileChannel channel : segments.values()){
+				channel.force(true);
+			}
+			index.putLong(H_SEQ_NO, lastSeqNo);
+			index.force();
+			index.putInt(H_CLEAN, 1);
+			index.force();
+			closeFiles();
+		}finally{
+			closed = true;
+			lock.writeLock().unlock();
+		}
+	}
+	private void closeFiles() throws IOException {
+		for (FileChannel channel : segments.values()){
+			channel.close();
+		}
+		segments.clear();
+		closeIndex();
+	}
+
+	/**
+	 * Get statistics.
+	 * @return JSONObject with "documents", "segments", "totalBytes", "liveBytes", "garbageRatio", "lastSeqNo", "compactions",
+	 * "recoveredRecords" (replayed on start) and "truncatedBytes" (broken records cut off on start)
+	 */
+	public JSONObject getStatistics(){
+		lock.readLock().lock();
+		try{
+			JSONObject stats = JSON.make(
+				"documents", closed? 0 : index.getInt(H_SIZE),
+				"segments", segments.size(),
+				"totalBytes", totalBytes,
+				"liveBytes", liveBytes,
+				"garbageRatio", (totalBytes > 0)? ((double) (totalBytes - liveBytes) / totalBytes) : 0.0,
+				"lastSeqNo", lastSeqNo
+			);
+			JSON.put(stats, "compactions", compactions.get());
+			JSON.put(stats, "recoveredRecords", recoveredRecords.get());
+			JSON.put(stats, "truncatedBytes", truncatedBytes.get());
+			return stats;
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	//-------INTERFACE IMPLEMENTATIONS---------
+
+	@Override
+	public int setItemData(String index, String type, String item_id, JSONObject data){
+		lock.writeLock().lock();
+		try{
+			put(getKey(index, type, item_id), data);
+		}catch (IOException e){
+			Debugger.println("LogDatabase - setItemData - failed to write " + getKey(index, type, item_id) + ": " + e.getMessage(), 1);
+			return 1;
+		}finally{
+			lock.writeLock().unlock();
+		}
+		maybeCompact();
+		return 0;
+	}
+	@Override
+	public JSONObject setAnyItemData(String index, String type, JSONObject data){
+		String id = UUID.randomUUID().toString().replace("-", "").substring(0, 20);
+		return JSON.make("code", setItemData(index, type, id, data), "_id", id);
+	}
+
+	@Override
+	public JSONObject getItem(String index, String type, String item_id){
+		return getItemFiltered(index, type, item_id, null);
+	}
+	@Override
+	public JSONObject getItemFiltered(String index, String type, String item_id, String[] filters){
+		Record record;
+		lock.readLock().lock();
+		try{
+			record = getRecord(getKey(index, type, item_id));
+		}catch (IOException e){
+			Debugger.println("LogDatabase - getItem - failed to read " + getKey(index, type, item_id) + ": " + e.getMessage(), 1);
+			return JSON.make(Connectors.HTTP_REST_SUCCESS, false, "code", 500, "_id", item_id, "error", e.getMessage());
+		}finally{
+			lock.readLock().unlock();
+		}
+		if (record == null){
+			//same as Elasticsearch "not found"
+			return JSON.make(Connectors.HTTP_REST_SUCCESS, false, "code", 404, "_id", item_id, "found", false);
+		}
+		JSONObject result = JSON.make(
+			"_index", index,
+			"_type", type,
+			"_id", item_id,
+			"_version", record.version,
+			"_seq_no", record.seqNo,
+			"_primary_term", 1
+		);
+		JSON.put(result, "found", true);
+		JSON.put(result, "_source", InMemoryDatabase.filterSource(record.getSource(), (filters != null)? Arrays.asList(filters) : null));
+		JSON.put(result, Connectors.HTTP_REST_SUCCESS, true);
+		return result;
+	}
+
+	@Override
+	public int updateItemData(String index, String type, String item_id, JSONObject data){
+		if (data.containsKey("script")){
+			Debugger.println("LogDatabase - updateItemData - scripts are not supported: " + getKey(index, type, item_id), 1);
+			return 1;
+		}
+		JSONObject update = PartialUpdates.getPartialDocument(data);
+		String key = getKey(index, type, item_id);
+		lock.writeLock().lock();
+		try{
+			Record old = getRecord(key);
+			JSONObject source = (old != null)? old.getSource() : new JSONObject();
+			PartialUpdates.mergeInto(source, update);
+			put(key, source);
+		}catch (IOException e){
+			Debugger.println("LogDatabase - updateItemData - failed to write " + key + ": " + e.getMessage(), 1);
+			return 1;
+		}finally{
+			lock.writeLock().unlock();
+		}
+		maybeCompact();
+		return 0;
+	}
+
+	@Override
+	public JSONObject searchSimple(String path, String search_term){
+		String[] indexAndType = InMemoryDatabase.parsePath(path);
+		return search(indexAndType[0], indexAndType[1], JSON.make("query", InMemoryDatabase.getSimpleQuery(search_term)));
+	}
+
+	@Override
+	public JSONObject searchByJson(String path, String jsonQuery){
+		String[] indexAndType = InMemoryDatabase.parsePath(path);
+		try{
+			return search(indexAndType[0], indexAndType[1], JSON.parseStringOrFail(jsonQuery));
+		}catch (Exception e){
+			return JSON.make(Connectors.HTTP_REST_SUCCESS, false, "code", 400, "error", e.getMessage());
+		}
+	}
+
+	@Override
+	public int deleteItem(String index, String type, String item_id){
+		boolean existed;
+		lock.writeLock().lock();
+		try{
+			existed = remove(getKey(index, type, item_id));
+		}catch (IOException e){
+			Debugger.println("LogDatabase - deleteItem - failed to write " + getKey(index, type, item_id) + ": " + e.getMessage(), 1);
+			return 1;
+		}finally{
+			lock.writeLock().unlock();
+		}
+		maybeCompact();
+		return existed? 0 : 1;		//like Elasticsearch 404
+	}
+
+	@Override
+	public int deleteAnything(String path){
+		String[] parts = path.replaceFirst("^/", "").split("/");
+		if (parts[0].isEmpty()){
+			return 1;
+		}
+		if (parts.length > 2){
+			return deleteItem(parts[0], parts[1], parts[2]);
+		}
+		String prefix = parts[0] + "/" + ((parts.length == 2)? (parts[1] + "/") : "");
+		int deleted = 0;
+		lock.writeLock().lock();
+		try{
+			for (Record record : scan()){
+				if (record.key.startsWith(prefix) && remove(record.key)){
+					deleted++;
+				}
+			}
+		}catch (IOException e){
+			Debugger.println("LogDatabase - deleteAnything - failed for " + path + ": " + e.getMessage(), 1);
+			return 1;
+		}finally{
+			lock.writeLock().unlock();
+		}
+		maybeCompact();
+		return (deleted > 0 || parts.length == 2)? 0 : 1;
+	}
+
+	@Override
+	public JSONObject deleteByJson(String path, String jsonQuery){
+		String[] indexAndType = InMemoryDatabase.parsePath(path);
+		JSONObject body;
+		try{
+			body = JSON.parseStringOrFail(jsonQuery);
+		}catch (Exception e){
+			return JSON.make(Connectors.HTTP_REST_SUCCESS, false, "code", 400, "error", e.getMessage());
+		}
+		long deleted = 0;
+		lock.writeLock().lock();
+		try{
+			for (InMemoryDatabase.Hit hit : findHits(indexAndType[0], indexAndType[1], InMemoryDatabase.getQuery(body))){
+				if (remove(getKey(hit.index, hit.type, hit.id))){
+					deleted++;
+				}
+			}
+		}catch (IOException e){
+			return JSON.make(Connectors.HTTP_REST_SUCCESS, false, "code", 500, "deleted", deleted, "error", e.getMessage());
+		}finally{
+			lock.writeLock().unlock();
+		}
+		maybeCompact();
+		JSONObject result = JSON.make("took", 0, "timed_out", false, "total", deleted, "deleted", deleted, "failures", new JSONArray());
+		JSON.put(result, Connectors.HTTP_REST_SUCCESS, true);
+		return result;
+	}
+
+	//-------SEARCH---------
+
+	private JSONObject search(String indexPattern, String type, JSONObject body){
+		lock.readLock().lock();
+		try{
+			return InMemoryDatabase.buildSearchResult(findHits(indexPattern, type, InMemoryDatabase.getQuery(body)), body);
+		}catch (IOException e){
+			return JSON.make(Connectors.HTTP_REST_SUCCESS, false, "code", 500, "error", e.getMessage());
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Read latest records of all documents (call inside read or write lock).
+	 */
+	private List<Record> scan() throws IOException {
+		checkOpen();
+		List<Record> records = new ArrayList<>(index.getInt(H_SIZE));
+		for (int i = 0; i < capacity; i++){
+			int segment = getSlotSegment(i);
+			if (segment > 0){
+				records.add(readRecord(segment, getSlotOffset(i), getSlotLength(i)));
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Scan documents of index pattern ("_all", "*" or comma separated list) and type (or null) that match query.
+	 */
+	private List<InMemoryDatabase.Hit> findHits(String indexPattern, String type, JSONObject query) throws IOException {
+		boolean allIndices = indexPattern.isEmpty() || indexPattern.equals("_all") || indexPattern.equals("*");
+		List<String> indices = Arrays.asList(indexPattern.split(","));
+		List<InMemoryDatabase.Hit> hits = new ArrayList<>();
+		for (Record record : scan()){
+			int s1 = record.key.indexOf('/');
+			int s2 = record.key.indexOf('/', s1 + 1);
+			String docIndex = record.key.substring(0, s1);
+			String docType = record.key.substring(s1 + 1, s2);
+			if ((!allIndices && !indices.contains(docIndex)) || (type != null && !type.equals(docType))){
+				continue;
+			}
+			JSONObject source = record.getSource();
+			if (InMemoryDatabase.matches(query, source)){
+				hits.add(new InMemoryDatabase.Hit(docIndex, docType, record.key.substring(s2 + 1), source, record.seqNo));
+			}
+		}
+		return hits;
+	}
+}
@@ -0,0 +1,50 @@
+package net.b07z.sepia.server.core.database;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import net.b07z.sepia.server.core.tools.JSON;
+
+/**
+ * Helpers for partial document updates that behave like Elasticsearch "doc" updates. Used by {@link InMemoryDatabase},
+ * {@link LogDatabase} and {@link UpdateCoalescer}.
+ *
+ * @author Florian Quirin
+ *
+ */
+final class PartialUpdates {
+
+	private PartialUpdates(){}
+
+	/**
+	 * Merge update into target (nested objects are merged, other values replaced) like an Elasticsearch partial update.
+	 * Objects and arrays of the update are copied, so the update can be changed afterwards.
+	 */
+	static void mergeInto(JSONObject target, JSONObject update){
+		for (Object k : update.keySet()){
+			Object newValue = update.get(k);
+			Object oldValue = target.get(k);
+			if (newValue instanceof JSONObject && oldValue instanceof JSONObject){
+				mergeInto((JSONObject) oldValue, (JSONObject) newValue);
+			}else if (newValue instanceof JSONObject){
+				JSON.put(target, (String) k, JSON.deepCopy((JSONObject) newValue));
+			}else if (newValue instanceof JSONArray){
+				JSON.put(target, (String) k, JSON.deepCopy((JSONArray) newValue));
+			}else{
+				JSON.put(target, (String) k, newValue);
+			}
+		}
+	}
+
+	/**
+	 * Get partial document of update data. Like {@link Elasticsearch} the data is only treated as wrapped update body
+	 * ({"doc": {...}, "doc_as_upsert": true}) if it has "doc_as_upsert", otherwise it is the partial document itself (even with a "doc" field).
+	 */
+	static JSONObject getPartialDocument(JSONObject data){
+		if (data.containsKey("doc_as_upsert")){
+			Object doc = data.get("doc");
+			return (doc instanceof JSONObject)? (JSONObject) doc : new JSONObject();
+		}
+		return data;
+	}
+}
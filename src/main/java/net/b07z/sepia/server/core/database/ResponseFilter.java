@@ -0,0 +1,162 @@
+package net.b07z.sepia.server.core.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import net.b07z.sepia.server.core.tools.Connectors;
+import net.b07z.sepia.server.core.tools.JSON;
+
+/**
+ * Options to trim Elasticsearch responses on the server before they are sent and parsed: "filter_path" (response fields),
+ * "_source_includes"/"_source_excludes" (document fields) and a compact mode that only returns the document sources (plus IDs).<br>
+ * Example: {@code es.searchByJson("users/all/", query, ResponseFilter.compact().includes("name", "email"))}
+ * 
+ * @author Florian Quirin
+ *
+ */
+public class ResponseFilter {
+	
+	private List<String> filterPath;
+	private List<String> includes;
+	private List<String> excludes;
+	private boolean compact = false;
+	
+	/**
+	 * Create empty filter (full response).
+	 */
+	public static ResponseFilter create(){
+		return new ResponseFilter();
+	}
+	/**
+	 * Create filter in compact mode. Search results become {"total": N, "hits": [{"_id": "...", ...source fields...}]} and 
+	 * documents become {"_id": "...", "found": true, ...source fields...}. Only the required fields are sent by the server.
+	 */
+	public static ResponseFilter compact(){
+		ResponseFilter f = new ResponseFilter();
+		f.compact = true;
+		return f;
+	}
+	
+	/**
+	 * Only return these response fields, e.g. "hits.hits._id", "hits.hits._source.name" (ignored in compact mode).
+	 */
+	public ResponseFilter filterPath(String... paths){
+		this.filterPath = Arrays.asList(paths);
+		return this;
+	}
+	/**
+	 * Only return these fields of the document sources (wildcards allowed, e.g. "address.*").
+	 */
+	public ResponseFilter includes(String... fields){
+		this.includes = Arrays.asList(fields);
+		return this;
+	}
+	/**
+	 * Only return these fields of the document sources (wildcards allowed, e.g. "address.*").
+	 */
+	public ResponseFilter includes(Collection<String> fields){
+		this.includes = (fields != null)? new ArrayList<>(fields) : null;
+		return this;
+	}
+	/**
+	 * Remove these fields from the document sources (wildcards allowed).
+	 */
+	public ResponseFilter excludes(String... fields){
+		this.excludes = Arrays.asList(fields);
+		return this;
+	}
+	
+	public boolean isCompact(){
+		return compact;
+	}
+	
+	//------------------------------------
+	
+	/**
+	 * Add URL parameters to endpoint.
+	 * @param endpoint - e.g. "/index/type/_search" (can already have parameters)
+	 * @param compactFilterPath - "filter_path" used in compact mode
+	 * @param requiredPaths - paths that are always added to a custom "filter_path" (or null)
+	 */
+	String addToEndpoint(String endpoint, String compactFilterPath, String requiredPaths){
+		List<String> params = new ArrayList<>();
+		if (compact){
+			params.add("filter_path=" + compactFilterPath);
+		}else if (filterPath != null && !filterPath.isEmpty()){
+			params.add("filter_path=" + String.join(",", filterPath) + ((requiredPaths != null)? ("," + requiredPaths) : ""));
+		}
+		if (includes != null && !includes.isEmpty()){
+			params.add("_source_includes=" + String.join(",", includes).replaceAll("\\s+", ""));
+		}
+		if (excludes != null && !excludes.isEmpty()){
+			params.add("_source_excludes=" + String.join(",", excludes).replaceAll("\\s+", ""));
+		}
+		if (params.isEmpty()){
+			return endpoint;
+		}
+		return endpoint + (endpoint.contains("?")? "&" : "?") + String.join("&", params);
+	}
+	
+	//"error" and "status" are kept so failed requests still report their reason
+	static final String SEARCH_COMPACT_PATH = "hits.total,hits.hits._id,hits.hits._source,error,status";
+	static final String DOCUMENT_COMPACT_PATH = "_id,found,_source,error,status";
+	static final String MGET_COMPACT_PATH = "docs._id,docs.found,docs._source,docs.error,error,status";
+	
+	/**
+	 * Convert successful search result to compact format {"total": N, "hits": [{"_id": "...", ...source fields...}]}.
+	 */
+	static JSONObject compactSearchResult(JSONObject result){
+		if (!Connectors.httpSuccess(result)){
+			return result;
+		}
+		JSONObject hitsObj = (JSONObject) result.get("hits");
+		JSONArray compactHits = new JSONArray();
+		long total = 0;
+		if (hitsObj != null){
+			Object totalObj = hitsObj.get("total");
+			if (totalObj instanceof JSONObject){
+				total = JSON.getLongOrDefault((JSONObject) totalObj, "value", 0);		//ES 7+
+			}else if (totalObj instanceof Number){
+				total = ((Number) totalObj).longValue();
+			}
+			JSONArray hits = (JSONArray) hitsObj.get("hits");
+			if (hits != null){
+				for (Object o : hits){
+					JSON.add(compactHits, compactDocument((JSONObject) o));
+				}
+			}
+		}
+		return JSON.make(
+			Connectors.HTTP_REST_SUCCESS, true,
+			"total", total,
+			"hits", compactHits
+		);
+	}
+	/**
+	 * Convert document (or hit) to compact format {"_id": "...", ...source fields...} ("found" is kept if it exists).
+	 */
+	@SuppressWarnings("unchecked")
+	static JSONObject compactDocument(JSONObject doc){
+		JSONObject source = (JSONObject) doc.get("_source");
+		JSONObject compactDoc = new JSONObject();
+		JSON.put(compactDoc, "_id", doc.get("_id"));
+		if (doc.containsKey("found")){
+			JSON.put(compactDoc, "found", doc.get("found"));
+		}
+		if (doc.containsKey(Connectors.HTTP_REST_SUCCESS)){
+			JSON.put(compactDoc, Connectors.HTTP_REST_SUCCESS, doc.get(Connectors.HTTP_REST_SUCCESS));
+		}
+		if (doc.containsKey("error")){
+			JSON.put(compactDoc, "error", doc.get("error"));
+		}
+		if (source != null){
+			compactDoc.putAll(source);		//NOTE: ES does not allow metadata fields like "_id" inside sources
+		}
+		return compactDoc;
+	}
+}
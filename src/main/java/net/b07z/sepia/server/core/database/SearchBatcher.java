@@ -0,0 +1,165 @@
+package net.b07z.sepia.server.core.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONObject;
+
+import net.b07z.sepia.server.core.tools.JSON;
+import net.b07z.sepia.server.core.tools.JsonTreeParser;
+
+/**
+ * Micro-batching of {@link Elasticsearch#searchByJson(String, String)} calls. The first search of a window waits up to 'windowMs'
+ * for searches of other threads, then sends all of them as one "_msearch" request and hands the results to the waiting callers.
+ * No extra threads are used, the first caller of a window sends the batch. Enable via {@link Elasticsearch#enableSearchBatching(long, int)}.
+ *
+ * @author Florian Quirin
+ *
+ */
+class SearchBatcher {
+
+	private final Elasticsearch es;
+	private final long windowMs;
+	private final int maxBatchSize;
+
+	private List<PendingSearch> batch = null;		//open batch (guarded by this)
+
+	private final AtomicLong searches = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	private static class PendingSearch {
+		final String path;
+		final String query;
+		final CompletableFuture<JSONObject> result = new CompletableFuture<>();
+
+		PendingSearch(String path, String query){
+			this.path = path;
+			this.query = query;
+		}
+	}
+
+	SearchBatcher(Elasticsearch es, long windowMs, int maxBatchSize){
+		this.es = es;
+		this.windowMs = Math.max(0, windowMs);
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+	}
+
+	/**
+	 * Add search to current batch (or open a new one) and wait for the result. Invalid queries fail right away and never join
+	 * a batch, so they can't break the "_msearch" request of other callers.
+	 */
+	JSONObject searchByJson(String path, String jsonQuery){
+		String query;
+		try{
+			query = normalizeQuery(path, jsonQuery);
+		}catch (Exception e){
+			searches.incrementAndGet();
+			return makeError(e);
+		}
+		PendingSearch search = new PendingSearch(path, query);
+		List<PendingSearch> myBatch;
+		boolean isLeader;
+		synchronized (this){
+			isLeader = (batch == null);
+			if (isLeader){
+				batch = new ArrayList<>();
+			}
+			myBatch = batch;
+			myBatch.add(search);
+			if (myBatch.size() >= maxBatchSize){
+				batch = null;		//closed, wake up leader
+				notifyAll();
+			}
+		}
+		searches.incrementAndGet();
+		if (isLeader){
+			waitForBatch(myBatch);
+			send(myBatch);
+		}
+		return search.result.join();
+	}
+
+	/**
+	 * Wait until window is over or batch is full and close it.
+	 */
+	private synchronized void waitForBatch(List<PendingSearch> myBatch){
+		long end = System.currentTimeMillis() + windowMs;
+		long remaining = windowMs;
+		while (batch == myBatch && remaining > 0){
+			try{
+				wait(remaining);
+			}catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+				break;
+			}
+			remaining = end - System.currentTimeMillis();
+		}
+		if (batch == myBatch){
+			batch = null;
+		}
+	}
+
+	private void send(List<PendingSearch> myBatch){
+		batches.incrementAndGet();
+		try{
+			if (myBatch.size() == 1){
+				PendingSearch s = myBatch.get(0);
+				s.result.complete(es.searchByJsonNow(s.path, s.query, null));
+				return;
+			}
+			List<String> paths = new ArrayList<>(myBatch.size());
+			List<String> queries = new ArrayList<>(myBatch.size());
+			for (PendingSearch s : myBatch){
+				paths.add(s.path);
+				queries.add(s.query);
+			}
+			List<JSONObject> results = es.multiSearchByJson(paths, queries);
+			for (int i = 0; i < myBatch.size(); i++){
+				myBatch.get(i).result.complete(results.get(i));
+			}
+		}catch (Exception e){
+			for (PendingSearch s : myBatch){
+				s.result.complete(makeError(e));
+			}
+		}
+	}
+	/**
+	 * Check query and bring it into the single-line form that "_msearch" (NDJSON) requires.
+	 * @throws IllegalArgumentException if path is empty or query is not a JSON object
+	 */
+	static String normalizeQuery(String path, String jsonQuery){
+		if (path == null || path.replaceFirst("^/", "").isEmpty()){
+			throw new IllegalArgumentException("missing index path");
+		}
+		JSONObject query;
+		try{
+			query = JsonTreeParser.parseObject(jsonQuery);
+		}catch (Exception e){
+			throw new IllegalArgumentException("invalid JSON query: " + e.getMessage());
+		}
+		if (jsonQuery.indexOf('\n') >= 0 || jsonQuery.indexOf('\r') >= 0){
+			return query.toJSONString();
+		}
+		return jsonQuery;
+	}
+	private static JSONObject makeError(Exception e){
+		//same format as failed single search
+		return JSON.make("error", "request failed! - e: " + e.getMessage(), "code", -1);
+	}
+
+	/**
+	 * Get counters.
+	 * @return JSONObject with "searches", "batches" and "averageBatchSize"
+	 */
+	JSONObject getStatistics(){
+		long s = searches.get();
+		long b = batches.get();
+		return JSON.make(
+			"searches", s,
+			"batches", b,
+			"averageBatchSize", (b > 0)? ((double) s / b) : 0.0
+		);
+	}
+}
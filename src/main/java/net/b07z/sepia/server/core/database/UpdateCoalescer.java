@@ -0,0 +1,254 @@
+package net.b07z.sepia.server.core.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import net.b07z.sepia.server.core.tools.Debugger;
+import net.b07z.sepia.server.core.tools.JSON;
+
+/**
+ * Write-behind coalescing of partial updates (like {@link DatabaseInterface#updateItemData}) for "hot" documents. Updates of the same
+ * index/type/id that arrive within the window are merged (nested objects are merged like Elasticsearch does for "doc" updates, other values
+ * are replaced) and written as one update action. All pending actions of a window are sent with one {@link DatabaseInterface#writeBatch(List)}
+ * (e.g. Elasticsearch "_bulk"). Updates with a script (or a custom "doc"/"upsert") are not merged but keep their order.<br>
+ * Every update returns a future with the result code of the write that contained it (0 - written, 1 - failed).<br>
+ * <br>
+ * NOTE: Pending updates are written on {@link #flush()}, {@link #close()} and when the JVM shuts down.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class UpdateCoalescer implements AutoCloseable {
+
+	//Defaults
+	public static long defaultWindowMs = 500;
+	public static int defaultMaxPending = 1000;
+
+	private final DatabaseInterface database;
+	private final long windowMs;
+	private final int maxPending;
+
+	//pending updates (guarded by this)
+	private List<PendingUpdate> pending = new ArrayList<>();
+	private Map<String, PendingUpdate> mergeable = new HashMap<>();
+
+	private final Object writeLock = new Object();		//keeps order of batches written by worker and flush()
+	private volatile boolean running = true;
+	private final Thread worker;
+	private final Thread shutdownHook;
+
+	private final AtomicLong updates = new AtomicLong();
+	private final AtomicLong merged = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	private static class PendingUpdate {
+		final String index;
+		final String type;
+		final String id;
+		final JSONObject data;
+		final List<CompletableFuture<Integer>> futures = new ArrayList<>(2);
+
+		PendingUpdate(String index, String type, String id, JSONObject data){
+			this.index = index;
+			this.type = type;
+			this.id = id;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Create update coalescer with default window and limit.
+	 * @param database - database to write to
+	 */
+	public UpdateCoalescer(DatabaseInterface database){
+		this(database, defaultWindowMs, defaultMaxPending);
+	}
+	/**
+	 * Create update coalescer.
+	 * @param database - database to write to
+	 * @param windowMs - time updates are collected before they are written
+	 * @param maxPending - write immediately when this many documents have pending updates
+	 */
+	public UpdateCoalescer(DatabaseInterface database, long windowMs, int maxPending){
+		this.database = database;
+		this.windowMs = Math.max(1, windowMs);
+		this.maxPending = Math.max(1, maxPending);
+		this.worker = new Thread(this::work, "update-coalescer");
+		this.worker.setDaemon(true);
+		this.worker.start();
+		this.shutdownHook = new Thread(this::flushQuietly, "update-coalescer-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/**
+	 * Add partial update of document at "index/type/id". The data is copied, so it can be changed afterwards.
+	 * @param index - index name, e.g. "account"
+	 * @param type - type name, e.g. "user"
+	 * @param id - id name/number, e.g. user_id
+	 * @param data - partial document (or script, see {@link DatabaseInterface#updateItemData})
+	 * @return future with error code (0 - written, 1 - no connection or fail) that completes after the write
+	 */
+	public CompletableFuture<Integer> update(String index, String type, String id, JSONObject data){
+		CompletableFuture<Integer> future = new CompletableFuture<>();
+		String key = index + "/" + type + "/" + id;
+		boolean canMerge = !data.containsKey("script") && !data.containsKey("doc")
+				&& !data.containsKey("upsert") && !data.containsKey("doc_as_upsert");
+		boolean isClosed;
+		synchronized (this){
+			isClosed = !running;
+			if (!isClosed){
+				add(key, index, type, id, data, canMerge, future);
+			}
+		}
+		if (isClosed){
+			future.complete(database.updateItemData(index, type, id, data));		//closed: write directly
+		}
+		return future;
+	}
+	/**
+	 * Add or merge pending update (call inside synchronized block).
+	 */
+	private void add(String key, String index, String type, String id, JSONObject data, boolean canMerge, CompletableFuture<Integer> future){
+		updates.incrementAndGet();
+		PendingUpdate p = canMerge? mergeable.get(key) : null;
+		if (p != null){
+			PartialUpdates.mergeInto(p.data, data);		//NOTE: copies nested values
+			merged.incrementAndGet();
+		}else{
+			p = new PendingUpdate(index, type, id, JSON.deepCopy(data));
+			pending.add(p);
+			if (canMerge){
+				mergeable.put(key, p);
+			}else{
+				mergeable.remove(key);		//later updates must not be merged into an action before this one
+			}
+			if (pending.size() == 1 || pending.size() >= maxPending){
+				notifyAll();
+			}
+		}
+		p.futures.add(future);
+	}
+
+	/**
+	 * Write all pending updates now and wait until they are written.
+	 */
+	public void flush(){
+		synchronized (writeLock){
+			write(takePending());
+		}
+	}
+
+	/**
+	 * Write pending updates and stop background thread. Further updates are written directly.
+	 */
+	@Override
+	public void close(){
+		synchronized (this){
+			running = false;
+			notifyAll();
+		}
+		flush();
+		worker.interrupt();
+		try{
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		}catch (IllegalStateException e){
+			//JVM is already shutting down
+		}
+	}
+
+	/**
+	 * Get counters.
+	 * @return JSONObject with "updates" (calls), "merged" (updates merged into another one), "written" (successful actions),
+	 * "failed" (failed actions) and "batches"
+	 */
+	public JSONObject getStatistics(){
+		return JSON.make(
+			"updates", updates.get(),
+			"merged", merged.get(),
+			"written", written.get(),
+			"failed", failed.get(),
+			"batches", batches.get()
+		);
+	}
+
+	//------------------------------------
+
+	private synchronized List<PendingUpdate> takePending(){
+		List<PendingUpdate> batch = pending;
+		pending = new ArrayList<>();
+		mergeable = new HashMap<>();
+		return batch;
+	}
+
+	private void work(){
+		while (running){
+			try{
+				synchronized (this){
+					while (running && pending.isEmpty()){
+						wait();
+					}
+					//collect updates for one window (or until full)
+					long end = System.currentTimeMillis() + windowMs;
+					long remaining = windowMs;
+					while (running && remaining > 0 && pending.size() < maxPending){
+						wait(remaining);
+						remaining = end - System.currentTimeMillis();
+					}
+				}
+			}catch (InterruptedException e){
+				if (!running){
+					break;
+				}
+			}
+			synchronized (writeLock){
+				write(takePending());
+			}
+		}
+	}
+
+	private void flushQuietly(){
+		try{
+			flush();
+		}catch (Exception e){
+			Debugger.println("UpdateCoalescer - failed to flush updates on shutdown: " + e.getMessage(), 1);
+		}
+	}
+
+	private void write(List<PendingUpdate> batch){
+		if (batch.isEmpty()){
+			return;
+		}
+		List<BatchAction> actions = new ArrayList<>(batch.size());
+		for (PendingUpdate p : batch){
+			actions.add(BatchAction.update(p.index, p.type, p.id, p.data));
+		}
+		JSONArray items = null;
+		try{
+			JSONObject result = database.writeBatch(actions);
+			items = JSON.getJArray(result, "items");
+		}catch (Exception e){
+			Debugger.println("UpdateCoalescer - failed to write " + batch.size() + " updates: " + e.getMessage(), 1);
+		}
+		batches.incrementAndGet();
+		for (int i = 0; i < batch.size(); i++){
+			int code = (items != null && i < items.size())? JSON.getIntegerOrDefault((JSONObject) items.get(i), "code", 1) : 1;
+			if (code == 0){
+				written.incrementAndGet();
+			}else{
+				failed.incrementAndGet();
+			}
+			for (CompletableFuture<Integer> f : batch.get(i).futures){
+				f.complete(code);
+			}
+		}
+	}
+}
@@ -0,0 +1,290 @@
+package net.b07z.sepia.server.core.tools;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Per-host circuit breaker used by {@link Connectors}. When too many calls to a host fail (I/O errors or 5xx) or are too slow
+ * the breaker opens and calls fail fast with {@link Connectors#CODE_CIRCUIT_OPEN} instead of waiting for timeouts.
+ * After {@link #openDurationMs} a few trial calls are allowed (half-open) to check if the host has recovered.<br>
+ * <br>
+ * NOTE: Settings are global and apply to all hosts.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		closed,
+		open,
+		half_open
+	}
+
+	/**
+	 * Listener for state changes of any breaker.
+	 */
+	public interface StateListener {
+		void onStateChange(String host, State from, State to);
+	}
+
+	//Settings
+	public static boolean enabled = true;
+	public static int windowSize = 50;					//number of last calls used to calculate rates
+	public static int minCalls = 20;					//min. calls in window before breaker can open
+	public static double failureRateThreshold = 0.5;	//open if this fraction of calls failed
+	public static long slowCallThresholdMs = 10000;		//calls taking longer count as slow
+	public static double slowCallRateThreshold = 0.8;	//open if this fraction of calls was slow
+	public static long openDurationMs = 30000;			//time to wait before trial calls are allowed
+	public static int halfOpenTrialCalls = 3;			//successful trial calls required to close again
+
+	private static final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+	private static final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+
+	private final String host;
+	private State state = State.closed;
+	private long openedAt = 0;
+	private int halfOpenStarted = 0;
+	private int halfOpenSucceeded = 0;
+
+	//ring buffer of last calls
+	private final boolean[] failedCalls;
+	private final boolean[] slowCalls;
+	private int index = 0;
+	private int calls = 0;
+	private int failures = 0;
+	private int slow = 0;
+
+	//counters
+	private long totalCalls = 0;
+	private long totalFailures = 0;
+	private long totalRejected = 0;
+	private long lastStateChange = 0;
+
+	private CircuitBreaker(String host){
+		this.host = host;
+		int size = Math.max(1, windowSize);
+		this.failedCalls = new boolean[size];
+		this.slowCalls = new boolean[size];
+	}
+
+	/**
+	 * Get breaker for host (created if missing).
+	 * @param host - host key, see {@link #getHostKey(URI)}
+	 */
+	public static CircuitBreaker forHost(String host){
+		return breakers.computeIfAbsent(host, h -> new CircuitBreaker(h));
+	}
+	/**
+	 * Get a key like "host:port" for the given URI.
+	 */
+	public static String getHostKey(URI uri){
+		return getHostKey(uri.getHost(), uri.getPort());
+	}
+	/**
+	 * Get a key like "host:port" for the given host name and port (or -1 for default port).
+	 */
+	public static String getHostKey(String hostName, int port){
+		String host = (hostName == null)? "unknown" : hostName.toLowerCase();
+		return (port > 0)? (host + ":" + port) : host;
+	}
+	/**
+	 * Remove all breakers (and their statistics).
+	 */
+	public static void resetAll(){
+		breakers.clear();
+	}
+
+	/**
+	 * Add a listener that is called whenever a breaker changes its state.
+	 */
+	public static void addStateListener(StateListener listener){
+		listeners.add(listener);
+	}
+	/**
+	 * Remove a state listener.
+	 */
+	public static void removeStateListener(StateListener listener){
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Get state and counters of all breakers.
+	 * @return JSONObject with host keys and statistics as value
+	 */
+	public static JSONObject getStatistics(){
+		JSONObject stats = new JSONObject();
+		breakers.forEach((host, breaker) -> JSON.put(stats, host, breaker.getHostStatistics()));
+		return stats;
+	}
+
+	//------------------------------------
+
+	/**
+	 * Check if a call is allowed. If the breaker is open and the wait time is over it switches to half-open and allows trial calls.
+	 * Every call that was allowed has to report its result via {@link #onResult(boolean, long)}.
+	 * @return true if call can be made
+	 */
+	public boolean tryAcquire(){
+		if (!enabled){
+			return true;
+		}
+		State from = null;
+		boolean allowed;
+		synchronized (this){
+			if (state == State.open && (System.currentTimeMillis() - openedAt) >= openDurationMs){
+				from = setState(State.half_open);
+				halfOpenStarted = 0;
+				halfOpenSucceeded = 0;
+			}
+			if (state == State.closed){
+				allowed = true;
+			}else if (state == State.half_open && halfOpenStarted < halfOpenTrialCalls){
+				halfOpenStarted++;
+				allowed = true;
+			}else{
+				totalRejected++;
+				allowed = false;
+			}
+		}
+		notifyListeners(from, State.half_open);
+		return allowed;
+	}
+
+	/**
+	 * Report result of call.
+	 * @param failed - true for I/O errors, timeouts or server errors (5xx)
+	 * @param durationMs - duration of call
+	 */
+	public void onResult(boolean failed, long durationMs){
+		if (!enabled){
+			return;
+		}
+		boolean isSlow = durationMs >= slowCallThresholdMs;
+		State from = null;
+		State to = null;
+		synchronized (this){
+			totalCalls++;
+			if (failed) totalFailures++;
+			if (state == State.half_open){
+				if (failed || isSlow){
+					to = State.open;
+					from = setState(to);
+				}else if (++halfOpenSucceeded >= halfOpenTrialCalls){
+					to = State.closed;
+					from = setState(to);
+				}
+			}else if (state == State.closed){
+				record(failed, isSlow);
+				if (calls >= minCalls && (failures >= failureRateThreshold * calls || slow >= slowCallRateThreshold * calls)){
+					to = State.open;
+					from = setState(to);
+				}
+			}
+		}
+		notifyListeners(from, to);
+	}
+
+	/**
+	 * Report that an allowed call was cancelled by the client (e.g. aborted hedge) and has no result. Frees the trial slot in half-open state.
+	 */
+	public synchronized void onCancelled(){
+		if (state == State.half_open && halfOpenStarted > 0){
+			halfOpenStarted--;
+		}
+	}
+
+	/**
+	 * Current state.
+	 */
+	public synchronized State getState(){
+		return state;
+	}
+	/**
+	 * Host of this breaker.
+	 */
+	public String getHost(){
+		return host;
+	}
+
+	/**
+	 * Statistics of this breaker.
+	 */
+	public synchronized JSONObject getHostStatistics(){
+		JSONObject stats = JSON.make(
+			"state", state.name(),
+			"windowCalls", calls,
+			"windowFailures", failures,
+			"windowSlowCalls", slow,
+			"totalCalls", totalCalls,
+			"totalFailures", totalFailures
+		);
+		JSON.put(stats, "totalRejected", totalRejected);
+		JSON.put(stats, "lastStateChange", lastStateChange);
+		return stats;
+	}
+
+	private void record(boolean failed, boolean isSlow){
+		if (calls == failedCalls.length){
+			//remove oldest
+			if (failedCalls[index]) failures--;
+			if (slowCalls[index]) slow--;
+		}else{
+			calls++;
+		}
+		failedCalls[index] = failed;
+		slowCalls[index] = isSlow;
+		if (failed) failures++;
+		if (isSlow) slow++;
+		index = (index + 1) % failedCalls.length;
+	}
+
+	/**
+	 * Set new state (call inside synchronized block) and return previous one.
+	 */
+	private State setState(State newState){
+		State from = state;
+		state = newState;
+		lastStateChange = System.currentTimeMillis();
+		if (newState == State.open){
+			openedAt = lastStateChange;
+		}else if (newState == State.closed){
+			calls = 0;
+			failures = 0;
+			slow = 0;
+			index = 0;
+		}
+		return from;
+	}
+
+	private void notifyListeners(State from, State to){
+		if (from == null || to == null || from == to){
+			return;
+		}
+		Debugger.println("CircuitBreaker - host '" + host + "' changed state from '" + from.name() + "' to '" + to.name() + "'", 3);
+		for (StateListener listener : listeners){
+			try{
+				listener.onStateChange(host, from, to);
+			}catch (Exception e){
+				Debugger.println("CircuitBreaker - state listener failed: " + e.getMessage(), 1);
+			}
+		}
+	}
+
+	/**
+	 * Exception thrown when a call is rejected because the breaker is open.
+	 */
+	public static class OpenException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public OpenException(String host){
+			super("circuit breaker is open for host: " + host);
+		}
+	}
+}
@@ -1,27 +1,62 @@
 package net.b07z.sepia.server.core.tools;
 
-import java.io.DataOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.net.ssl.SSLContext;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
@@ -29,17 +64,16 @@ import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
-import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.ssl.SSLContexts;
 import org.apache.http.util.EntityUtils;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 /**
@@ -53,6 +87,16 @@ public class Connectors {
 	public static final String USER_AGENT = "Mozilla/5.0";
 	public static final String HTTP_REST_SUCCESS = "HTTP_REST_SUCCESS";
 	
+	public static final int CODE_CIRCUIT_OPEN = -2;		//result "code" if call was rejected by CircuitBreaker
+	public static final int CODE_DEADLINE_EXCEEDED = -3;	//result "code" if batch call did not finish before deadline
+	public static final int CODE_BODY_FAILED = -4;		//result "code" if response body could not be consumed (e.g. too large or write failed)
+	
+	private static final long MAX_BYTE_ARRAY_SIZE = Integer.MAX_VALUE - 8;		//some VMs reserve header words in arrays
+	private static final int MAX_INITIAL_BUFFER_SIZE = 8 * 1024 * 1024;
+	private static final long WORKER_RETRY_WAIT_MS = 10;		//wait before a batch call tries again to get a busy worker thread
+	
+	public static int batchMaxConcurrencyPerHost = 6;		//max. parallel calls to the same host in {@link #executeAll(List, int, long)}
+	
 	public static final int CONNECT_TIMEOUT = 15000;
 	public static final int READ_TIMEOUT = 60000;
 	
@@ -79,6 +123,9 @@ public class Connectors {
 		public String content = "";
 		public Charset encoding = null;
 		public  Map<String, String> headers;
+		public byte[] bytes = null;			//body of binary calls, e.g. {@link Connectors#apacheHttpGETBytes(String, Map, long)}
+		public String contentType = null;	//MIME type of response body (binary and streaming calls)
+		public long contentLength = -1;		//number of body bytes received (binary and streaming calls)
 		
 		HttpClientResult(String content, int statusCode){
 			this.content = content;
@@ -118,27 +165,15 @@ public class Connectors {
 	 * Throws a RuntimeException on fail.
 	 */
 	public static JSONObject simpleJsonGet(String url, Map<String, String> headers) {
-		try {
-			URL urlObj = new URL(url);
-			HttpURLConnection con = (HttpURLConnection) urlObj.openConnection();
-			con.setRequestMethod("GET");
-			con.setRequestProperty("User-Agent", USER_AGENT);
-			con.setConnectTimeout(CONNECT_TIMEOUT);
-			con.setReadTimeout(READ_TIMEOUT);
-			//con.setRequestProperty("content-type", "text/html");
-			if (headers != null){
-				for (Map.Entry<String, String> entry : headers.entrySet()){
-					con.setRequestProperty(entry.getKey(), entry.getValue());
-					//System.out.println(entry.getKey() +": "+ entry.getValue());
-				}
-			}
-			int responseCode = con.getResponseCode();
-			if (responseCode == HttpURLConnection.HTTP_OK){
-				try (InputStream stream = con.getInputStream()) {
-					String content = getStreamContentAsString(con, stream);
-					return JSON.parseStringOrFail(content);
-				}
+		HttpGet request = new HttpGet(url);
+		setRequestHeaders(request, headers);
+		try (CloseableHttpResponse response = HttpClientPool.execute(request)){
+			int responseCode = response.getStatusLine().getStatusCode();
+			if (responseCode == HttpStatus.SC_OK){
+				String content = getEntityContentAsString(response.getEntity());
+				return JSON.parseStringOrFail(content);
 			} else {
+				EntityUtils.consume(response.getEntity());
 				throw new RuntimeException("Could not get '" + url + "': response code " + responseCode);
 			}
 		} catch (Exception e) {
@@ -150,21 +185,14 @@ public class Connectors {
 	 * Throws a RuntimeException on fail.
 	 */
 	public static String simpleHtmlGet(String url){
-		try {
-			URL urlObj = new URL(url);
-			HttpURLConnection con = (HttpURLConnection) urlObj.openConnection();
-			con.setRequestMethod("GET");
-			con.setRequestProperty("User-Agent", USER_AGENT);
-			con.setRequestProperty("Accept", "text/html");
-			con.setConnectTimeout(CONNECT_TIMEOUT);
-			con.setReadTimeout(READ_TIMEOUT);
-			int responseCode = con.getResponseCode();
-			if (responseCode == HttpURLConnection.HTTP_OK){
-				try (InputStream stream = con.getInputStream()) {
-					String content = getStreamContentAsString(con, stream);
-					return content;
-				}
+		HttpGet request = new HttpGet(url);
+		request.setHeader(HEADER_ACCEPT_CONTENT, "text/html");
+		try (CloseableHttpResponse response = HttpClientPool.execute(request)){
+			int responseCode = response.getStatusLine().getStatusCode();
+			if (responseCode == HttpStatus.SC_OK){
+				return getEntityContentAsString(response.getEntity());
 			}else{
+				EntityUtils.consume(response.getEntity());
 				throw new RuntimeException(DateTime.getLogDate() + " ERROR - Could not get '" + url + "': response code " + responseCode);
 			}
 		}catch (Exception e){
@@ -213,30 +241,20 @@ public class Connectors {
 	 * NOTE: If the URL was redirected it will produce a ERROR log message and NOT follow the link.<br>
 	 * NOTE2: Cookie management is disabled<br>
 	 * NOTE3: Content encoding is read from HttpEntity and defaults to UTF-8
-	 * NOTE4: Timeouts are: 5s (socketTimeout) and 8s (connect, connectionRequest). Retry is 2.
+	 * NOTE4: Timeouts are: 5s (socketTimeout) and 8s (connect, connectionRequest). Retry is 2.<br>
+	 * NOTE5: Uses the shared connection pool of {@link HttpClientPool}.
 	 * @param url - URL to call
 	 * @param headers - request headers (or null), e.g. "Accept", "User-Agent", etc.
 	 * @return {@link HttpClientResult}
 	 */
 	public static HttpClientResult apacheHttpGET(String url, Map<String, String> headers) throws Exception {
-		RequestConfig config = RequestConfig.custom()
+		RequestConfig config = HttpClientPool.getRequestConfigBuilder()
 				.setConnectTimeout(8000)
 				.setConnectionRequestTimeout(8000)
 				.setSocketTimeout(5000)
+				.setRedirectsEnabled(false)
 				.build();
-		CloseableHttpClient httpclient = HttpClientBuilder.create()
-				.setDefaultRequestConfig(config)
-				.setRetryHandler(new HttpRequestRetryHandler(){
-			        @Override
-			        public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
-			            return executionCount <= 2 ;
-			        }
-			    })
-				.disableRedirectHandling()
-				.disableCookieManagement()
-				.setUserAgent(USER_AGENT) 		//NOTE: this is primarily to avoid calls to system.java.version in sandbox
-				.build();
-		return apacheHttpGET(url, httpclient, headers);
+		return apacheHttpGET(url, null, config, headers);
 	}
 	/**
 	 * Apache HTTP client wit custom settings. Compare: {@link #apacheHttpGET(String, Map)}.<br>
@@ -249,13 +267,17 @@ public class Connectors {
 	 * @return {@link HttpClientResult}
 	 */
 	public static HttpClientResult apacheHttpGET(String url, CloseableHttpClient httpclient, Map<String, String> headers) throws Exception {
-		//CloseableHttpClient httpclient = HttpClients.createDefault();
+		return apacheHttpGET(url, httpclient, null, headers);
+	}
+	/**
+	 * Apache HTTP GET with custom client (or null for shared client with default settings) and optional request config.
+	 */
+	private static HttpClientResult apacheHttpGET(String url, CloseableHttpClient httpclient, RequestConfig config, Map<String, String> headers) throws Exception {
 		HttpGet httpGet = new HttpGet(url);
-		if (headers != null){
-			for (Map.Entry<String, String> entry : headers.entrySet()){
-				httpGet.setHeader(entry.getKey(), entry.getValue());
-			}
+		if (config != null){
+			httpGet.setConfig(config);
 		}
+		setRequestHeaders(httpGet, headers);
 		if (headers == null || !headers.containsKey("User-Agent")){
 			httpGet.addHeader("User-Agent", USER_AGENT);
 		}
@@ -263,16 +285,16 @@ public class Connectors {
 		int statusCode = 0;
 		String responseData = null;
 		Charset charset = null;
-		try (CloseableHttpResponse response = httpclient.execute(httpGet);){
+		try (CloseableHttpResponse response = (httpclient == null)? HttpClientPool.execute(httpGet) : httpclient.execute(httpGet);){
 			statusLine = response.getStatusLine().toString();
 			statusCode = response.getStatusLine().getStatusCode();
 			//System.out.println(statusLine);
+			HttpEntity resEntity = response.getEntity();
 			if (statusCode == 301){
 				String errorRedirect = response.getFirstHeader("Location").getValue();
 				statusLine += (", NEW URI: " + errorRedirect);
     			Debugger.println("HTTP GET: '" + url + "' has REDIRECT to: " + errorRedirect, 1);
     		}else{
-			    HttpEntity resEntity = response.getEntity();
 			    if (resEntity != null){
 			    	ContentType ct = ContentType.getOrDefault(resEntity);
 			    	charset = ct.getCharset();
@@ -281,20 +303,151 @@ public class Connectors {
 			        }
 		        	responseData = EntityUtils.toString(resEntity, charset);
 		        }
-			    EntityUtils.consume(resEntity);
     		}
-			Map<String, String> responseHeaders = new HashMap<>();
-			for (Header header : response.getAllHeaders()){
-				responseHeaders.put(header.getName(), header.getValue());
-			}
-		    return new HttpClientResult(responseData, statusCode, statusLine, responseHeaders, charset);
+			EntityUtils.consume(resEntity); 		//NOTE: makes sure the connection can be reused
+		    return new HttpClientResult(responseData, statusCode, statusLine, getResponseHeaders(response), charset);
 		    
 		}catch (Exception e){
 			if (Is.nullOrEmpty(statusLine)){
 				statusLine = e.getMessage();
 			}
-			return new HttpClientResult(null, statusCode, statusLine, charset);
+			return new HttpClientResult(null, getErrorCode(e, statusCode), statusLine, charset);
+		}
+	}
+	
+	/**
+	 * Consumer for streamed response bodies, see {@link Connectors#apacheHttpGETStream(String, Map, ResponseConsumer)}.
+	 */
+	@FunctionalInterface
+	public interface ResponseConsumer {
+		/**
+		 * Read the response body. The stream is only valid inside this method.
+		 * @param result - status, headers and content type of the response (no content)
+		 * @param body - response body (already decompressed if it was GZIP encoded)
+		 */
+		void accept(HttpClientResult result, InputStream body) throws IOException;
+	}
+	/**
+	 * HTTP GET that returns the response body as bytes in {@link HttpClientResult#bytes} (no string decoding),
+	 * e.g. for audio files or images. Uses the shared connection pool of {@link HttpClientPool} and follows redirects.
+	 * @param url - URL to call
+	 * @param headers - request headers (or null)
+	 * @param maxBytes - max. size of body, larger responses are aborted with code {@link #CODE_BODY_FAILED}, status line "response too large..."
+	 * and no bytes (-1 for no limit, but never more than a byte array can hold)
+	 * @return {@link HttpClientResult} with 'bytes' if status code is 2xx
+	 */
+	public static HttpClientResult apacheHttpGETBytes(String url, Map<String, String> headers, long maxBytes){
+		long limit = (maxBytes >= 0)? Math.min(maxBytes, MAX_BYTE_ARRAY_SIZE) : MAX_BYTE_ARRAY_SIZE;
+		return apacheHttpGETStream(url, headers, (result, body) -> {
+			if (result.contentLength > limit){
+				throw new IOException("response too large: " + result.contentLength + " bytes");
+			}
+			//NOTE: content length is only a hint for the initial buffer, it can be wrong (or compressed size)
+			int initialSize = (result.contentLength > 0)? (int) Math.min(result.contentLength, MAX_INITIAL_BUFFER_SIZE) : 8192;
+			ByteArrayOutputStream bos = new ByteArrayOutputStream(initialSize);
+			byte[] buffer = new byte[8192];
+			long total = 0;
+			int n;
+			while ((n = body.read(buffer)) != -1){
+				total += n;
+				if (total > limit){
+					throw new IOException("response too large: more than " + limit + " bytes");
+				}
+				bos.write(buffer, 0, n);
+			}
+			result.bytes = bos.toByteArray();
+			result.contentLength = total;
+		});
+	}
+	/**
+	 * HTTP GET that writes the response body to a file with a small buffer, e.g. for large exports or audio files.
+	 * The body is written to a temporary file next to the target that replaces the target only if the download was complete, so the target
+	 * is never left half-written. Nothing is written if status code is not 2xx. Uses the shared connection pool of {@link HttpClientPool}
+	 * and follows redirects.
+	 * @param url - URL to call
+	 * @param headers - request headers (or null)
+	 * @param target - target file (will be overwritten)
+	 * @return {@link HttpClientResult} with 'contentLength' set to the number of bytes written or code {@link #CODE_BODY_FAILED} if
+	 * download or write failed
+	 */
+	public static HttpClientResult apacheHttpGETToFile(String url, Map<String, String> headers, File target){
+		return apacheHttpGETStream(url, headers, (result, body) -> {
+			Path targetPath = target.toPath().toAbsolutePath();
+			Path tmp = Files.createTempFile(targetPath.getParent(), targetPath.getFileName().toString(), ".part");
+			try{
+				long written = Files.copy(body, tmp, StandardCopyOption.REPLACE_EXISTING);
+				try{
+					Files.move(tmp, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				}catch (AtomicMoveNotSupportedException e){
+					Files.move(tmp, targetPath, StandardCopyOption.REPLACE_EXISTING);
+				}
+				result.contentLength = written;
+			}catch (IOException | RuntimeException e){
+				Files.deleteIfExists(tmp);
+				throw e;
+			}
+		});
+	}
+	/**
+	 * HTTP GET that hands the response body stream to a consumer instead of loading it into memory. The consumer is only called
+	 * if status code is 2xx, otherwise the body is discarded. The connection is released as soon as the consumer returns
+	 * (remaining data is skipped) or aborted if the consumer throws an exception.<br>
+	 * Uses the shared connection pool of {@link HttpClientPool} and follows redirects.
+	 * @param url - URL to call
+	 * @param headers - request headers (or null)
+	 * @param consumer - {@link ResponseConsumer} to read the body
+	 * @return {@link HttpClientResult} with status, headers and content type (no 'content'). If the consumer failed 'statusCode'
+	 * is {@link #CODE_BODY_FAILED} and 'statusLine' contains the error.
+	 */
+	public static HttpClientResult apacheHttpGETStream(String url, Map<String, String> headers, ResponseConsumer consumer){
+		HttpGet httpGet;
+		try{
+			httpGet = new HttpGet(url);
+		}catch (Exception e){
+			return new HttpClientResult(null, 0, e.getMessage());
+		}
+		setRequestHeaders(httpGet, headers);
+		HttpClientResult result = new HttpClientResult(null, 0);
+		try (CloseableHttpResponse response = HttpClientPool.execute(httpGet)){
+			result.statusCode = response.getStatusLine().getStatusCode();
+			result.statusLine = response.getStatusLine().toString();
+			result.headers = getResponseHeaders(response);
+			HttpEntity entity = response.getEntity();
+			if (entity == null){
+				return result;
+			}
+			ContentType ct = ContentType.get(entity);
+			if (ct != null){
+				result.contentType = ct.getMimeType();
+				result.encoding = ct.getCharset();
+			}
+			result.contentLength = entity.getContentLength();
+			if (result.statusCode >= 200 && result.statusCode < 300){
+				try (InputStream body = entity.getContent()){
+					consumer.accept(result, body);
+				}catch (IOException | RuntimeException e){
+					httpGet.abort();		//don't wait for the rest of the body
+					result.statusCode = CODE_BODY_FAILED;
+					result.statusLine = e.getMessage();
+					result.bytes = null;
+				}
+			}else{
+				EntityUtils.consume(entity);
+			}
+			return result;
+			
+		}catch (Exception e){
+			result.statusCode = getErrorCode(e, result.statusCode);
+			result.statusLine = e.getMessage();
+			return result;
+		}
+	}
+	private static Map<String, String> getResponseHeaders(org.apache.http.HttpResponse response){
+		Map<String, String> responseHeaders = new HashMap<>();
+		for (Header header : response.getAllHeaders()){
+			responseHeaders.put(header.getName(), header.getValue());
 		}
+		return responseHeaders;
 	}
 	
 	/**
@@ -376,74 +529,206 @@ public class Connectors {
 	 * @return JSONObject response of URL call - Note: if response is not JSON it will be placed e.g. as "STRING" field in the result or "JSONARRAY" if it's an array.
 	 */
 	public static JSONObject httpGET(String url, String[] params, Map<String, String> headers, int connectTimeout) {
-		int responseCode = -1;
-		String success_str = HTTP_REST_SUCCESS;
+		if (params != null){
+			for (String s : params){
+				url = url + s;
+			}
+		}
+		RequestCoalescer<JSONObject> coalescer = getCoalescer;
+		if (coalescer != null){
+			final String fullUrl = url;
+			String key;
+			try{
+				key = getCoalescingKeyFunction.apply(fullUrl, headers);
+			}catch (Exception e){
+				key = null;
+			}
+			return coalescer.execute(key, () -> executeGET(fullUrl, headers, connectTimeout));
+		}
+		return executeGET(url, headers, connectTimeout);
+	}
+	private static JSONObject executeGET(String url, Map<String, String> headers, int connectTimeout){
+		HttpRequestBase request;
 		try{
-			if (params != null){
-				for (String s : params){
-					url = url + s;
+			request = createRequest(Method.get, url, null, headers);
+		}catch (Exception e){
+			return buildError(-1, e.toString());
+		}
+		return executeRest(request, connectTimeout, false);
+	}
+	
+	//--------------------------GET hedging--------------------------------
+	
+	/**
+	 * Make HTTP GET request with hedging: if there is no answer after a delay derived from the recorded latency of the host
+	 * (see {@link HedgedRequests}) a second request is sent and the first successful answer wins. The other request is aborted.
+	 * Use this only for idempotent, latency-critical calls.
+	 * @param url - URL address to call including all parameters
+	 * @param headers - Map with request properties (keys) and values or null
+	 * @return JSONObject response of first successful attempt (or last failed one), same format as {@link #httpGET(String, String[], Map)}
+	 */
+	public static JSONObject httpGETHedged(String url, Map<String, String> headers){
+		return httpGETHedged(Arrays.asList(url), headers, CONNECT_TIMEOUT);
+	}
+	/**
+	 * Make HTTP GET request with hedging to a list of replicas. The first URL is called first, the hedge is sent to the second URL
+	 * (or to the first again if there is only one). See {@link #httpGETHedged(String, Map)}.
+	 * @param urls - full URLs of the same resource on different hosts, e.g. "http://node1:9200/index/_doc/1", "http://node2:9200/index/_doc/1"
+	 * @param headers - Map with request properties (keys) and values or null
+	 * @param connectTimeout - max. time to wait for connection (ms)
+	 * @return JSONObject response of first successful attempt (or last failed one)
+	 */
+	public static JSONObject httpGETHedged(List<String> urls, Map<String, String> headers, int connectTimeout){
+		if (urls == null || urls.isEmpty()){
+			return buildError(-1, "no URL given");
+		}
+		HttpGet[] attempts = new HttpGet[2];
+		try{
+			attempts[0] = new HttpGet(urls.get(0));
+			attempts[1] = new HttpGet(urls.get(urls.size() > 1? 1 : 0));
+		}catch (Exception e){
+			return buildError(-1, e.toString());
+		}
+		HedgedRequests hedgeTarget = HedgedRequests.forHost(CircuitBreaker.getHostKey(attempts[1].getURI()));
+		long delay = HedgedRequests.forHost(CircuitBreaker.getHostKey(attempts[0].getURI())).getHedgeDelayMs();
+		
+		CompletableFuture<JSONObject> result = new CompletableFuture<>();
+		AtomicInteger pending = new AtomicInteger(1);
+		AtomicInteger winner = new AtomicInteger(-1);
+		AtomicReference<JSONObject> lastResult = new AtomicReference<>();
+		long start = System.currentTimeMillis();
+		if (!startHedgeAttempt(attempts, 0, headers, connectTimeout, result, pending, winner, lastResult)){
+			//no free worker thread - no hedging possible, just make the normal call (headers are already set)
+			return executeRest(attempts[0], connectTimeout, false);
+		}
+		try{
+			return result.get(delay, TimeUnit.MILLISECONDS);
+		}catch (TimeoutException e){
+			if (!result.isDone() && hedgeTarget.tryHedge()){
+				pending.incrementAndGet();
+				if (!startHedgeAttempt(attempts, 1, headers, connectTimeout, result, pending, winner, lastResult)){
+					//no free worker thread, wait for first attempt only (or use its result if it already failed)
+					finishHedgeAttempt(0, null, result, pending, winner, lastResult);
 				}
 			}
-			URL obj = new URL(url);
-			HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-	
-			con.setRequestMethod("GET");
-			con.setRequestProperty("User-Agent", USER_AGENT);
-			//con.setRequestProperty(HEADER_ACCEPT_ENCODING, "gzip");		//TODO: make this common?
-			con.setConnectTimeout(connectTimeout);
-			con.setReadTimeout(READ_TIMEOUT);
-			
-			if (headers != null){
-				for (Map.Entry<String, String> entry : headers.entrySet()){
-					con.setRequestProperty(entry.getKey(), entry.getValue());
-					//System.out.println(entry.getKey() +": "+ entry.getValue());
+			try{
+				//NOTE: attempts are limited by connect and read timeout, this is just a safety net
+				long maxWaitMs = Math.max(1, connectTimeout + READ_TIMEOUT - (System.currentTimeMillis() - start));
+				JSONObject res = result.get(maxWaitMs, TimeUnit.MILLISECONDS);
+				if (winner.get() == 1 && httpSuccess(res)){
+					hedgeTarget.onHedgeWin();
 				}
+				return res;
+			}catch (TimeoutException te){
+				return buildError(CODE_DEADLINE_EXCEEDED, "hedged request timed out");
+			}catch (InterruptedException ie){
+				Thread.currentThread().interrupt();
+				return buildError(-1, ie.toString());
+			}catch (ExecutionException ee){
+				return buildError(-1, ee.getCause().toString());
 			}
-	
-			responseCode = con.getResponseCode();
-			//System.out.println("GET Response Code : " + responseCode);		//debug
-	
-			//success?
-			if (responseCode >= 200 && responseCode < 300){		//(responseCode == HttpURLConnection.HTTP_OK){
-				/*
-				BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-				String inputLine;
-				StringBuffer response = new StringBuffer();
-	 
-				while ((inputLine = in.readLine()) != null) {
-					response.append(inputLine);
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			return buildError(-1, e.toString());
+		}catch (ExecutionException e){
+			return buildError(-1, e.getCause().toString());
+		}finally{
+			//cancel the loser (or everything if we were interrupted or timed out)
+			for (int i = 0; i < attempts.length; i++){
+				if (i != winner.get()){
+					attempts[i].abort();
 				}
-				in.close();
-				
-				//result
-				//System.out.println(response.toString());						//debug
-				String res = response.toString();
-				JSONObject result = build(res, success_str);
-				return result;
-				*/
-				String content = getStreamContentAsString(con, con.getInputStream());
-				JSONObject result = build(content, success_str);
-				return result;
-		
-			}else{
-				//result
-				//System.out.println("GET request did not work");				//debug
-				JSONObject json = new JSONObject();
-				JSON.add(json, success_str, false);
-				JSON.add(json, "code", responseCode);
-				return json;
 			}
-			
-		}catch (Exception e){
-			//result
-			//System.out.println("GET request did not work");					//debug
-			JSONObject json = new JSONObject();
-			JSON.add(json, success_str, false);
-			JSON.add(json, "error", e.toString());
-			JSON.add(json, "code", responseCode);
-			return json;
 		}
 	}
+	/**
+	 * Start attempt on worker thread. Returns false if no worker thread is available.
+	 */
+	private static boolean startHedgeAttempt(HttpGet[] attempts, int index, Map<String, String> headers, int connectTimeout,
+			CompletableFuture<JSONObject> result, AtomicInteger pending, AtomicInteger winner, AtomicReference<JSONObject> lastResult){
+		HttpGet request = attempts[index];
+		setRequestHeaders(request, headers);
+		try{
+			HttpClientPool.getWorkerExecutor().execute(() -> {
+				JSONObject res = executeRest(request, connectTimeout, false);
+				finishHedgeAttempt(index, res, result, pending, winner, lastResult);
+			});
+			return true;
+		}catch (RejectedExecutionException e){
+			return false;
+		}
+	}
+	/**
+	 * Count down pending attempts. A successful result wins immediately, otherwise whoever finishes the last pending attempt
+	 * completes the call with the last result that was reported.
+	 * @param res - result of attempt or null if the attempt was never started
+	 */
+	private static void finishHedgeAttempt(int index, JSONObject res, CompletableFuture<JSONObject> result, AtomicInteger pending,
+			AtomicInteger winner, AtomicReference<JSONObject> lastResult){
+		if (res != null){
+			lastResult.set(res);		//NOTE: set before decrement so the last one always sees a result
+		}
+		boolean isLast = pending.decrementAndGet() == 0;
+		if (res != null && httpSuccess(res) && winner.compareAndSet(-1, index)){
+			result.complete(res);
+		}else if (isLast){
+			JSONObject last = lastResult.get();
+			if (last != null && winner.compareAndSet(-1, index)){
+				result.complete(last);
+			}
+		}
+	}
+	
+	//--------------------------GET coalescing--------------------------------
+	
+	private static volatile RequestCoalescer<JSONObject> getCoalescer = null;
+	private static volatile BiFunction<String, Map<String, String>, String> getCoalescingKeyFunction = Connectors::getDefaultCoalescingKey;
+	
+	/**
+	 * Enable single-flight mode for {@code httpGET(...)}: concurrent calls with identical key share one in-flight request and
+	 * every waiting caller receives a deep copy of the result. Useful to collapse bursts of identical calls (e.g. weather or feed URLs)
+	 * on cold caches. Calls are only shared while they are in flight, results are not cached.
+	 * @param maxInFlight - max. number of different requests tracked at the same time, more calls are executed without coalescing
+	 * @param keyFunction - function that builds the key from full URL and headers (may be null), returns null to skip coalescing for a call.
+	 * Use null for default key (URL + sorted headers), see {@link #getDefaultCoalescingKey(String, Map)}.
+	 */
+	public static void enableGetCoalescing(int maxInFlight, BiFunction<String, Map<String, String>, String> keyFunction){
+		getCoalescingKeyFunction = (keyFunction != null)? keyFunction : Connectors::getDefaultCoalescingKey;
+		getCoalescer = new RequestCoalescer<>(maxInFlight, JSON::deepCopy);
+	}
+	/**
+	 * Disable single-flight mode for {@code httpGET(...)} (default).
+	 */
+	public static void disableGetCoalescing(){
+		getCoalescer = null;
+	}
+	/**
+	 * Default key for GET coalescing: full URL plus all headers sorted by name (case-insensitive).
+	 * @param url - full URL including parameters
+	 * @param headers - request headers or null
+	 */
+	public static String getDefaultCoalescingKey(String url, Map<String, String> headers){
+		if (headers == null || headers.isEmpty()){
+			return url;
+		}
+		StringBuilder sb = new StringBuilder(url);
+		Map<String, String> sortedHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		sortedHeaders.putAll(headers);
+		sortedHeaders.forEach((k, v) -> {
+			sb.append("\n").append(k.toLowerCase()).append(": ").append(v);
+		});
+		return sb.toString();
+	}
+	/**
+	 * Get counters of GET coalescing, see {@link RequestCoalescer#getStatistics()}.
+	 * @return JSONObject with statistics and field "enabled"
+	 */
+	public static JSONObject getCoalescingStatistics(){
+		RequestCoalescer<JSONObject> coalescer = getCoalescer;
+		JSONObject stats = (coalescer != null)? coalescer.getStatistics() : new JSONObject();
+		JSON.put(stats, "enabled", coalescer != null);
+		return stats;
+	}
 	
 	//--------------------------POST--------------------------------
 	
@@ -481,88 +766,13 @@ public class Connectors {
 	 * @return JSONObject with response
 	 */
 	public static JSONObject httpPOST(String targetURL, String data, Map<String, String> headers, int connectTimeout){
-		URL url;
-		HttpURLConnection connection = null;
-		int responseCode = -1;
-		String success_str = HTTP_REST_SUCCESS;
-		try {
-			
-			//Create connection
-			url = new URL(targetURL);
-			connection = (HttpURLConnection)url.openConnection();
-			connection.setRequestMethod("POST");
-			connection.setConnectTimeout(connectTimeout);
-			connection.setReadTimeout(READ_TIMEOUT);
-			//System.out.println("---headers---");
-			if (headers == null){
-				//headers
-				headers = new HashMap<String, String>();
-				headers.put("Content-Type", "application/json");
-				headers.put("Content-Length", Integer.toString(data.getBytes().length));
-			}
-			for (Map.Entry<String, String> entry : headers.entrySet()){
-				connection.setRequestProperty(entry.getKey(), entry.getValue());
-				//System.out.println(entry.getKey() +": "+ entry.getValue());
-			}			
-			connection.setUseCaches(false);
-			connection.setDoInput(true);
-			connection.setDoOutput(true);
-			
-			//Send request
-			DataOutputStream wr = new DataOutputStream(connection.getOutputStream());
-			wr.write(data.getBytes(StandardCharsets.UTF_8));
-			//wr.writeBytes(data);
-			wr.flush();
-			wr.close();
-			
-			responseCode = connection.getResponseCode();
-			//System.out.println("POST Response Code : " + responseCode);		//debug
-
-			//Get Response
-			InputStream is;
-			boolean success = false;
-			if (responseCode >= 200 && responseCode < 300){		//(responseCode == HttpURLConnection.HTTP_OK){
-				success = true;
-				is = connection.getInputStream();
-			}else{
-				is = connection.getErrorStream();
-			}
-			/*
-			BufferedReader rd = new BufferedReader(new InputStreamReader(is));
-			String line;
-			StringBuffer response = new StringBuffer(); 
-			while((line = rd.readLine()) != null) {
-				response.append(line);
-				//response.append('\r');	//line break messes it all up
-			}
-			rd.close();
-			String res = response.toString();
-			*/
-			String res = getStreamContentAsString(connection, is);
-			
-			if (success){
-				JSONObject result = build(res, success_str);
-				return result;
-			}else{
-				JSONObject json = new JSONObject();
-				JSON.add(json, success_str, false);
-				JSON.add(json, "code", responseCode);
-				JSON.add(json, "error", res);
-				return json;
-			}
-
-	    }catch (Exception e) {
-	    	JSONObject json = new JSONObject();
-			JSON.add(json, success_str, false);
-			JSON.add(json, "code", responseCode);
-			JSON.add(json, "error", e.toString());
-			return json;
-
-	    }finally {
-	    	if(connection != null) {
-	    		connection.disconnect(); 
-	    	}
-	    }
+		HttpRequestBase request;
+		try{
+			request = createRequest(Method.post, targetURL, data, headers);
+		}catch (Exception e){
+			return buildError(-1, e.toString());
+		}
+		return executeRest(request, connectTimeout, true);
 	}
 	
 	//----------------------PUT-------------------------
@@ -575,72 +785,13 @@ public class Connectors {
 	 * @return JSONObject with response
 	 */
 	public static JSONObject httpPUT(String targetURL, String data, Map<String, String> headers) {
-		URL url;
-		HttpURLConnection connection = null;
-		int responseCode = -1;
-		String success_str = HTTP_REST_SUCCESS;
-		try {
-			
-			//Create connection
-			url = new URL(targetURL);
-			connection = (HttpURLConnection)url.openConnection();
-			connection.setRequestMethod("PUT");
-			connection.setConnectTimeout(CONNECT_TIMEOUT);
-			connection.setReadTimeout(READ_TIMEOUT);
-			//System.out.println("---headers---");
-			for (Map.Entry<String, String> entry : headers.entrySet()){
-				connection.setRequestProperty(entry.getKey(), entry.getValue());
-				//System.out.println(entry.getKey() +": "+ entry.getValue());
-			}			
-			connection.setUseCaches(false);
-			connection.setDoInput(true);
-			connection.setDoOutput(true);
-			
-			//Send request
-			DataOutputStream wr = new DataOutputStream(connection.getOutputStream());
-			wr.write(data.getBytes(StandardCharsets.UTF_8));
-			//wr.writeBytes(data);
-			wr.flush();
-			wr.close();
-			
-			responseCode = connection.getResponseCode();
-			//System.out.println("POST Response Code : " + responseCode);		//debug
-
-			//Get Response
-			InputStream is;
-			boolean success = false;
-			if (responseCode >= 200 && responseCode < 300){		//(responseCode == HttpURLConnection.HTTP_OK){
-				success = true;
-				is = connection.getInputStream();
-			}else{
-				is = connection.getErrorStream();
-			}
-			String res = getStreamContentAsString(connection, is);
-			
-			if (success){
-				JSONObject result = build(res, success_str);
-				return result;
-				
-			}else{
-				JSONObject json = new JSONObject();
-				JSON.add(json, success_str, false);
-				JSON.add(json, "code", responseCode);
-				JSON.add(json, "error", res);
-				return json;
-			}
-
-	    }catch (Exception e) {
-	    	JSONObject json = new JSONObject();
-			JSON.add(json, success_str, false);
-			JSON.add(json, "code", responseCode);
-			JSON.add(json, "error", e.toString());
-			return json;
-
-	    }finally {
-	    	if(connection != null) {
-	    		connection.disconnect(); 
-	    	}
-	    }
+		HttpRequestBase request;
+		try{
+			request = createRequest(Method.put, targetURL, data, headers);
+		}catch (Exception e){
+			return buildError(-1, e.toString());
+		}
+		return executeRest(request, CONNECT_TIMEOUT, true);
 	}
 	
 	//-------------DELETE--------------
@@ -660,51 +811,422 @@ public class Connectors {
 	 * @return
 	 */
 	public static JSONObject httpDELETE(String url, Map<String, String> headers) {
-		int responseCode = -1;
-		String success_str = HTTP_REST_SUCCESS;
+		HttpRequestBase request;
+		try{
+			request = createRequest(Method.delete, url, null, headers);
+		}catch (Exception e){
+			return buildError(-1, e.toString());
+		}
+		return executeRest(request, CONNECT_TIMEOUT, false);
+	}
+	/**
+	 * Make HTTP DELETE request with body (e.g. to close an Elasticsearch scroll) and get JSON response. Use {@code httpSuccess(...)} for status.
+	 * @param url - URL address to call
+	 * @param data - request body (or null)
+	 * @param headers - Map with request properties (keys) and values, e.g. 'Content-Type'
+	 * @return JSONObject with response
+	 */
+	public static JSONObject httpDELETE(String url, String data, Map<String, String> headers) {
+		HttpRequestBase request;
 		try{
-			URL obj = new URL(url);
-			HttpURLConnection con = (HttpURLConnection) obj.openConnection();
+			request = createRequest(Method.delete, url, data, headers);
+		}catch (Exception e){
+			return buildError(-1, e.toString());
+		}
+		return executeRest(request, CONNECT_TIMEOUT, false);
+	}
+	/**
+	 * DELETE request that can have a body (Apache {@link HttpDelete} does not allow it).
+	 */
+	private static class HttpDeleteWithBody extends HttpEntityEnclosingRequestBase {
+		HttpDeleteWithBody(String url){
+			setURI(URI.create(url));
+		}
+		@Override
+		public String getMethod(){
+			return HttpDelete.METHOD_NAME;
+		}
+	}
 	
-			con.setRequestMethod("DELETE");
-			con.setRequestProperty("User-Agent", USER_AGENT);
-			con.setConnectTimeout(CONNECT_TIMEOUT);
-			con.setReadTimeout(READ_TIMEOUT);
-			
-			if (headers != null){
-				for (Map.Entry<String, String> entry : headers.entrySet()){
-					con.setRequestProperty(entry.getKey(), entry.getValue());
-					//System.out.println(entry.getKey() +": "+ entry.getValue());
+	//-------------- BATCH ------------------
+	
+	/**
+	 * HTTP request for batch execution, see {@link Connectors#executeAll(List, int, long)}.
+	 */
+	public static class Request {
+		public Method method;
+		public String url;
+		public String data;
+		public Map<String, String> headers;
+		public int connectTimeout = CONNECT_TIMEOUT;
+		
+		/**
+		 * Create request.
+		 * @param method - HTTP method
+		 * @param url - full URL
+		 * @param data - body for POST and PUT (or null)
+		 * @param headers - request headers (or null)
+		 */
+		public Request(Method method, String url, String data, Map<String, String> headers){
+			this.method = method;
+			this.url = url;
+			this.data = data;
+			this.headers = headers;
+		}
+		/**
+		 * Create GET request.
+		 */
+		public static Request get(String url, Map<String, String> headers){
+			return new Request(Method.get, url, null, headers);
+		}
+		/**
+		 * Create POST request.
+		 */
+		public static Request post(String url, String data, Map<String, String> headers){
+			return new Request(Method.post, url, data, headers);
+		}
+	}
+	
+	/**
+	 * Execute many requests in parallel and wait for all of them (or the deadline). Calls run on a shared worker pool,
+	 * at most 'maxConcurrency' at the same time and at most {@link #batchMaxConcurrencyPerHost} per host, so a slow host can't
+	 * block the whole batch. Requests that did not finish before the deadline are cancelled and get code {@link #CODE_DEADLINE_EXCEEDED}.
+	 * If all {@link HttpClientPool#maxWorkerThreads} are busy (e.g. with other batches) requests wait for a free thread until the deadline.
+	 * @param requests - list of {@link Request}
+	 * @param maxConcurrency - max. number of parallel calls of this batch (0 or less for no limit except the per-host limit and the number of worker threads)
+	 * @param deadlineMs - max. time for the whole batch (ms)
+	 * @return results in the same order as the requests, same format as {@link #httpGET(String)}, {@link #httpPOST(String, String, Map)} etc.
+	 * (check each with {@code httpSuccess(...)})
+	 */
+	public static List<JSONObject> executeAll(List<Request> requests, int maxConcurrency, long deadlineMs){
+		int n = requests.size();
+		int maxParallel = Math.max(1, (maxConcurrency <= 0)? HttpClientPool.maxWorkerThreads : Math.min(maxConcurrency, HttpClientPool.maxWorkerThreads));
+		long deadline = System.currentTimeMillis() + deadlineMs;
+		AtomicReferenceArray<JSONObject> results = new AtomicReferenceArray<>(n);
+		HttpRequestBase[] running = new HttpRequestBase[n];
+		String[] hosts = new String[n];
+		LinkedList<Integer> pending = new LinkedList<>();
+		for (int i = 0; i < n; i++){
+			Request r = requests.get(i);
+			try{
+				running[i] = createRequest(r.method, r.url, r.data, r.headers);
+				hosts[i] = CircuitBreaker.getHostKey(running[i].getURI());
+				pending.add(i);
+			}catch (Exception e){
+				results.set(i, buildError(-1, e.toString()));
+			}
+		}
+		Object lock = new Object();
+		int[] active = new int[1];
+		Map<String, Integer> activePerHost = new HashMap<>();
+		try{
+			while (true){
+				int index;
+				long wait;
+				synchronized (lock){
+					if (pending.isEmpty() && active[0] == 0){
+						break;
+					}
+					wait = deadline - System.currentTimeMillis();
+					if (wait <= 0){
+						break;
+					}
+					//find next request with free slot for its host
+					Integer next = null;
+					if (active[0] < maxParallel){
+						for (Iterator<Integer> it = pending.iterator(); it.hasNext(); ){
+							Integer i = it.next();
+							if (activePerHost.getOrDefault(hosts[i], 0) < batchMaxConcurrencyPerHost){
+								it.remove();
+								next = i;
+								break;
+							}
+						}
+					}
+					if (next == null){
+						lock.wait(wait);
+						continue;
+					}
+					index = next;
+					active[0]++;
+					activePerHost.merge(hosts[index], 1, Integer::sum);
+				}
+				int connectTimeout = (int) Math.max(1, Math.min(requests.get(index).connectTimeout, wait));
+				Runnable finish = () -> {
+					synchronized (lock){
+						active[0]--;
+						activePerHost.merge(hosts[index], -1, Integer::sum);
+						lock.notifyAll();
+					}
+				};
+				try{
+					HttpClientPool.getWorkerExecutor().execute(() -> {
+						JSONObject res;
+						try{
+							res = executeRest(running[index], connectTimeout, hasErrorContent(requests.get(index).method));
+						}catch (Exception e){
+							res = buildError(-1, e.toString());
+						}
+						results.compareAndSet(index, null, res);
+						finish.run();
+					});
+				}catch (RejectedExecutionException e){
+					//all worker threads are busy (e.g. other batches or hedges) - put request back and try again shortly
+					synchronized (lock){
+						active[0]--;
+						activePerHost.merge(hosts[index], -1, Integer::sum);
+						pending.addFirst(index);
+						long retryWait = Math.min(WORKER_RETRY_WAIT_MS, deadline - System.currentTimeMillis());
+						if (retryWait > 0){
+							lock.wait(retryWait);
+						}
+					}
 				}
 			}
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		//cancel stragglers
+		for (int i = 0; i < n; i++){
+			if (results.compareAndSet(i, null, buildError(CODE_DEADLINE_EXCEEDED, "deadline exceeded"))){
+				if (running[i] != null){
+					running[i].abort();
+				}
+			}
+		}
+		List<JSONObject> list = new ArrayList<>(n);
+		for (int i = 0; i < n; i++){
+			list.add(results.get(i));
+		}
+		return list;
+	}
 	
-			responseCode = con.getResponseCode();
-			//System.out.println("GET Response Code : " + responseCode);		//debug
+	//-------------- ASYNC ------------------
 	
-			//success?
-			if (responseCode >= 200 && responseCode < 300){		//(responseCode == HttpURLConnection.HTTP_OK){
-				String res = getStreamContentAsString(con, con.getInputStream());
-				JSONObject result = build(res, success_str);
-				return result;
-		
-			}else{
-				//result
-				//System.out.println("GET request did not work");				//debug
-				JSONObject json = new JSONObject();
-				JSON.add(json, success_str, false);
-				JSON.add(json, "code", responseCode);
-				return json;
-			}
-			
+	/**
+	 * Shared JDK {@link HttpClient} for non-blocking calls, created on first use.
+	 * Uses HTTP/2 if the server supports it (multiple requests share one connection) and falls back to HTTP/1.1 otherwise.
+	 */
+	private static class AsyncClientHolder {
+		static final HttpClient CLIENT = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT))
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.build();
+	}
+	//headers that are set by the JDK client and can't be set manually
+	private static final Set<String> ASYNC_RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+			"connection", "content-length", "date", "expect", "from", "host", "upgrade", "via", "warning", "transfer-encoding"
+	));
+	
+	/**
+	 * Non-blocking version of {@link #httpGET(String, String[], Map)}. The result has the same format incl. {@code HTTP_REST_SUCCESS}
+	 * so you can check it with {@code httpSuccess(...)}.
+	 * @param url - URL address to call including all parameters
+	 * @param headers - Map with request properties (keys) and values or null. Sets only 'User-Agent' header by default.
+	 * @return future that completes with JSONObject response (never exceptionally)
+	 */
+	public static CompletableFuture<JSONObject> httpGETAsync(String url, Map<String, String> headers){
+		return restAsync("GET", url, null, headers, false);
+	}
+	/**
+	 * Non-blocking version of {@link #httpPOST(String, String, Map)}. The result has the same format incl. {@code HTTP_REST_SUCCESS}.
+	 * @param url - URL of service
+	 * @param data - data in chosen content-type, e.g. url parameter style or JSON string
+	 * @param headers - Map with request properties (keys) and values. Set by default if null: 'Content-Type' = 'application/json'.
+	 * @return future that completes with JSONObject response (never exceptionally)
+	 */
+	public static CompletableFuture<JSONObject> httpPOSTAsync(String url, String data, Map<String, String> headers){
+		if (headers == null){
+			headers = new HashMap<String, String>();
+			headers.put("Content-Type", "application/json");
+		}
+		return restAsync("POST", url, data, headers, true);
+	}
+	/**
+	 * Non-blocking version of {@link #httpPUT(String, String, Map)}. The result has the same format incl. {@code HTTP_REST_SUCCESS}.
+	 * @param url - URL of service
+	 * @param data - data in chosen content-type, e.g. url parameter style or JSON string
+	 * @param headers - Map with request properties (keys) and values or null
+	 * @return future that completes with JSONObject response (never exceptionally)
+	 */
+	public static CompletableFuture<JSONObject> httpPUTAsync(String url, String data, Map<String, String> headers){
+		return restAsync("PUT", url, data, headers, true);
+	}
+	/**
+	 * Non-blocking version of {@link #httpDELETE(String, Map)}. The result has the same format incl. {@code HTTP_REST_SUCCESS}.
+	 * @param url - URL address to call
+	 * @param headers - Map with request properties (keys) and values or null
+	 * @return future that completes with JSONObject response (never exceptionally)
+	 */
+	public static CompletableFuture<JSONObject> httpDELETEAsync(String url, Map<String, String> headers){
+		return restAsync("DELETE", url, null, headers, false);
+	}
+	/**
+	 * Non-blocking GET that returns the raw {@link HttpClientResult} (comparable to {@link #apacheHttpGET(String, Map)}).
+	 * On error the result has 'content' null and the error message as 'statusLine'.
+	 * @param url - URL to call
+	 * @param headers - request headers (or null), e.g. "Accept", "User-Agent", etc.
+	 * @return future that completes with {@link HttpClientResult} (never exceptionally)
+	 */
+	public static CompletableFuture<HttpClientResult> httpGETAsyncResult(String url, Map<String, String> headers){
+		HttpRequest request;
+		try{
+			request = buildAsyncRequest("GET", url, null, headers);
+		}catch (Exception e){
+			return CompletableFuture.completedFuture(new HttpClientResult(null, 0, e.getMessage()));
+		}
+		return sendAsync(request)
+			.thenApply(response -> {
+				Charset charset = getAsyncResponseCharset(response);
+				Map<String, String> responseHeaders = new HashMap<>();
+				response.headers().map().forEach((key, values) -> {
+					if (!values.isEmpty()) responseHeaders.put(key, values.get(0));
+				});
+				String statusLine = ((response.version() == HttpClient.Version.HTTP_2)? "HTTP/2 " : "HTTP/1.1 ") + response.statusCode();
+				try{
+					String content = IOUtils.toString(decodeAsyncResponseBody(response), charset);
+					return new HttpClientResult(content, response.statusCode(), statusLine, responseHeaders, charset);
+				}catch (Exception e){
+					return new HttpClientResult(null, response.statusCode(), e.getMessage(), responseHeaders, charset);
+				}
+			})
+			.exceptionally(e -> {
+				Throwable error = unwrapAsyncError(e);
+				return new HttpClientResult(null, getErrorCode(error, 0), error.getMessage());
+			});
+	}
+	
+	private static CompletableFuture<JSONObject> restAsync(String method, String url, String data, 
+			Map<String, String> headers, boolean addErrorContent){
+		HttpRequest request;
+		try{
+			request = buildAsyncRequest(method, url, data, headers);
 		}catch (Exception e){
-			//result
-			//System.out.println("GET request did not work");					//debug
-			JSONObject json = new JSONObject();
-			JSON.add(json, success_str, false);
-			JSON.add(json, "error", e.toString());
-			JSON.add(json, "code", responseCode);
-			return json;
+			return CompletableFuture.completedFuture(buildError(-1, e.toString()));
+		}
+		return sendAsync(request)
+			.thenApply(response -> {
+				int responseCode = response.statusCode();
+				try (InputStream is = decodeAsyncResponseBody(response)){
+					Charset charset = getAsyncResponseCharset(response);
+					if (responseCode >= 200 && responseCode < 300){
+						return build(is, charset, HTTP_REST_SUCCESS);
+					}else{
+						JSONObject json = new JSONObject();
+						JSON.add(json, HTTP_REST_SUCCESS, false);
+						JSON.add(json, "code", responseCode);
+						if (addErrorContent){
+							JSON.add(json, "error", IOUtils.toString(is, charset));
+						}
+						return json;
+					}
+				}catch (Exception e){
+					return buildError(responseCode, e.toString());
+				}
+			})
+			.exceptionally(e -> {
+				Throwable error = unwrapAsyncError(e);
+				return buildError(getErrorCode(error, -1), error.toString());
+			});
+	}
+	
+	/**
+	 * Send request with shared async client and track result with {@link CircuitBreaker} of the target host.
+	 */
+	private static CompletableFuture<HttpResponse<byte[]>> sendAsync(HttpRequest request){
+		String host = CircuitBreaker.getHostKey(request.uri());
+		CircuitBreaker breaker = CircuitBreaker.forHost(host);
+		if (!breaker.tryAcquire()){
+			return CompletableFuture.failedFuture(new CircuitBreaker.OpenException(host));
+		}
+		long tic = System.currentTimeMillis();
+		return AsyncClientHolder.CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+			.whenComplete((response, error) -> {
+				breaker.onResult(error != null || response.statusCode() >= 500, System.currentTimeMillis() - tic);
+			});
+	}
+	
+	private static HttpRequest buildAsyncRequest(String method, String url, String data, Map<String, String> headers) throws IOException {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+				.timeout(Duration.ofMillis(READ_TIMEOUT))
+				.header(HEADER_USER_AGENT, USER_AGENT);
+		boolean hasContentType = false;
+		boolean hasContentEncoding = false;
+		boolean hasAcceptEncoding = false;
+		if (headers != null){
+			for (Map.Entry<String, String> entry : headers.entrySet()){
+				String key = entry.getKey();
+				if (key == null || ASYNC_RESTRICTED_HEADERS.contains(key.toLowerCase())){
+					continue;
+				}
+				if (key.equalsIgnoreCase(HEADER_CONTENT_TYPE)){
+					hasContentType = true;
+				}else if (key.equalsIgnoreCase(HEADER_CONTENT_ENCODING)){
+					hasContentEncoding = true;
+				}else if (key.equalsIgnoreCase(HEADER_ACCEPT_ENCODING)){
+					hasAcceptEncoding = true;
+				}
+				builder.setHeader(key, entry.getValue());
+			}
+		}
+		String host = URI.create(url).getHost();
+		if (!hasAcceptEncoding){
+			String acceptEncoding = HttpCompressionPolicy.getAcceptEncoding(host);
+			if (acceptEncoding != null){
+				builder.setHeader(HEADER_ACCEPT_ENCODING, acceptEncoding);
+			}
+		}
+		if (data != null){
+			if (!hasContentType){
+				builder.setHeader(HEADER_CONTENT_TYPE, "application/x-www-form-urlencoded");
+			}
+			byte[] body = data.getBytes(StandardCharsets.UTF_8);
+			if (!hasContentEncoding && HttpCompressionPolicy.compressRequestBody(host, body.length)){
+				body = HttpCompressionPolicy.gzip(body);
+				builder.setHeader(HEADER_CONTENT_ENCODING, "gzip");
+			}
+			builder.method(method, HttpRequest.BodyPublishers.ofByteArray(body));
+		}else{
+			builder.method(method, HttpRequest.BodyPublishers.noBody());
+		}
+		return builder.build();
+	}
+	
+	/**
+	 * The JDK client does not decode compressed content so we do it here (as stream) if required.
+	 */
+	private static InputStream decodeAsyncResponseBody(HttpResponse<byte[]> response) throws IOException {
+		byte[] body = response.body();
+		if (body == null || body.length == 0){
+			return InputStream.nullInputStream();
+		}
+		String encoding = response.headers().firstValue(HEADER_CONTENT_ENCODING).orElse("").toLowerCase();
+		if (encoding.contains("gzip")){
+			return new GZIPInputStream(new ByteArrayInputStream(body));
+		}else if (encoding.contains("deflate")){
+			return new InflaterInputStream(new ByteArrayInputStream(body));
+		}else{
+			return new ByteArrayInputStream(body);
+		}
+	}
+	private static Charset getAsyncResponseCharset(HttpResponse<?> response){
+		String contentType = response.headers().firstValue(HEADER_CONTENT_TYPE).orElse(null);
+		if (contentType != null){
+			try{
+				Charset charset = ContentType.parse(contentType).getCharset();
+				if (charset != null){
+					return charset;
+				}
+			}catch (Exception e){}
+		}
+		return StandardCharsets.UTF_8;
+	}
+	private static Throwable unwrapAsyncError(Throwable e){
+		if (e instanceof CompletionException && e.getCause() != null){
+			return e.getCause();
 		}
+		return e;
 	}
 	
 	//-------------- COMMON ------------------
@@ -759,62 +1281,197 @@ public class Connectors {
 	}
 	
 	/**
-	 * Is response GZIP compressed?
+	 * Get statistics of the shared HTTP connection pool (leased, available and pending connections in total and per route).
+	 * See {@link HttpClientPool#getStatistics()}.
 	 */
-	private static boolean isGzipResponse(HttpURLConnection con){
-	    String encodingHeader = con.getHeaderField("Content-Encoding");
-	    return (encodingHeader != null && encodingHeader.toLowerCase().contains("gzip"));
+	public static JSONObject getHttpPoolStatistics(){
+		return HttpClientPool.getStatistics();
 	}
 	
 	/**
-	 * Get content of stream as string.
+	 * Execute request with shared client of {@link HttpClientPool} and build the REST result with {@code HTTP_REST_SUCCESS} tag.
+	 * @param request - prepared request
+	 * @param connectTimeout - max. time to wait for connection (ms)
+	 * @param addErrorContent - add response body as "error" field if status is not 2xx
 	 */
-	private static String getStreamContentAsString(HttpURLConnection con, InputStream is) throws IOException {
-		if (isGzipResponse(con)){
-			InputStreamReader isr = new InputStreamReader(new GZIPInputStream(is), StandardCharsets.UTF_8);
-			return IOUtils.toString(isr);
-		}else{
-			InputStreamReader isr = new InputStreamReader(is, StandardCharsets.UTF_8);
-			return IOUtils.toString(isr);
+	private static JSONObject executeRest(HttpRequestBase request, int connectTimeout, boolean addErrorContent){
+		request.setConfig(HttpClientPool.getRequestConfigBuilder()
+				.setConnectTimeout(connectTimeout)
+				.setSocketTimeout(READ_TIMEOUT)
+				.build());
+		int responseCode = -1;
+		try (CloseableHttpResponse response = HttpClientPool.execute(request)){
+			responseCode = response.getStatusLine().getStatusCode();
+			HttpEntity entity = response.getEntity();
+			//success?
+			if (responseCode >= 200 && responseCode < 300){
+				if (entity == null){
+					return build(InputStream.nullInputStream(), StandardCharsets.UTF_8, HTTP_REST_SUCCESS);
+				}
+				try (InputStream is = entity.getContent()){
+					return build(is, getEntityCharset(entity), HTTP_REST_SUCCESS);
+				}
+			}else{
+				JSONObject json = new JSONObject();
+				JSON.add(json, HTTP_REST_SUCCESS, false);
+				JSON.add(json, "code", responseCode);
+				if (addErrorContent){
+					JSON.add(json, "error", getEntityContentAsString(entity));
+				}else{
+					EntityUtils.consume(entity);
+				}
+				return json;
+			}
+		}catch (Exception e){
+			return buildError(getErrorCode(e, responseCode), e.toString());
 		}
 	}
 	
 	/**
-	 * Build result depending on type of reply (JSON string, JSON array, simple string).
-	 * Adds the "success" tag as well.
-	 * @param res - result received from HTTP connection as string
-	 * @param successTag - field to add indicating the success
+	 * Get result code for exception, e.g. {@link #CODE_CIRCUIT_OPEN} if call was rejected by circuit breaker.
+	 */
+	private static int getErrorCode(Throwable e, int defaultCode){
+		return (e instanceof CircuitBreaker.OpenException)? CODE_CIRCUIT_OPEN : defaultCode;
+	}
+	
+	/**
+	 * Create request with headers and body (POST, PUT) for given method.
+	 * @throws IllegalArgumentException if URL is invalid
+	 */
+	private static HttpRequestBase createRequest(Method method, String url, String data, Map<String, String> headers){
+		HttpRequestBase request;
+		switch (method){
+			case post:
+				request = new HttpPost(url);
+				if (headers == null){
+					headers = new HashMap<String, String>();
+					headers.put("Content-Type", "application/json");
+				}
+				break;
+			case put:
+				request = new HttpPut(url);
+				break;
+			case delete:
+				request = (data != null)? new HttpDeleteWithBody(url) : new HttpDelete(url);
+				break;
+			case head:
+				request = new HttpHead(url);
+				break;
+			default:
+				request = new HttpGet(url);
+		}
+		setRequestHeaders(request, headers);
+		if (request instanceof HttpEntityEnclosingRequestBase){
+			setRequestBody((HttpEntityEnclosingRequestBase) request, data);
+		}
+		return request;
+	}
+	/**
+	 * Does the REST result of this method include the response body as "error" on failure?
+	 */
+	private static boolean hasErrorContent(Method method){
+		return method == Method.post || method == Method.put;
+	}
+	
+	/**
+	 * Set request headers but skip the ones that are managed by the client (e.g. 'Content-Length').
+	 */
+	private static void setRequestHeaders(HttpRequestBase request, Map<String, String> headers){
+		if (headers != null){
+			for (Map.Entry<String, String> entry : headers.entrySet()){
+				String key = entry.getKey();
+				if (key == null || key.equalsIgnoreCase(HTTP.CONTENT_LEN) || key.equalsIgnoreCase(HTTP.TRANSFER_ENCODING)){
+					continue;
+				}
+				request.setHeader(key, entry.getValue());
+			}
+		}
+	}
+	/**
+	 * Set UTF-8 request body. Defaults to 'application/x-www-form-urlencoded' if no content-type header was given.
+	 * Compresses the body if {@link HttpCompressionPolicy} says so and no 'Content-Encoding' was set manually.
 	 */
-	private static JSONObject build(String res, String successTag){
-		//System.out.println(res);						//debug
-		if (Is.notNullOrEmpty(res)){
-			res = (res.charAt(0) == '\uFEFF')? res.substring(1) : res;
-			res = res.replaceAll("^(\\r+|\\n+|\\t+)", "").trim(); 		//NOTE: this might have consequences for text formatting
+	private static void setRequestBody(HttpEntityEnclosingRequestBase request, String data){
+		if (!request.containsHeader(HEADER_CONTENT_TYPE)){
+			request.setHeader(HEADER_CONTENT_TYPE, "application/x-www-form-urlencoded");
 		}
-		//debug:
-		/*
-		System.out.println(res.substring(0, 1));
-		for (char c : res.toCharArray()) {
-		    System.out.printf("U+%04x ", (int) c);
-		    break;
+		byte[] body = data.getBytes(StandardCharsets.UTF_8);
+		if (!request.containsHeader(HEADER_CONTENT_ENCODING) 
+				&& HttpCompressionPolicy.compressRequestBody(request.getURI().getHost(), body.length)){
+			try{
+				body = HttpCompressionPolicy.gzip(body);
+				request.setHeader(HEADER_CONTENT_ENCODING, "gzip");
+			}catch (IOException e){
+				Debugger.println("Connectors - failed to compress request body, sending it uncompressed. Error: " + e.getMessage(), 1);
+			}
+		}
+		request.setEntity(new ByteArrayEntity(body));
+	}
+	
+	/**
+	 * Get content of entity as string (charset from entity or UTF-8). Compressed content is already decoded by the client (see {@link HttpClientPool}).
+	 */
+	private static String getEntityContentAsString(HttpEntity entity) throws IOException {
+		if (entity == null){
+			return "";
 		}
-		*/
+		return EntityUtils.toString(entity, StandardCharsets.UTF_8);
+	}
+	/**
+	 * Get charset of entity or UTF-8 as default (also if there is no Content-Type header, NOT ISO-8859-1 like HttpClient's default).
+	 */
+	private static Charset getEntityCharset(HttpEntity entity){
+		ContentType contentType;
+		try{
+			contentType = ContentType.get(entity);
+		}catch (RuntimeException e){
+			contentType = null;		//invalid header or unsupported charset
+		}
+		Charset charset = (contentType != null)? contentType.getCharset() : null;
+		return (charset == null)? StandardCharsets.UTF_8 : charset;
+	}
+	
+	/**
+	 * Build error result with {@code HTTP_REST_SUCCESS} = false.
+	 */
+	private static JSONObject buildError(int code, String error){
+		JSONObject json = new JSONObject();
+		JSON.add(json, HTTP_REST_SUCCESS, false);
+		JSON.add(json, "error", error);
+		JSON.add(json, "code", code);
+		return json;
+	}
+	
+	/**
+	 * Build result depending on type of reply (JSON object, JSON array, simple string) directly from the response stream.
+	 * Skips BOM and leading white-space and only reads the content into a string if it is not JSON.
+	 * Adds the "success" tag as well.
+	 * @param is - (decoded) response stream, will NOT be closed
+	 * @param charset - charset of content
+	 * @param successTag - field to add indicating the success
+	 */
+	private static JSONObject build(InputStream is, Charset charset, String successTag) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(is, charset));
+		skipBomAndWhitespace(reader);
+		reader.mark(2);
+		int c1 = reader.read();
+		int c2 = (c1 == -1)? -1 : reader.read();
+		reader.reset();
 		JSONObject result;
 		try{
-			if (res.startsWith("{")){
+			if (c1 == '{'){
 				//parse JSONObject
-				JSONParser parser = new JSONParser();
-				result = (JSONObject) parser.parse(res);
+				result = (JSONObject) JsonTreeParser.parse(reader);
 				JSON.add(result, successTag, true);
-			}else if (res.startsWith("[{")){
+			}else if (c1 == '[' && c2 == '{'){
 				//parse JSONArray
-				JSONParser parser = new JSONParser();
-				JSONArray arr = (JSONArray) parser.parse(res);
+				JSONArray arr = (JSONArray) JsonTreeParser.parse(reader);
 				result = new JSONObject();
 				JSON.add(result, "JSONARRAY", arr);
 				JSON.add(result, successTag, true);
 			}else{
 				//save String only
+				String res = IOUtils.toString(reader).trim(); 		//NOTE: this might have consequences for text formatting
 				result = new JSONObject();
 				JSON.add(result, "STRING", res);
 				JSON.add(result, successTag, true);
@@ -822,7 +1479,7 @@ public class Connectors {
 			//System.out.println(result.toString());						//debug
 			return result;
 		}catch (ParseException e){
-			System.err.println(DateTime.getLogDate() + " ERROR - Connectors.java / build() - Failed to parse JSON string: " + res);
+			System.err.println(DateTime.getLogDate() + " ERROR - Connectors.java / build() - Failed to parse JSON stream: " + e);
 			result = new JSONObject();
 			JSON.add(result, successTag, false);
 			JSON.add(result, "error", "result could not be parsed");
@@ -830,5 +1487,23 @@ public class Connectors {
 			return result;
 		}
 	}
+	/**
+	 * Skip UTF-8 BOM (first character only) and all leading white-space and control characters (same as {@link String#trim()}).
+	 */
+	private static void skipBomAndWhitespace(BufferedReader reader) throws IOException {
+		boolean first = true;
+		while (true){
+			reader.mark(1);
+			int c = reader.read();
+			if (c == -1){
+				return;
+			}else if ((first && c == '\uFEFF') || c <= ' '){
+				first = false;
+			}else{
+				reader.reset();
+				return;
+			}
+		}
+	}
 
 }
@@ -18,7 +18,6 @@ import java.util.regex.Pattern;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 /**
@@ -251,10 +250,9 @@ public class Converters {
 	 * @return JSONObject
 	 */
 	public static JSONObject str2Json(String s){
-		JSONParser parser = new JSONParser();
 		JSONObject result;
 		try {
-			result = (JSONObject) parser.parse(s);
+			result = (JSONObject) JsonTreeParser.parse(s);
 			return result;
 		} catch (ParseException e) {
 			return null;
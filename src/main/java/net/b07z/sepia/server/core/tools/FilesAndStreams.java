@@ -27,8 +27,6 @@ import java.util.function.Consumer;
 
 import com.fasterxml.jackson.core.exc.StreamReadException;
 import com.fasterxml.jackson.databind.DatabindException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 
 /**
  * Handles file read/write/edit etc.
@@ -413,8 +411,7 @@ public class FilesAndStreams {
 	public static <T> T readYamlFile(String filePath, Class<T> clazz) 
 			throws StreamReadException, DatabindException, IOException {
 		File file = new File(filePath);
-		ObjectMapper om = new ObjectMapper(new YAMLFactory());
-		return om.readValue(file, clazz);
+		return JsonMappers.reader(JsonMappers.Style.yaml, clazz).readValue(file);
 	}
 
 	/**
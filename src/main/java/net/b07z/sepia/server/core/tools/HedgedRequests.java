@@ -0,0 +1,157 @@
+package net.b07z.sepia.server.core.tools;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Settings, latency statistics and load limit for hedged requests (see {@code Connectors.httpGETHedged(...)}).<br>
+ * A hedged request sends a second attempt if the first one did not answer within a delay that is derived from the recorded
+ * latency of the host (e.g. the 95th percentile). The faster attempt wins and the other one is aborted.
+ * Every answered request deposits {@link #depositPerRequest} tokens for its host and every hedge withdraws one from the host it is sent to,
+ * so hedges can add at most this fraction of extra load.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class HedgedRequests {
+
+	//Settings
+	public static double delayPercentile = 0.95;		//hedge after this percentile of recorded latencies
+	public static long defaultDelayMs = 250;			//delay used until enough samples are recorded
+	public static long minDelayMs = 10;
+	public static long maxDelayMs = 3000;
+	public static int minSamples = 20;					//min. samples before percentile is used
+	public static int sampleWindow = 200;				//number of last latencies per host
+	public static double depositPerRequest = 0.05;		//0.05 = max. 5% extra requests due to hedging
+	public static double maxTokens = 5;					//max. burst of hedges
+
+	private static final Map<String, HedgedRequests> hosts = new ConcurrentHashMap<>();
+
+	//latency ring buffer
+	private final long[] latencies;
+	private int index = 0;
+	private int samples = 0;
+	private long[] sortedCache = null;
+
+	//hedge budget
+	private double tokens;
+	private long hedges = 0;
+	private long hedgeWins = 0;
+	private long rejectedHedges = 0;
+
+	private HedgedRequests(){
+		this.latencies = new long[Math.max(1, sampleWindow)];
+		this.tokens = maxTokens;
+	}
+
+	/**
+	 * Get latency statistics and hedge budget of host (created if missing).
+	 * @param host - host key, see {@link CircuitBreaker#getHostKey(java.net.URI)}
+	 */
+	public static HedgedRequests forHost(String host){
+		return hosts.computeIfAbsent(host, h -> new HedgedRequests());
+	}
+	/**
+	 * Record latency (time to response headers) of a successful call. Called by {@link HttpClientPool} for every request.
+	 * @param host - host key
+	 * @param durationMs - latency
+	 */
+	static void recordLatency(String host, long durationMs){
+		forHost(host).record(durationMs);
+	}
+	/**
+	 * Remove all recorded latencies and budgets.
+	 */
+	public static void resetAll(){
+		hosts.clear();
+	}
+
+	/**
+	 * Get latencies and hedge counters of all hosts.
+	 * @return JSONObject with host keys and statistics as value
+	 */
+	public static JSONObject getStatistics(){
+		JSONObject stats = new JSONObject();
+		hosts.forEach((host, h) -> JSON.put(stats, host, h.getHostStatistics()));
+		return stats;
+	}
+
+	//------------------------------------
+
+	private synchronized void record(long durationMs){
+		latencies[index] = durationMs;
+		index = (index + 1) % latencies.length;
+		if (samples < latencies.length) samples++;
+		sortedCache = null;
+		tokens = Math.min(maxTokens, tokens + depositPerRequest);
+	}
+
+	/**
+	 * Get recorded latency percentile or -1 if there are not enough samples.
+	 * @param percentile - value between 0 and 1, e.g. 0.95
+	 */
+	public synchronized long getLatencyPercentile(double percentile){
+		if (samples == 0 || samples < minSamples){
+			return -1;
+		}
+		if (sortedCache == null){
+			sortedCache = Arrays.copyOf(latencies, samples);
+			Arrays.sort(sortedCache);
+		}
+		int i = (int) Math.ceil(percentile * samples) - 1;
+		return sortedCache[Math.min(Math.max(i, 0), samples - 1)];
+	}
+
+	/**
+	 * Get delay after which a hedge should be sent, based on {@link #delayPercentile} (or {@link #defaultDelayMs}).
+	 */
+	public long getHedgeDelayMs(){
+		long p = getLatencyPercentile(delayPercentile);
+		if (p < 0){
+			p = defaultDelayMs;
+		}
+		return Math.min(maxDelayMs, Math.max(minDelayMs, p));
+	}
+
+	/**
+	 * Try to take one token for a hedge.
+	 * @return true if hedge is allowed
+	 */
+	public synchronized boolean tryHedge(){
+		if (tokens >= 1){
+			tokens -= 1;
+			hedges++;
+			return true;
+		}else{
+			rejectedHedges++;
+			return false;
+		}
+	}
+	/**
+	 * Count hedge that answered before the first attempt.
+	 */
+	synchronized void onHedgeWin(){
+		hedgeWins++;
+	}
+
+	/**
+	 * Statistics of this host.
+	 */
+	public synchronized JSONObject getHostStatistics(){
+		JSONObject stats = JSON.make(
+			"samples", samples,
+			"p50", getLatencyPercentile(0.5),
+			"p95", getLatencyPercentile(0.95),
+			"p99", getLatencyPercentile(0.99),
+			"hedgeDelay", getHedgeDelayMs(),
+			"tokens", tokens
+		);
+		JSON.put(stats, "hedges", hedges);
+		JSON.put(stats, "hedgeWins", hedgeWins);
+		JSON.put(stats, "rejectedHedges", rejectedHedges);
+		return stats;
+	}
+}
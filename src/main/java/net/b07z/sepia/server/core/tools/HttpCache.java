@@ -0,0 +1,113 @@
+package net.b07z.sepia.server.core.tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.cache.CacheResponseStatus;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.json.simple.JSONObject;
+
+/**
+ * Optional HTTP cache for GET requests of {@link Connectors} (httpGET, simpleJsonGet, simpleHtmlGet and apacheHttpGET with default client).<br>
+ * The cache follows the HTTP caching rules of the server response ('Cache-Control', 'Expires', 'Vary') and revalidates stale entries
+ * with 'If-None-Match' and 'If-Modified-Since' using stored 'ETag' and 'Last-Modified' headers. Responses with 'stale-while-revalidate'
+ * are served from cache while being refreshed in the background. Entries are kept in memory, response bodies can optionally be stored on disk.<br>
+ * <br>
+ * NOTE: The cache is disabled by default. Settings are applied when the caching client is created, use {@link #enable()} after changes.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class HttpCache {
+
+	public static int maxCacheEntries = 1000;
+	public static long maxObjectSizeBytes = 1024 * 1024;
+	public static int asyncRevalidationWorkers = 2;			//background threads to revalidate stale entries, 0 to disable
+	public static String diskCacheFolder = null;			//if set response bodies are stored in this folder instead of memory
+
+	private static volatile boolean enabled = false;
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong revalidated = new AtomicLong();
+	private static final AtomicLong moduleResponses = new AtomicLong();
+
+	/**
+	 * Enable cache for GET calls of {@link Connectors}. Rebuilds the caching client with current settings.
+	 */
+	public static void enable(){
+		HttpClientPool.resetCachingClient();
+		enabled = true;
+	}
+	/**
+	 * Disable cache and clear all entries.
+	 */
+	public static void disable(){
+		enabled = false;
+		HttpClientPool.resetCachingClient();
+	}
+	/**
+	 * Is the cache active?
+	 */
+	public static boolean isEnabled(){
+		return enabled;
+	}
+
+	/**
+	 * Build cache config from settings.
+	 */
+	static CacheConfig getCacheConfig(){
+		return CacheConfig.custom()
+				.setMaxCacheEntries(maxCacheEntries)
+				.setMaxObjectSize(maxObjectSizeBytes)
+				.setSharedCache(true)			//NOTE: this is a server-side cache for all users, don't store private responses
+				.setAsynchronousWorkersCore(0)
+				.setAsynchronousWorkersMax(asyncRevalidationWorkers)
+				.build();
+	}
+
+	/**
+	 * Count cache result.
+	 */
+	static void record(CacheResponseStatus status){
+		if (status == null){
+			return;
+		}
+		switch (status){
+			case CACHE_HIT:
+				hits.incrementAndGet();
+				break;
+			case CACHE_MISS:
+				misses.incrementAndGet();
+				break;
+			case VALIDATED:
+				revalidated.incrementAndGet();
+				break;
+			case CACHE_MODULE_RESPONSE:
+				moduleResponses.incrementAndGet();
+				break;
+		}
+	}
+
+	/**
+	 * Get cache counters.
+	 * @return JSONObject with "enabled", "hits", "misses", "revalidated" (304 from server) and "module" (responses generated by cache, e.g. 504 'only-if-cached')
+	 */
+	public static JSONObject getStatistics(){
+		return JSON.make(
+			"enabled", enabled,
+			"hits", hits.get(),
+			"misses", misses.get(),
+			"revalidated", revalidated.get(),
+			"module", moduleResponses.get()
+		);
+	}
+	/**
+	 * Reset cache counters.
+	 */
+	public static void resetStatistics(){
+		hits.set(0);
+		misses.set(0);
+		revalidated.set(0);
+		moduleResponses.set(0);
+	}
+}
@@ -0,0 +1,395 @@
+package net.b07z.sepia.server.core.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.cache.CacheResponseStatus;
+import org.apache.http.client.cache.HttpCacheContext;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.cache.CachingHttpClientBuilder;
+import org.apache.http.impl.client.cache.CachingHttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.json.simple.JSONObject;
+
+/**
+ * Process-wide pooled Apache HTTP client that is used by {@link Connectors} for all GET, POST, PUT and DELETE calls.<br>
+ * Connections are kept alive and reused per route (scheme, host, port) which saves a new socket and TLS handshake for most calls.<br>
+ * Compression is handled as defined in {@link HttpCompressionPolicy}, GET requests can be cached via {@link HttpCache}.<br>
+ * <br>
+ * NOTE: Settings are read when the client is created (first use). To change them later call {@link #reset()} after modification.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class HttpClientPool {
+
+	//Pool settings
+	public static int maxTotalConnections = 200;
+	public static int maxConnectionsPerRoute = 20;
+	public static long maxIdleTimeMs = 30000;				//idle connections are closed after this time
+	public static long defaultKeepAliveMs = 30000;			//used if server does not send a 'Keep-Alive' timeout (and as upper limit)
+	public static int validateAfterInactivityMs = 2000;		//check stale connections before reuse after this time
+	public static int maxRetries = 2;						//retries of idempotent requests on stale connections (no response, reset)
+
+	//Default request settings
+	public static int connectTimeout = Connectors.CONNECT_TIMEOUT;
+	public static int socketTimeout = Connectors.READ_TIMEOUT;
+	public static int connectionRequestTimeout = 10000;		//max. wait for a free connection from pool
+	
+	//Worker settings
+	public static int maxWorkerThreads = 64;				//max. threads for background calls (hedged and batch requests)
+
+	private static volatile CloseableHttpClient client;
+	private static volatile CloseableHttpClient cachingClient;
+	private static volatile PoolingHttpClientConnectionManager connectionManager;
+	private static volatile RequestConfig defaultRequestConfig;
+	private static volatile ExecutorService workerExecutor;
+
+	/**
+	 * Get the shared client. Creates it on first call.<br>
+	 * NOTE: Do not close this client, use {@link #close()} on shutdown instead.
+	 */
+	public static CloseableHttpClient getClient(){
+		CloseableHttpClient c = client;
+		if (c == null){
+			synchronized (HttpClientPool.class){
+				if (client == null){
+					setup();
+				}
+				c = client;
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Shared executor for background calls of {@link Connectors} (daemon threads, created on first use).
+	 * If all {@link #maxWorkerThreads} are busy new tasks are rejected with {@link java.util.concurrent.RejectedExecutionException}
+	 * (they never run in the calling thread, so callers can rely on their deadlines).
+	 */
+	static ExecutorService getWorkerExecutor(){
+		ExecutorService e = workerExecutor;
+		if (e == null){
+			synchronized (HttpClientPool.class){
+				if (workerExecutor == null){
+					AtomicInteger n = new AtomicInteger();
+					ThreadPoolExecutor tpe = new ThreadPoolExecutor(0, maxWorkerThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+						Thread t = new Thread(r, "http-worker-" + n.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					});
+					tpe.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+					workerExecutor = tpe;
+				}
+				e = workerExecutor;
+			}
+		}
+		return e;
+	}
+
+	/**
+	 * Get the shared client with {@link HttpCache} layer. Uses the same connection pool as {@link #getClient()}.
+	 */
+	static CloseableHttpClient getCachingClient(){
+		CloseableHttpClient c = cachingClient;
+		if (c == null){
+			synchronized (HttpClientPool.class){
+				if (client == null){
+					setup();
+				}
+				if (cachingClient == null){
+					CachingHttpClientBuilder builder = CachingHttpClients.custom()
+							.setCacheConfig(HttpCache.getCacheConfig());
+					if (Is.notNullOrEmpty(HttpCache.diskCacheFolder)){
+						builder.setCacheDir(new File(HttpCache.diskCacheFolder));		//NOTE: entries are still managed in memory, bodies are files
+					}
+					cachingClient = configureBuilder(builder)
+						.setConnectionManager(connectionManager)
+						.setConnectionManagerShared(true)
+						.build();
+				}
+				c = cachingClient;
+			}
+		}
+		return c;
+	}
+	/**
+	 * Drop caching client (and all cached entries). A new one is created on next use.
+	 */
+	static synchronized void resetCachingClient(){
+		if (cachingClient != null){
+			try{
+				cachingClient.close();		//NOTE: connection manager is shared and stays open
+			}catch (IOException e){
+				Debugger.println("HttpClientPool - failed to close caching client: " + e.getMessage(), 1);
+			}
+			cachingClient = null;
+		}
+	}
+	
+	/**
+	 * Execute request with shared client. GET requests use the {@link HttpCache} if it is enabled.<br>
+	 * Each call is checked and tracked by the {@link CircuitBreaker} of the target host and feeds its {@link RetryBudget} and
+	 * {@link HedgedRequests} latency. Responses that were answered by the cache without reaching the host are not tracked.<br>
+	 * NOTE: The caller has to close the response to release the connection.
+	 * @param request - request to execute
+	 * @return {@link CloseableHttpResponse}
+	 * @throws IOException - {@link CircuitBreaker.OpenException} if the call was rejected by the circuit breaker
+	 */
+	public static CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+		String host = CircuitBreaker.getHostKey(request.getURI());
+		CircuitBreaker breaker = CircuitBreaker.forHost(host);
+		if (!breaker.tryAcquire()){
+			throw new CircuitBreaker.OpenException(host);
+		}
+		long tic = System.currentTimeMillis();
+		try{
+			CloseableHttpResponse response;
+			boolean reachedHost = true;
+			if (HttpCache.isEnabled() && HttpGet.METHOD_NAME.equals(request.getMethod())){
+				HttpCacheContext context = HttpCacheContext.create();
+				response = getCachingClient().execute(request, context);
+				CacheResponseStatus cacheStatus = context.getCacheResponseStatus();
+				HttpCache.record(cacheStatus);
+				reachedHost = cacheStatus == null || cacheStatus == CacheResponseStatus.CACHE_MISS || cacheStatus == CacheResponseStatus.VALIDATED;
+			}else{
+				response = getClient().execute(request);
+			}
+			if (!reachedHost){
+				//answered from cache - says nothing about the host and must not make hedges or retries cheaper
+				breaker.onCancelled();
+				return response;
+			}
+			RetryBudget.forHost(host).onRequest();
+			long duration = System.currentTimeMillis() - tic;
+			boolean failed = response.getStatusLine().getStatusCode() >= 500;
+			breaker.onResult(failed, duration);
+			if (!failed){
+				HedgedRequests.recordLatency(host, duration);
+			}
+			return response;
+		}catch (IOException | RuntimeException e){
+			RetryBudget.forHost(host).onRequest();
+			if (request.isAborted()){
+				//NOTE: aborted requests (e.g. loser of a hedged request) are no host failures
+				breaker.onCancelled();
+			}else{
+				breaker.onResult(true, System.currentTimeMillis() - tic);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Get a {@link RequestConfig.Builder} with the default settings of the pool. Use it to modify e.g. timeouts per request.
+	 */
+	public static RequestConfig.Builder getRequestConfigBuilder(){
+		getClient();
+		return RequestConfig.copy(defaultRequestConfig);
+	}
+
+	/**
+	 * Close the shared client and all its pooled connections. The next call to {@link #getClient()} will create a new one.
+	 */
+	public static synchronized void close(){
+		resetCachingClient();
+		if (client != null){
+			try{
+				client.close();		//closes connection manager and idle connection evictor as well
+			}catch (IOException e){
+				Debugger.println("HttpClientPool - failed to close client: " + e.getMessage(), 1);
+			}
+			client = null;
+			connectionManager = null;
+		}
+	}
+	/**
+	 * Close the shared client and apply modified settings on next use. The worker executor is replaced as well (running tasks finish).
+	 */
+	public static void reset(){
+		close();
+		synchronized (HttpClientPool.class){
+			if (workerExecutor != null){
+				workerExecutor.shutdown();
+				workerExecutor = null;
+			}
+		}
+	}
+
+	/**
+	 * Get statistics of the connection pool, total and per route.
+	 * @return JSONObject with "total" and "routes", each entry containing "leased", "available", "pending" and "max"
+	 */
+	public static JSONObject getStatistics(){
+		PoolingHttpClientConnectionManager cm = connectionManager;
+		JSONObject routes = new JSONObject();
+		if (cm == null){
+			return JSON.make("total", makeStats(null), "routes", routes);
+		}
+		for (HttpRoute route : cm.getRoutes()){
+			JSON.put(routes, route.getTargetHost().toURI(), makeStats(cm.getStats(route)));
+		}
+		return JSON.make("total", makeStats(cm.getTotalStats()), "routes", routes);
+	}
+	private static JSONObject makeStats(PoolStats stats){
+		if (stats == null){
+			return JSON.make("leased", 0, "available", 0, "pending", 0, "max", 0);
+		}
+		return JSON.make(
+			"leased", stats.getLeased(),
+			"available", stats.getAvailable(),
+			"pending", stats.getPending(),
+			"max", stats.getMax()
+		);
+	}
+
+	//------------------------------------
+
+	private static void setup(){
+		Registry<ConnectionSocketFactory> reg = RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory())
+				.register("https", SSLConnectionSocketFactory.getSystemSocketFactory())		//NOTE: respects JVM SSL settings like HttpURLConnection
+				.build();
+		PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(reg);
+		cm.setMaxTotal(maxTotalConnections);
+		cm.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+		cm.setValidateAfterInactivity(validateAfterInactivityMs);
+
+		defaultRequestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setSocketTimeout(socketTimeout)
+				.setConnectionRequestTimeout(connectionRequestTimeout)
+				.build();
+
+		CloseableHttpClient c = configureBuilder(HttpClientBuilder.create())
+				.setConnectionManager(cm)
+				.evictExpiredConnections()
+				.evictIdleConnections(maxIdleTimeMs, TimeUnit.MILLISECONDS)
+				.build();
+
+		connectionManager = cm;
+		client = c;
+	}
+	/**
+	 * Common settings of all clients (except connection manager).
+	 */
+	private static <T extends HttpClientBuilder> T configureBuilder(T builder){
+		ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+			long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			if (serverKeepAlive > 0){
+				return Math.min(serverKeepAlive, defaultKeepAliveMs);
+			}else{
+				return defaultKeepAliveMs;
+			}
+		};
+		builder
+			.useSystemProperties()			//e.g. proxy settings
+			.setDefaultRequestConfig(defaultRequestConfig)
+			.setKeepAliveStrategy(keepAliveStrategy)
+			.setRetryHandler(new IdempotentRetryHandler())
+			.disableCookieManagement()
+			.disableContentCompression()	//NOTE: we handle this via HttpCompressionPolicy
+			.addInterceptorLast(new AcceptEncodingInterceptor())
+			.addInterceptorLast(new ResponseContentEncoding())
+			.setUserAgent(Connectors.USER_AGENT); 		//NOTE: this is primarily to avoid calls to system.java.version in sandbox
+		return builder;
+	}
+
+	/**
+	 * Add 'Accept-Encoding' header as defined by {@link HttpCompressionPolicy} (if not set manually).
+	 */
+	private static class AcceptEncodingInterceptor implements HttpRequestInterceptor {
+		@Override
+		public void process(HttpRequest request, HttpContext context){
+			if (!request.containsHeader(Connectors.HEADER_ACCEPT_ENCODING)){
+				HttpHost target = HttpClientContext.adapt(context).getTargetHost();
+				String acceptEncoding = HttpCompressionPolicy.getAcceptEncoding((target == null)? null : target.getHostName());
+				if (acceptEncoding != null){
+					request.addHeader(Connectors.HEADER_ACCEPT_ENCODING, acceptEncoding);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Retry only requests without body (GET, DELETE, HEAD, ...) since others might not be idempotent, and only if the request
+	 * most likely failed on a stale pooled connection (no response or connection reset). Timeouts, connect, unknown host and SSL errors
+	 * are not retried (same as {@link org.apache.http.impl.client.DefaultHttpRequestRetryHandler}).<br>
+	 * Retries are limited by the {@link RetryBudget} of the host, skipped if its {@link CircuitBreaker} is not closed
+	 * and delayed by exponential backoff with jitter.
+	 */
+	private static class IdempotentRetryHandler implements HttpRequestRetryHandler {
+		@Override
+		public boolean retryRequest(IOException exception, int executionCount, HttpContext context){
+			if (executionCount > maxRetries || !isStaleConnectionError(exception)){
+				return false;
+			}
+			HttpClientContext clientContext = HttpClientContext.adapt(context);
+			HttpRequest request = clientContext.getRequest();
+			if (request instanceof HttpEntityEnclosingRequest){
+				return false;
+			}
+			HttpHost target = clientContext.getTargetHost();
+			String host = (target == null)? CircuitBreaker.getHostKey(null, -1) : CircuitBreaker.getHostKey(target.getHostName(), target.getPort());
+			if (CircuitBreaker.forHost(host).getState() != CircuitBreaker.State.closed || !RetryBudget.forHost(host).tryRetry()){
+				return false;
+			}
+			long backoff = RetryBudget.getBackoffMs(executionCount);
+			if (backoff > 0){
+				try{
+					Thread.sleep(backoff);
+				}catch (InterruptedException e){
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+	/**
+	 * Server closed a (reused) connection without response or reset it. All other I/O errors are not worth a retry.
+	 */
+	static boolean isStaleConnectionError(IOException e){
+		if (e instanceof NoHttpResponseException){
+			return true;
+		}else if (e instanceof SocketException && !(e instanceof ConnectException) && !(e instanceof NoRouteToHostException)){
+			String msg = e.getMessage();
+			if (msg != null){
+				msg = msg.toLowerCase();
+				return msg.contains("connection reset") || msg.contains("broken pipe");
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,84 @@
+package net.b07z.sepia.server.core.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression settings used by all {@link Connectors} HTTP methods.<br>
+ * Responses: 'Accept-Encoding' is advertised on every request (unless set manually) and compressed replies are decoded automatically.<br>
+ * Requests: bodies above a certain size can be sent GZIP compressed with 'Content-Encoding: gzip'. This is disabled by default since
+ * not every server accepts compressed bodies (e.g. Elasticsearch does, a plain Jetty server does not). Use {@link #excludeHost(String)}
+ * to opt-out single hosts that reject it.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class HttpCompressionPolicy {
+
+	public static boolean acceptGzip = true;
+	public static boolean acceptDeflate = false;
+	public static int requestCompressionMinBytes = -1;		//compress request bodies with at least this size (bytes), -1 to disable
+
+	private static final Set<String> excludedHosts = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Don't use compression (request and response) for this host, e.g. because the server rejects compressed request bodies.
+	 * @param host - host name without scheme and port, e.g. "localhost" or "my.server.com"
+	 */
+	public static void excludeHost(String host){
+		excludedHosts.add(host.toLowerCase());
+	}
+	/**
+	 * Remove host from list of excluded hosts (see {@link #excludeHost(String)}).
+	 */
+	public static void includeHost(String host){
+		excludedHosts.remove(host.toLowerCase());
+	}
+	/**
+	 * Is host excluded from compression?
+	 */
+	public static boolean isExcluded(String host){
+		return host != null && !excludedHosts.isEmpty() && excludedHosts.contains(host.toLowerCase());
+	}
+
+	/**
+	 * Get value for 'Accept-Encoding' header or null if compression should not be requested for this host.
+	 * @param host - target host
+	 */
+	public static String getAcceptEncoding(String host){
+		if (isExcluded(host)){
+			return null;
+		}else if (acceptGzip && acceptDeflate){
+			return "gzip, deflate";
+		}else if (acceptGzip){
+			return "gzip";
+		}else if (acceptDeflate){
+			return "deflate";
+		}else{
+			return null;
+		}
+	}
+
+	/**
+	 * Should a request body of given size be compressed for this host?
+	 * @param host - target host
+	 * @param bodyBytes - size of uncompressed body
+	 */
+	public static boolean compressRequestBody(String host, int bodyBytes){
+		return requestCompressionMinBytes >= 0 && bodyBytes >= requestCompressionMinBytes && !isExcluded(host);
+	}
+
+	/**
+	 * GZIP compress data.
+	 */
+	public static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bos)){
+			gzip.write(data);
+		}
+		return bos.toByteArray();
+	}
+}
@@ -1,12 +1,13 @@
 package net.b07z.sepia.server.core.tools;
 
+import java.io.BufferedWriter;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -17,7 +18,6 @@ import java.util.function.Consumer;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 
 import net.b07z.sepia.server.core.java.Comparators;
 
@@ -106,7 +106,7 @@ public final class JSON {
 	}
 	
 	/**
-	 * Parse a string to a JSONObject.
+	 * Parse a string to a JSONObject (see {@link JsonTreeParser} for the parser engine).
 	 * @param response - string response from any source
 	 * @return JSON object of string or null
 	 */
@@ -127,8 +127,7 @@ public final class JSON {
 	 */
 	public static JSONObject parseStringOrFail(String response){
 		try {
-			JSONParser parser = new JSONParser();
-			JSONObject result = (JSONObject) parser.parse(response);
+			JSONObject result = (JSONObject) JsonTreeParser.parse(response);
 			return result;
 		} catch (Exception e) {
 			throw new RuntimeException(DateTime.getLogDate() + " WARNING - JSON.java / parseString() - Failed to parse JSON string: " + response, e);
@@ -140,8 +139,7 @@ public final class JSON {
 	 */
 	public static JSONArray parseStringToArrayOrFail(String response){
 		try {
-			JSONParser parser = new JSONParser();
-			JSONArray result = (JSONArray) parser.parse(response);
+			JSONArray result = (JSONArray) JsonTreeParser.parse(response);
 			return result;
 		} catch (Exception e) {
 			throw new RuntimeException(DateTime.getLogDate() + " WARNING - JSON.java / parseStringToArray() - Failed to parse JSON string: " + response, e);
@@ -320,7 +318,8 @@ public final class JSON {
 	
 	/**
 	 * Get an Object located inside a nested JSONObject by following the 'pathOfKeys' step-by-step.
-	 * Returns null if the path breaks somewhere.
+	 * Returns null if the path breaks somewhere.<br>
+	 * For paths that are used again and again consider a compiled {@link JsonPath}.
 	 */
 	public static Object getObject(JSONObject jObject, String[] pathOfKeys){
 		try{
@@ -521,6 +520,7 @@ public final class JSON {
 	/**
 	 * Set the value of a certain field by following the path given with dots in 'key', e.g.<br>
 	 * level1.level2.key -> { "level1" : { "level2" : { "key" : value } } }.<br>
+	 * The path is compiled once and cached (see {@link JsonPath#compileDotPath(String)}).<br>
 	 * This will add new fields to the JSONObject as required.
 	 * @param obj - JSONObject to add data to
 	 * @param key - path given with dots or just a key
@@ -530,22 +530,7 @@ public final class JSON {
 	@SuppressWarnings("unchecked")
 	public static JSONObject putWithDotPath(JSONObject obj, String key, Object value){
 		if(key.contains(".")){
-			String[] path = key.split("\\.");
-			if (path.length == 2){
-				if (obj.containsKey(path[0])){
-					((JSONObject) obj.get(path[0])).put(path[1], value);
-				}else{
-					obj.put(path[0], make(path[1], value));
-				}
-			}else{
-				if (obj.containsKey(path[0])){
-					putWithPath((JSONObject) obj.get(path[0]), Arrays.copyOfRange(path, 1, path.length), value);
-				}else{
-					JSONObject nextObj = new JSONObject();
-					obj.put(path[0], nextObj);
-					putWithPath(nextObj, Arrays.copyOfRange(path, 1, path.length), value);
-				}
-			}
+			JsonPath.compileDotPath(key).put(obj, value);
 		}else{
 			obj.put(key, value);
 		}
@@ -561,24 +546,8 @@ public final class JSON {
 	 * @param value - value to write at the end of the path
 	 * @return the given JSONObject with added data
 	 */
-	@SuppressWarnings("unchecked")
 	public static JSONObject putWithPath(JSONObject obj, String[] path, Object value){
-		if (path.length == 2){
-			if (obj.containsKey(path[0])){
-				((JSONObject) obj.get(path[0])).put(path[1], value);
-			}else{
-				obj.put(path[0], make(path[1], value));
-			}
-		}else{
-			if (obj.containsKey(path[0])){
-				putWithPath((JSONObject) obj.get(path[0]), Arrays.copyOfRange(path, 1, path.length), value);
-			}else{
-				JSONObject nextObj = new JSONObject();
-				obj.put(path[0], nextObj);
-				putWithPath(nextObj, Arrays.copyOfRange(path, 1, path.length), value);
-			}
-		}
-		return obj;
+		return JsonPath.ofKeys(path).put(obj, value);
 	}
 	/**
 	 * Simple add (same as put, ... historic reasons ...). 
@@ -737,6 +706,50 @@ public final class JSON {
 	    return target;
 	}
 	
+	/**
+	 * Create a deep copy of a JSONObject. Nested JSONObjects and JSONArrays are copied as well, other values
+	 * (strings, numbers, booleans) are immutable and just referenced.
+	 * @param source - object to copy or null
+	 * @return copy or null
+	 */
+	@SuppressWarnings("unchecked")
+	public static JSONObject deepCopy(JSONObject source){
+		if (source == null){
+			return null;
+		}
+		JSONObject copy = new JSONObject();
+		source.forEach((k, v) -> {
+			copy.put(k, deepCopyValue(v));
+		});
+		return copy;
+	}
+	/**
+	 * Create a deep copy of a JSONArray. See {@link #deepCopy(JSONObject)}.
+	 * @param source - array to copy or null
+	 * @return copy or null
+	 */
+	@SuppressWarnings("unchecked")
+	public static JSONArray deepCopy(JSONArray source){
+		if (source == null){
+			return null;
+		}
+		JSONArray copy = new JSONArray();
+		copy.ensureCapacity(source.size());
+		for (Object v : source){
+			copy.add(deepCopyValue(v));
+		}
+		return copy;
+	}
+	private static Object deepCopyValue(Object v){
+		if (v instanceof JSONObject){
+			return deepCopy((JSONObject) v);
+		}else if (v instanceof JSONArray){
+			return deepCopy((JSONArray) v);
+		}else{
+			return v;
+		}
+	}
+	
 	/**
 	 * Write a JSONObject to a file (UTF-8 encoding).
 	 * @param filePath - path including file name
@@ -744,13 +757,21 @@ public final class JSON {
 	 * @return true/false
 	 */
 	public static boolean writeJsonToFile(String filePath, JSONObject obj){
+		return writeJsonToFile(filePath, obj, JsonPrettyPrinter.COMPACT);
+	}
+	/**
+	 * Write a JSONObject to a file (UTF-8 encoding). The JSON is streamed to the file (no string of the whole content in memory).
+	 * @param filePath - path including file name
+	 * @param obj - JSONObject
+	 * @param printer - format, e.g. {@link JsonPrettyPrinter#DEFAULT} (pretty) or {@link JsonPrettyPrinter#COMPACT}
+	 * @return true/false
+	 */
+	public static boolean writeJsonToFile(String filePath, JSONObject obj, JsonPrettyPrinter printer){
 		if (obj == null){
 			return false;
 		}
-		//try (FileWriter file = new FileWriter(filePath)) {
-		try (OutputStreamWriter w = new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8);){
-			//file.write(obj.toJSONString());
-			w.write(obj.toJSONString());
+		try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8));){
+			printer.write(obj, w);
 			return true;
 		}catch (Exception e){
 			System.err.println(DateTime.getLogDate() + " ERROR - JSON.java / writeJsonToFile() - Failed to write: " + filePath + " - MSG: " + e.getMessage());
@@ -765,8 +786,7 @@ public final class JSON {
 	 */
 	public static JSONObject readJsonFromFile(String filePath){
 		try (Reader r = new InputStreamReader(new FileInputStream(filePath), StandardCharsets.UTF_8);) {
-			JSONParser parser = new JSONParser();
-			Object obj = parser.parse(r);
+			Object obj = JsonTreeParser.parse(r);
             //Object obj = parser.parse(new FileReader(filePath));
             JSONObject jsonObject = (JSONObject) obj;
             return jsonObject;
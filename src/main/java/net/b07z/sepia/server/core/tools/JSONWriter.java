@@ -1,14 +1,14 @@
 package net.b07z.sepia.server.core.tools;
 
-import java.io.IOException;
 import java.io.StringWriter;
-import java.io.Writer;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 /**
- * Creates pretty strings from JSON objects.
+ * Creates pretty strings from JSON objects.<br>
+ * NOTE: {@link #getPrettyString(JSONObject)} uses the streaming {@link JsonPrettyPrinter} now (same format). Writing with this class directly
+ * formats every ':', ',' and bracket it sees, including the ones inside of string values, prefer {@link JsonPrettyPrinter}.<br>
  * Sample usage:
  * <pre>
  * Writer writer = new JSONWriter();
@@ -54,16 +54,7 @@ public class JSONWriter extends StringWriter
 	 * @return String or null
 	 */
 	public static String getPrettyString(JSONObject jo){
-		Writer sw = new JSONWriter();
-		try {
-			jo.writeJSONString(sw);
-			return sw.toString()
-					.replaceAll("\\[(\\n|\\s)+]", "[]")
-					.replaceAll("\\{(\\n|\\s)+}", "{}");
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
-		}
+		return JsonPrettyPrinter.DEFAULT.toString(jo);
 	}
 	/**
 	 * Get default, pretty JSON string. Returns null on error!
@@ -71,16 +62,7 @@ public class JSONWriter extends StringWriter
 	 * @return String or null
 	 */
 	public static String getPrettyString(JSONArray ja){
-		Writer sw = new JSONWriter();
-		try {
-			ja.writeJSONString(sw);
-			return sw.toString()
-					.replaceAll("\\[(\\n|\\s)+]", "[]")
-					.replaceAll("\\{(\\n|\\s)+}", "{}");
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
-		}
+		return JsonPrettyPrinter.DEFAULT.toString(ja);
 	}
 
 	@Override
@@ -0,0 +1,159 @@
+package net.b07z.sepia.server.core.tools;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+/**
+ * Central registry of shared Jackson readers and writers. Creating an {@link ObjectMapper} is expensive (introspection, serializer
+ * caches), so all mapping should go through the pre-configured instances here instead of "new ObjectMapper()".<br>
+ * {@link ObjectReader} and {@link ObjectWriter} are immutable and thread-safe, readers and writers of a type are cached.
+ * Frequently used model classes call {@link #prepare(Style, Class)} in their own static initializer (this package does not know them).<br>
+ * <br>
+ * NOTE: Never change the configuration of the mappers after start, use {@code with(...)} of reader or writer to get a variant.
+ *
+ * @author Florian Quirin
+ *
+ */
+public final class JsonMappers {
+
+	public enum Style {
+		/** Default Jackson naming (Java property names) */
+		plain,
+		/** Property names in snake case, e.g. "answer_type" (used by Answer and Command of the data package) */
+		snake_case,
+		/** YAML files (Java property names) */
+		yaml
+	}
+
+	private static final ObjectMapper plainMapper = new ObjectMapper();
+	private static final ObjectMapper snakeCaseMapper = new ObjectMapper().setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
+	private static final ObjectMapper yamlMapper = new ObjectMapper(new YAMLFactory());
+
+	private static final Map<Class<?>, ObjectReader> plainReaders = new ConcurrentHashMap<>();
+	private static final Map<Class<?>, ObjectReader> snakeCaseReaders = new ConcurrentHashMap<>();
+	private static final Map<Class<?>, ObjectReader> yamlReaders = new ConcurrentHashMap<>();
+	private static final Map<Class<?>, ObjectWriter> plainWriters = new ConcurrentHashMap<>();
+	private static final Map<Class<?>, ObjectWriter> snakeCaseWriters = new ConcurrentHashMap<>();
+	private static final Map<Class<?>, ObjectWriter> yamlWriters = new ConcurrentHashMap<>();
+
+	private static final ObjectWriter snakeCasePrettySortedWriter = snakeCaseMapper.writer()
+			.with(SerializationFeature.INDENT_OUTPUT)
+			.with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+	private JsonMappers(){}
+
+	/**
+	 * Create and cache reader and writer for a type so the first real call doesn't pay for introspection.
+	 * @param style - mapper style
+	 * @param type - class to prepare
+	 */
+	public static void prepare(Style style, Class<?> type){
+		try{
+			reader(style, type);
+			writer(style, type);
+		}catch (Exception e){
+			Debugger.println("JsonMappers - failed to prepare mapping of: " + type.getName() + " - " + e.getMessage(), 1);
+		}
+	}
+
+	/**
+	 * Get shared mapper, e.g. for tree conversions. Do NOT change its configuration.
+	 */
+	public static ObjectMapper mapper(Style style){
+		switch (style){
+			case snake_case:
+				return snakeCaseMapper;
+			case yaml:
+				return yamlMapper;
+			default:
+				return plainMapper;
+		}
+	}
+
+	/**
+	 * Get cached reader for a type.
+	 * @param style - mapper style
+	 * @param type - class to read
+	 */
+	public static ObjectReader reader(Style style, Class<?> type){
+		Map<Class<?>, ObjectReader> readers = (style == Style.snake_case)? snakeCaseReaders : ((style == Style.yaml)? yamlReaders : plainReaders);
+		return readers.computeIfAbsent(type, t -> mapper(style).readerFor(t));
+	}
+	/**
+	 * Get reader for a generic type like "Map&lt;String, List&lt;SharedAccessItem&gt;&gt;". Keep the result in a static field,
+	 * readers of type references are not cached.
+	 * @param style - mapper style
+	 * @param type - type reference
+	 */
+	public static ObjectReader reader(Style style, TypeReference<?> type){
+		return mapper(style).readerFor(type);
+	}
+
+	/**
+	 * Get cached writer for a type.
+	 * @param style - mapper style
+	 * @param type - class to write
+	 */
+	public static ObjectWriter writer(Style style, Class<?> type){
+		Map<Class<?>, ObjectWriter> writers = (style == Style.snake_case)? snakeCaseWriters : ((style == Style.yaml)? yamlWriters : plainWriters);
+		return writers.computeIfAbsent(type, t -> mapper(style).writerFor(t));
+	}
+	/**
+	 * Convert object to JSONObject directly (no JSON string in between). The object is serialized into a token buffer with the
+	 * cached writer of the style and the tokens are read into the tree like {@link JsonTreeParser} does (Long/Double numbers).
+	 * @param style - mapper style
+	 * @param pojo - object that serializes to a JSON object
+	 * @return JSONObject
+	 * @throws IOException if serialization fails or the result is not an object
+	 */
+	public static JSONObject toJson(Style style, Object pojo) throws IOException {
+		TokenBuffer buffer = new TokenBuffer(mapper(style), false);
+		writer(style, pojo.getClass()).writeValue(buffer, pojo);
+		try (JsonParser parser = buffer.asParser()){
+			Object result = JsonTreeParser.read(parser);
+			if (!(result instanceof JSONObject)){
+				throw new JsonMappingException(parser, "Object of " + pojo.getClass().getName() + " is not serialized to a JSON object");
+			}
+			return (JSONObject) result;
+		}catch (ParseException e){
+			throw new IOException(e);
+		}
+	}
+	/**
+	 * Convert JSONObject to object directly (no JSON string in between) using the cached reader of the style.
+	 * @param style - mapper style
+	 * @param json - JSONObject
+	 * @param type - class to create
+	 * @return new object
+	 * @throws IOException if deserialization fails
+	 */
+	public static <T> T fromJson(Style style, JSONObject json, Class<T> type) throws IOException {
+		TokenBuffer buffer = new TokenBuffer(mapper(style), false);
+		mapper(style).writeValue(buffer, json);
+		try (JsonParser parser = buffer.asParser()){
+			return reader(style, type).readValue(parser);
+		}
+	}
+
+	/**
+	 * Get writer for snake case JSON with indentation and map entries ordered by keys (stable output e.g. for files and tests).
+	 */
+	public static ObjectWriter snakeCasePrettySortedWriter(){
+		return snakeCasePrettySortedWriter;
+	}
+}
@@ -0,0 +1,359 @@
+package net.b07z.sepia.server.core.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Compiled path into a json-simple tree, e.g. "hits.hits", "_source.user_name.nick", "hits.hits[0]._id", "list[-1]" (last element),
+ * "hits.hits[*]._id" (all elements), "lists.*.title" (all values of an object) or "data['key.with.dots']".<br>
+ * The path is parsed once and evaluated with a simple loop (no splitting, no intermediate objects, wildcards excluded). Compiled paths
+ * are immutable and thread-safe, keep frequently used ones in a static field or get them via {@link #compile(String)} (bounded cache).<br>
+ * Typed getters like {@link #getLong(Object, long)} return primitives and a default value if the path breaks or the type does not match.
+ *
+ * @author Florian Quirin
+ *
+ */
+public final class JsonPath {
+
+	public static int maxCachedPaths = 1000;
+
+	private static final Map<String, JsonPath> cache = new ConcurrentHashMap<>();
+	private static final Map<String, JsonPath> dotPathCache = new ConcurrentHashMap<>();
+	private static final int WILDCARD = Integer.MIN_VALUE;
+
+	private final String path;
+	private final String[] keys;		//key of object step or null for array/wildcard step
+	private final int[] indices;		//array index of step (negative counts from end) or WILDCARD
+	private final boolean hasWildcard;
+
+	private JsonPath(String path, List<String> keys, List<Integer> indices){
+		this.path = path;
+		this.keys = keys.toArray(new String[0]);
+		this.indices = new int[indices.size()];
+		boolean wildcard = false;
+		for (int i = 0; i < this.indices.length; i++){
+			this.indices[i] = indices.get(i);
+			wildcard |= (this.keys[i] == null && this.indices[i] == WILDCARD);
+		}
+		this.hasWildcard = wildcard;
+	}
+
+	/**
+	 * Get compiled path from cache or compile it.
+	 * @param path - path like "a.b[0].c", "a[*].b", "a.*" or "a['b.c']" (optional leading "$.")
+	 * @return compiled path
+	 * @throws IllegalArgumentException if path is invalid
+	 */
+	public static JsonPath compile(String path){
+		JsonPath compiled = cache.get(path);
+		if (compiled == null){
+			compiled = parse(path);
+			putInCache(cache, path, compiled);
+		}
+		return compiled;
+	}
+	/**
+	 * Get compiled path that only splits at dots (no brackets or wildcards), e.g. for {@link JSON#putWithDotPath(JSONObject, String, Object)}.
+	 * @param dotPath - path like "level1.level2.key"
+	 * @return compiled path
+	 */
+	public static JsonPath compileDotPath(String dotPath){
+		JsonPath compiled = dotPathCache.get(dotPath);
+		if (compiled == null){
+			compiled = ofKeys(dotPath.split("\\."));
+			putInCache(dotPathCache, dotPath, compiled);
+		}
+		return compiled;
+	}
+	/**
+	 * Create path of plain object keys (not cached).
+	 * @param keys - keys like ["hits", "hits"]
+	 * @return compiled path
+	 */
+	public static JsonPath ofKeys(String... keys){
+		List<Integer> indices = new ArrayList<>(keys.length);
+		for (int i = 0; i < keys.length; i++){
+			indices.add(0);
+		}
+		return new JsonPath(String.join(".", keys), Arrays.asList(keys), indices);
+	}
+	private static void putInCache(Map<String, JsonPath> map, String key, JsonPath compiled){
+		if (map.size() >= maxCachedPaths){
+			map.clear();		//NOTE: simple bound, usually only a handful of paths are used again and again
+		}
+		map.put(key, compiled);
+	}
+
+	private static JsonPath parse(String path){
+		List<String> keys = new ArrayList<>();
+		List<Integer> indices = new ArrayList<>();
+		int i = (path.startsWith("$."))? 2 : ((path.equals("$"))? 1 : 0);
+		int n = path.length();
+		boolean expectKey = true;
+		while (i < n){
+			char c = path.charAt(i);
+			if (c == '['){
+				char quote = (i + 1 < n)? path.charAt(i + 1) : 0;
+				if (quote == '\'' || quote == '"'){
+					//quoted key, can contain dots and brackets
+					int end = path.indexOf(quote + "]", i + 2);
+					if (end < 0){
+						throw new IllegalArgumentException("Invalid JSON path (missing " + quote + "]): " + path);
+					}
+					keys.add(path.substring(i + 2, end));
+					indices.add(0);
+					i = end + 2;
+				}else{
+					int end = path.indexOf(']', i);
+					if (end < 0){
+						throw new IllegalArgumentException("Invalid JSON path (missing ']'): " + path);
+					}
+					String inner = path.substring(i + 1, end).trim();
+					keys.add(null);
+					if (inner.equals("*")){
+						indices.add(WILDCARD);
+					}else{
+						try{
+							indices.add(Integer.parseInt(inner));
+						}catch (NumberFormatException e){
+							throw new IllegalArgumentException("Invalid JSON path (bad index '" + inner + "'): " + path);
+						}
+					}
+					i = end + 1;
+				}
+				expectKey = false;
+			}else if (c == '.'){
+				if (expectKey){
+					throw new IllegalArgumentException("Invalid JSON path (empty key): " + path);
+				}
+				i++;
+				expectKey = true;
+			}else{
+				if (!expectKey){
+					throw new IllegalArgumentException("Invalid JSON path (missing '.'): " + path);
+				}
+				int end = i;
+				while (end < n && path.charAt(end) != '.' && path.charAt(end) != '['){
+					end++;
+				}
+				String key = path.substring(i, end);
+				if (key.equals("*")){
+					keys.add(null);
+					indices.add(WILDCARD);
+				}else{
+					keys.add(key);
+					indices.add(0);
+				}
+				i = end;
+				expectKey = false;
+			}
+		}
+		if (expectKey && !keys.isEmpty()){
+			throw new IllegalArgumentException("Invalid JSON path (ends with '.'): " + path);
+		}
+		return new JsonPath(path, keys, indices);
+	}
+
+	//-------EVALUATION---------
+
+	/**
+	 * Get value at path (first match if path has wildcards).
+	 * @param root - JSONObject or JSONArray
+	 * @return value or null if the path breaks somewhere
+	 */
+	public Object get(Object root){
+		if (hasWildcard){
+			return findFirst(root, 0);
+		}
+		Object node = root;
+		for (int i = 0; i < keys.length && node != null; i++){
+			node = step(node, i);
+		}
+		return node;
+	}
+	/**
+	 * Get all values at path (wildcards expand to all elements).
+	 * @param root - JSONObject or JSONArray
+	 * @return list of values (empty if the path breaks), null values are skipped
+	 */
+	public List<Object> getAll(Object root){
+		List<Object> values = new ArrayList<>();
+		collect(root, 0, values);
+		return values;
+	}
+
+	private Object step(Object node, int i){
+		String key = keys[i];
+		if (key != null){
+			return (node instanceof Map)? ((Map<?, ?>) node).get(key) : null;
+		}else if (node instanceof List){
+			List<?> list = (List<?>) node;
+			int index = indices[i];
+			if (index < 0){
+				index += list.size();
+			}
+			return (index >= 0 && index < list.size())? list.get(index) : null;
+		}
+		return null;
+	}
+	private Iterable<?> getChildren(Object node){
+		if (node instanceof List){
+			return (List<?>) node;
+		}else if (node instanceof Map){
+			return ((Map<?, ?>) node).values();
+		}
+		return null;
+	}
+	private Object findFirst(Object node, int i){
+		for (; i < keys.length && node != null; i++){
+			if (keys[i] == null && indices[i] == WILDCARD){
+				Iterable<?> children = getChildren(node);
+				if (children != null){
+					for (Object child : children){
+						Object found = findFirst(child, i + 1);
+						if (found != null){
+							return found;
+						}
+					}
+				}
+				return null;
+			}
+			node = step(node, i);
+		}
+		return node;
+	}
+	private void collect(Object node, int i, List<Object> values){
+		for (; i < keys.length && node != null; i++){
+			if (keys[i] == null && indices[i] == WILDCARD){
+				Iterable<?> children = getChildren(node);
+				if (children != null){
+					for (Object child : children){
+						collect(child, i + 1, values);
+					}
+				}
+				return;
+			}
+			node = step(node, i);
+		}
+		if (node != null){
+			values.add(node);
+		}
+	}
+
+	//-------TYPED GETTERS---------
+
+	/**
+	 * Get long value at path or default if missing or not a number.
+	 */
+	public long getLong(Object root, long defaultValue){
+		Object v = get(root);
+		return (v instanceof Number)? ((Number) v).longValue() : defaultValue;
+	}
+	/**
+	 * Get integer value at path or default if missing or not a number.
+	 */
+	public int getInt(Object root, int defaultValue){
+		Object v = get(root);
+		return (v instanceof Number)? ((Number) v).intValue() : defaultValue;
+	}
+	/**
+	 * Get double value at path or default if missing or not a number.
+	 */
+	public double getDouble(Object root, double defaultValue){
+		Object v = get(root);
+		return (v instanceof Number)? ((Number) v).doubleValue() : defaultValue;
+	}
+	/**
+	 * Get boolean value at path or default if missing or not a boolean.
+	 */
+	public boolean getBoolean(Object root, boolean defaultValue){
+		Object v = get(root);
+		return (v instanceof Boolean)? (Boolean) v : defaultValue;
+	}
+	/**
+	 * Get string at path (other values are converted with toString) or default if missing.
+	 */
+	public String getString(Object root, String defaultValue){
+		Object v = get(root);
+		if (v == null){
+			return defaultValue;
+		}
+		return (v instanceof String)? (String) v : v.toString();
+	}
+	/**
+	 * Get JSONObject at path or null.
+	 */
+	public JSONObject getJObject(Object root){
+		Object v = get(root);
+		return (v instanceof JSONObject)? (JSONObject) v : null;
+	}
+	/**
+	 * Get JSONArray at path or null.
+	 */
+	public JSONArray getJArray(Object root){
+		Object v = get(root);
+		return (v instanceof JSONArray)? (JSONArray) v : null;
+	}
+
+	//-------WRITE---------
+
+	/**
+	 * Put value at path. Missing objects on the way are created, array elements must exist. Wildcards are not supported.
+	 * @param root - JSONObject to add data to
+	 * @param value - value to write at the end of the path
+	 * @return root
+	 * @throws IllegalArgumentException for wildcards or missing array elements
+	 * @throws ClassCastException if an existing value on the way is not an object (or array)
+	 */
+	@SuppressWarnings("unchecked")
+	public JSONObject put(JSONObject root, Object value){
+		if (hasWildcard || keys.length == 0){
+			throw new IllegalArgumentException("JSON path can't be used to put values: " + path);
+		}
+		Object node = root;
+		int last = keys.length - 1;
+		for (int i = 0; i < last; i++){
+			Object next = step(node, i);
+			if (next == null){
+				if (keys[i] == null){
+					throw new IllegalArgumentException("JSON path points to missing array element: " + path);
+				}
+				next = new JSONObject();
+				((JSONObject) node).put(keys[i], next);
+			}
+			node = next;
+		}
+		if (keys[last] != null){
+			((JSONObject) node).put(keys[last], value);
+		}else{
+			JSONArray array = (JSONArray) node;
+			int index = (indices[last] < 0)? (indices[last] + array.size()) : indices[last];
+			if (index < 0 || index >= array.size()){
+				throw new IllegalArgumentException("JSON path points to missing array element: " + path);
+			}
+			array.set(index, value);
+		}
+		return root;
+	}
+
+	//------------------------------------
+
+	@Override
+	public String toString(){
+		return path;
+	}
+	@Override
+	public boolean equals(Object o){
+		return (o instanceof JsonPath) && Arrays.equals(keys, ((JsonPath) o).keys) && Arrays.equals(indices, ((JsonPath) o).indices);
+	}
+	@Override
+	public int hashCode(){
+		return 31 * Arrays.hashCode(keys) + Arrays.hashCode(indices);
+	}
+}
@@ -0,0 +1,223 @@
+package net.b07z.sepia.server.core.tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONAware;
+import org.json.simple.JSONStreamAware;
+
+/**
+ * Streaming writer for json-simple trees (JSONObject, JSONArray or any Map/List) that writes in one pass directly to a {@link Writer}
+ * or {@link OutputStream}. Only structural tokens are formatted, so strings that contain ':', ',' or brackets are never touched.<br>
+ * Pretty mode uses configurable indentation and space after colons and writes empty objects and arrays inline ("{}", "[]").
+ * Compact mode ({@link #COMPACT}) gives exactly the same output as {@code toJSONString()} of json-simple (same escaping and number format).<br>
+ * Instances are immutable and thread-safe.
+ *
+ * @author Florian Quirin
+ *
+ */
+public final class JsonPrettyPrinter {
+
+	/** Default pretty printer with 4 spaces indentation and 1 space after colons (same format as {@link JSONWriter}) */
+	public static final JsonPrettyPrinter DEFAULT = new JsonPrettyPrinter("    ", " ");
+	/** Compact printer, same output as json-simple {@code toJSONString()} */
+	public static final JsonPrettyPrinter COMPACT = new JsonPrettyPrinter(null, "");
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private final String indentation;		//null for compact mode
+	private final String colonSpace;
+
+	/**
+	 * Create pretty printer.
+	 * @param indentation - string for each indentation level, e.g. "    " or "\t" (null for compact output without line breaks)
+	 * @param colonSpace - string after each colon, e.g. " " or ""
+	 */
+	public JsonPrettyPrinter(String indentation, String colonSpace){
+		this.indentation = indentation;
+		this.colonSpace = (colonSpace == null)? "" : colonSpace;
+	}
+
+	/**
+	 * Is this a compact printer (no line breaks)?
+	 */
+	public boolean isCompact(){
+		return indentation == null;
+	}
+
+	/**
+	 * Write value to string.
+	 * @param value - JSONObject, JSONArray or any other JSON value
+	 * @return JSON string
+	 */
+	public String toString(Object value){
+		StringWriter sw = new StringWriter();
+		try{
+			write(value, sw);
+		}catch (IOException e){
+			throw new IllegalStateException(e);		//StringWriter does not throw
+		}
+		return sw.toString();
+	}
+
+	/**
+	 * Write value to output stream (UTF-8). The stream is flushed, but NOT closed.
+	 * @param value - JSONObject, JSONArray or any other JSON value
+	 * @param out - output stream
+	 * @throws IOException if writing fails
+	 */
+	public void write(Object value, OutputStream out) throws IOException {
+		Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		write(value, w);
+		w.flush();
+	}
+
+	/**
+	 * Write value to writer. The writer is NOT flushed or closed, use a buffered writer for files and streams.
+	 * @param value - JSONObject, JSONArray or any other JSON value
+	 * @param out - writer
+	 * @throws IOException if writing fails
+	 */
+	public void write(Object value, Writer out) throws IOException {
+		writeValue(value, out, 0);
+	}
+
+	//------------------------------------
+
+	/**
+	 * Write any value. Order of checks follows json-simple's JSONValue.writeJSONString.
+	 */
+	private void writeValue(Object value, Writer out, int level) throws IOException {
+		if (value == null){
+			out.write("null");
+		}else if (value instanceof String){
+			out.write('"');
+			writeEscaped((String) value, out);
+			out.write('"');
+		}else if (value instanceof Double){
+			Double d = (Double) value;
+			out.write((d.isInfinite() || d.isNaN())? "null" : d.toString());
+		}else if (value instanceof Float){
+			Float f = (Float) value;
+			out.write((f.isInfinite() || f.isNaN())? "null" : f.toString());
+		}else if (value instanceof Number || value instanceof Boolean){
+			out.write(value.toString());
+		}else if (value instanceof Map){
+			writeMap((Map<?, ?>) value, out, level);
+		}else if (value instanceof List){
+			writeList((List<?>) value, out, level);
+		}else if (value instanceof JSONStreamAware){
+			((JSONStreamAware) value).writeJSONString(out);
+		}else if (value instanceof JSONAware){
+			out.write(((JSONAware) value).toJSONString());
+		}else{
+			out.write(value.toString());
+		}
+	}
+
+	private void writeMap(Map<?, ?> map, Writer out, int level) throws IOException {
+		if (map.isEmpty()){
+			out.write("{}");
+			return;
+		}
+		out.write('{');
+		boolean first = true;
+		for (Map.Entry<?, ?> e : map.entrySet()){
+			if (!first){
+				out.write(',');
+			}
+			first = false;
+			newLine(out, level + 1);
+			out.write('"');
+			writeEscaped(String.valueOf(e.getKey()), out);
+			out.write('"');
+			out.write(':');
+			out.write(colonSpace);
+			writeValue(e.getValue(), out, level + 1);
+		}
+		newLine(out, level);
+		out.write('}');
+	}
+
+	private void writeList(List<?> list, Writer out, int level) throws IOException {
+		if (list.isEmpty()){
+			out.write("[]");
+			return;
+		}
+		out.write('[');
+		Iterator<?> it = list.iterator();
+		boolean first = true;
+		while (it.hasNext()){
+			if (!first){
+				out.write(',');
+			}
+			first = false;
+			newLine(out, level + 1);
+			writeValue(it.next(), out, level + 1);
+		}
+		newLine(out, level);
+		out.write(']');
+	}
+
+	private void newLine(Writer out, int level) throws IOException {
+		if (indentation != null){
+			out.write('\n');
+			for (int i = 0; i < level; i++){
+				out.write(indentation);
+			}
+		}
+	}
+
+	/**
+	 * Escape like json-simple's JSONValue.escape (including "\/" and \\uXXXX for control and some unicode ranges), but without
+	 * creating a new string.
+	 */
+	private static void writeEscaped(String s, Writer out) throws IOException {
+		int start = 0;
+		int n = s.length();
+		for (int i = 0; i < n; i++){
+			char ch = s.charAt(i);
+			String replacement;
+			switch (ch){
+				case '"': replacement = "\\\""; break;
+				case '\\': replacement = "\\\\"; break;
+				case '\b': replacement = "\\b"; break;
+				case '\f': replacement = "\\f"; break;
+				case '\n': replacement = "\\n"; break;
+				case '\r': replacement = "\\r"; break;
+				case '\t': replacement = "\\t"; break;
+				case '/': replacement = "\\/"; break;
+				default:
+					if ((ch <= '\u001F') || (ch >= '\u007F' && ch <= '\u009F') || (ch >= '\u2000' && ch <= '\u20FF')){
+						replacement = null;
+						break;
+					}
+					continue;
+			}
+			if (i > start){
+				out.write(s, start, i - start);
+			}
+			if (replacement != null){
+				out.write(replacement);
+			}else{
+				out.write("\\u");
+				out.write(HEX[(ch >> 12) & 0xF]);
+				out.write(HEX[(ch >> 8) & 0xF]);
+				out.write(HEX[(ch >> 4) & 0xF]);
+				out.write(HEX[ch & 0xF]);
+			}
+			start = i + 1;
+		}
+		if (start < n){
+			out.write(s, start, n - start);
+		}
+	}
+}
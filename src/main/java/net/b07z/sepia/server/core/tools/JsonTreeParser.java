@@ -0,0 +1,195 @@
+package net.b07z.sepia.server.core.tools;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Base64;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+
+/**
+ * Parser that builds json-simple trees ({@link JSONObject}, {@link JSONArray}, String, Long, Double, Boolean or null) used by
+ * {@link JSON#parseString(String)}, {@link Connectors} and others.<br>
+ * Two engines are available: the streaming parser of Jackson (default, much faster and less garbage) and the original json-simple parser.
+ * Both produce the same trees: integers are Long and decimals Double like json-simple does (integers that don't fit into a Long become Double
+ * instead of failing). Jackson is configured to accept the same sloppy input as json-simple: raw control characters (line breaks, tabs)
+ * in strings, trailing commas ('{"a":1,}', '[1,]') and missing array values ('[1,,2]' gives [1,2]). Use {@link #engine} to switch (e.g. for A/B tests).<br>
+ * Jackson recycles its parser buffers per thread, the json-simple parser instances are reused per thread as well.
+ *
+ * @author Florian Quirin
+ *
+ */
+public final class JsonTreeParser {
+
+	public enum Engine {
+		jackson,
+		json_simple
+	}
+	public static volatile Engine engine = Engine.jackson;
+
+	//thread-safe, creates cheap parsers with recycled buffers
+	private static final JsonFactory jsonFactory = JsonFactory.builder()
+			.enable(JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS)
+			.enable(JsonReadFeature.ALLOW_TRAILING_COMMA)
+			.enable(JsonReadFeature.ALLOW_MISSING_VALUES)
+			.build();
+	private static final ThreadLocal<JSONParser> simpleParsers = ThreadLocal.withInitial(JSONParser::new);
+
+	private JsonTreeParser(){}
+
+	/**
+	 * Parse JSON string.
+	 * @param json - JSON string
+	 * @return JSONObject, JSONArray, String, Long, Double, Boolean or null
+	 * @throws ParseException if string is not valid JSON
+	 */
+	public static Object parse(String json) throws ParseException {
+		if (engine == Engine.json_simple){
+			return simpleParsers.get().parse(json);
+		}
+		try (JsonParser parser = jsonFactory.createParser(json)){
+			return readRoot(parser, true);
+		}catch (JsonProcessingException e){
+			throw toParseException(e);
+		}catch (IOException e){
+			//should not happen for strings
+			throw new ParseException(-1, ParseException.ERROR_UNEXPECTED_EXCEPTION, e);
+		}
+	}
+	/**
+	 * Parse JSON from reader (reader is NOT closed).
+	 * @param reader - reader with JSON content
+	 * @return JSONObject, JSONArray, String, Long, Double, Boolean or null
+	 * @throws ParseException if content is not valid JSON
+	 * @throws IOException if reader fails
+	 */
+	public static Object parse(Reader reader) throws ParseException, IOException {
+		if (engine == Engine.json_simple){
+			return simpleParsers.get().parse(reader);
+		}
+		try (JsonParser parser = jsonFactory.createParser(reader)){
+			parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+			return readRoot(parser, true);
+		}catch (JsonProcessingException e){
+			throw toParseException(e);
+		}
+	}
+
+	/**
+	 * Parse JSON string to JSONObject.
+	 * @throws ParseException if string is not valid JSON or not an object
+	 */
+	public static JSONObject parseObject(String json) throws ParseException {
+		Object result = parse(json);
+		if (!(result instanceof JSONObject)){
+			throw new ParseException(0, ParseException.ERROR_UNEXPECTED_TOKEN, result);
+		}
+		return (JSONObject) result;
+	}
+	/**
+	 * Parse JSON string to JSONArray.
+	 * @throws ParseException if string is not valid JSON or not an array
+	 */
+	public static JSONArray parseArray(String json) throws ParseException {
+		Object result = parse(json);
+		if (!(result instanceof JSONArray)){
+			throw new ParseException(0, ParseException.ERROR_UNEXPECTED_TOKEN, result);
+		}
+		return (JSONArray) result;
+	}
+
+	/**
+	 * Read one value from any Jackson parser (e.g. a {@link com.fasterxml.jackson.databind.util.TokenBuffer}) into a json-simple tree.
+	 */
+	static Object read(JsonParser parser) throws IOException, ParseException {
+		return readRoot(parser, false);
+	}
+
+	//------------------------------------
+
+	/**
+	 * Read root value.
+	 * @param parser - Jackson parser
+	 * @param isText - parser reads JSON text of {@link #jsonFactory} (missing array values are skipped like json-simple does)
+	 */
+	private static Object readRoot(JsonParser parser, boolean isText) throws IOException, ParseException {
+		JsonToken token = parser.nextToken();
+		if (token == null){
+			throw new ParseException(0, ParseException.ERROR_UNEXPECTED_TOKEN, "end of input");
+		}
+		Object result = readValue(parser, token, isText);
+		JsonToken trailing = parser.nextToken();
+		if (trailing != null){
+			//like json-simple: only one value per input
+			throw new ParseException((int) parser.getTokenLocation().getCharOffset(), ParseException.ERROR_UNEXPECTED_TOKEN, trailing.asString());
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object readValue(JsonParser parser, JsonToken token, boolean isText) throws IOException, ParseException {
+		switch (token){
+			case START_OBJECT:
+				JSONObject object = new JSONObject();
+				String name;
+				while ((name = parser.nextFieldName()) != null){
+					object.put(name, readValue(parser, parser.nextToken(), isText));
+				}
+				return object;
+			case START_ARRAY:
+				JSONArray array = new JSONArray();
+				JsonToken next;
+				while ((next = parser.nextToken()) != JsonToken.END_ARRAY){
+					if (isText && next == JsonToken.VALUE_NULL && isMissingValue(parser)){
+						continue;		//'[1,,2]' - json-simple ignores the empty value
+					}
+					array.add(readValue(parser, next, isText));
+				}
+				return array;
+			case VALUE_STRING:
+				return parser.getText();
+			case VALUE_NUMBER_INT:
+				if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER){
+					return parser.getDoubleValue();
+				}
+				return parser.getLongValue();
+			case VALUE_NUMBER_FLOAT:
+				if (parser.getNumberType() == JsonParser.NumberType.FLOAT){
+					return Double.valueOf(Float.toString(parser.getFloatValue()));		//same value as written by text output (no widening artifacts)
+				}
+				return parser.getDoubleValue();
+			case VALUE_TRUE:
+				return Boolean.TRUE;
+			case VALUE_FALSE:
+				return Boolean.FALSE;
+			case VALUE_NULL:
+				return null;
+			case VALUE_EMBEDDED_OBJECT:
+				//only produced by token buffers, e.g. byte[] (written as Base64 text in JSON)
+				Object embedded = parser.getEmbeddedObject();
+				return (embedded instanceof byte[])? Base64.getEncoder().encodeToString((byte[]) embedded) : embedded;
+			default:
+				throw new ParseException((int) parser.getTokenLocation().getCharOffset(), ParseException.ERROR_UNEXPECTED_TOKEN, token.asString());
+		}
+	}
+
+	/**
+	 * A missing value is reported as null token without any characters (a real "null" has 4).
+	 */
+	private static boolean isMissingValue(JsonParser parser){
+		return parser.getCurrentLocation().getCharOffset() == parser.getTokenLocation().getCharOffset();
+	}
+
+	private static ParseException toParseException(JsonProcessingException e){
+		int position = (e.getLocation() != null)? (int) e.getLocation().getCharOffset() : -1;
+		return new ParseException(position, ParseException.ERROR_UNEXPECTED_TOKEN, e.getOriginalMessage());
+	}
+}
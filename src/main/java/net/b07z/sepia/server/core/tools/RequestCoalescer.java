@@ -0,0 +1,126 @@
+package net.b07z.sepia.server.core.tools;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Single-flight execution: concurrent calls with the same key share one in-flight call and all callers receive its result.
+ * Callers that joined get a copy of the result (created with the given copy function) so results can be modified independently.
+ * The caller that started the call gets the original result only if nobody joined, otherwise it gets a copy as well (the original is
+ * shared by all joined callers as source for their copies). If the in-flight table is full calls are simply executed without coalescing.<br>
+ * <br>
+ * NOTE: Use this only for idempotent calls like HTTP GET.
+ *
+ * @author Florian Quirin
+ *
+ * @param <T> - result type
+ */
+public class RequestCoalescer<T> {
+
+	private final int maxInFlight;
+	private final UnaryOperator<T> copyFunction;
+	private final Map<String, Flight<T>> inFlight = new ConcurrentHashMap<>();
+
+	private final AtomicLong executed = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong bypassed = new AtomicLong();
+
+	/**
+	 * One running call and the number of callers waiting for it.
+	 */
+	private static class Flight<T> {
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		int waiters = 0;
+		boolean closed = false;
+	}
+
+	/**
+	 * Create coalescer.
+	 * @param maxInFlight - max. number of different keys in flight, calls beyond that limit are not coalesced
+	 * @param copyFunction - function to create a defensive copy of the result for waiting callers, e.g. {@link JSON#deepCopy(JSONObject)}
+	 */
+	public RequestCoalescer(int maxInFlight, UnaryOperator<T> copyFunction){
+		this.maxInFlight = maxInFlight;
+		this.copyFunction = copyFunction;
+	}
+
+	/**
+	 * Execute call or join an in-flight call with the same key.
+	 * @param key - key identifying identical calls or null to execute without coalescing
+	 * @param call - the actual call
+	 * @return result of call (or a copy of it if the call was shared)
+	 */
+	public T execute(String key, Supplier<T> call){
+		if (key == null || inFlight.size() >= maxInFlight){
+			bypassed.incrementAndGet();
+			return call.get();
+		}
+		Flight<T> flight = new Flight<>();
+		Flight<T> existing = inFlight.putIfAbsent(key, flight);
+		if (existing != null){
+			synchronized (existing){
+				if (!existing.closed){
+					existing.waiters++;
+				}else{
+					existing = null;		//too late to join, result is already handed out
+				}
+			}
+			if (existing != null){
+				coalesced.incrementAndGet();
+				return copyFunction.apply(existing.result.join());
+			}else{
+				bypassed.incrementAndGet();
+				return call.get();
+			}
+		}
+		//we are the leader
+		executed.incrementAndGet();
+		T result;
+		try{
+			result = call.get();
+		}catch (RuntimeException e){
+			inFlight.remove(key, flight);
+			closeFlight(flight);
+			flight.result.completeExceptionally(e);
+			throw e;
+		}
+		inFlight.remove(key, flight);
+		int waiters = closeFlight(flight);
+		flight.result.complete(result);
+		//waiters copy the original result so we should not hand it out for modification
+		return (waiters > 0)? copyFunction.apply(result) : result;
+	}
+	private int closeFlight(Flight<T> flight){
+		synchronized (flight){
+			flight.closed = true;
+			return flight.waiters;
+		}
+	}
+
+	/**
+	 * Number of keys currently in flight.
+	 */
+	public int getInFlightCount(){
+		return inFlight.size();
+	}
+
+	/**
+	 * Get counters.
+	 * @return JSONObject with "executed" (calls actually made), "coalesced" (calls that joined another one), "bypassed" (no coalescing)
+	 * and "inFlight"
+	 */
+	public JSONObject getStatistics(){
+		return JSON.make(
+			"executed", executed.get(),
+			"coalesced", coalesced.get(),
+			"bypassed", bypassed.get(),
+			"inFlight", inFlight.size()
+		);
+	}
+}
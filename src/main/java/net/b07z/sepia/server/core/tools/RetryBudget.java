@@ -0,0 +1,103 @@
+package net.b07z.sepia.server.core.tools;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Per-host token bucket that limits retries to a fraction of the normal traffic so that retries can't multiply the load
+ * on a host that is already struggling. Every request deposits {@link #depositPerRequest} tokens, every retry withdraws one token.
+ * Includes exponential backoff with "full jitter" to spread retries over time.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class RetryBudget {
+
+	//Settings
+	public static double depositPerRequest = 0.1;		//0.1 = max. 10% extra requests due to retries
+	public static double maxTokens = 10;				//max. burst of retries
+	public static long baseBackoffMs = 50;
+	public static long maxBackoffMs = 2000;
+
+	private static final Map<String, RetryBudget> budgets = new ConcurrentHashMap<>();
+
+	private double tokens;
+	private long retries = 0;
+	private long rejectedRetries = 0;
+
+	private RetryBudget(){
+		this.tokens = maxTokens;
+	}
+
+	/**
+	 * Get budget for host (created if missing).
+	 * @param host - host key, see {@link CircuitBreaker#getHostKey(java.net.URI)}
+	 */
+	public static RetryBudget forHost(String host){
+		return budgets.computeIfAbsent(host, h -> new RetryBudget());
+	}
+	/**
+	 * Remove all budgets (and their statistics).
+	 */
+	public static void resetAll(){
+		budgets.clear();
+	}
+
+	/**
+	 * Get tokens and counters of all budgets.
+	 * @return JSONObject with host keys and statistics as value
+	 */
+	public static JSONObject getStatistics(){
+		JSONObject stats = new JSONObject();
+		budgets.forEach((host, budget) -> JSON.put(stats, host, budget.getHostStatistics()));
+		return stats;
+	}
+
+	/**
+	 * Get backoff time for a retry with "full jitter", i.e. random value between 0 and base * 2^(attempt-1) (capped at max.).
+	 * @param attempt - retry attempt, starting with 1
+	 */
+	public static long getBackoffMs(int attempt){
+		long exp = baseBackoffMs << Math.min(Math.max(attempt - 1, 0), 20);
+		long cap = Math.min(maxBackoffMs, exp);
+		return (cap <= 0)? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+	}
+
+	//------------------------------------
+
+	/**
+	 * Add tokens for a new (non-retry) request.
+	 */
+	public synchronized void onRequest(){
+		tokens = Math.min(maxTokens, tokens + depositPerRequest);
+	}
+
+	/**
+	 * Try to take one token for a retry.
+	 * @return true if retry is allowed
+	 */
+	public synchronized boolean tryRetry(){
+		if (tokens >= 1){
+			tokens -= 1;
+			retries++;
+			return true;
+		}else{
+			rejectedRetries++;
+			return false;
+		}
+	}
+
+	/**
+	 * Statistics of this budget.
+	 */
+	public synchronized JSONObject getHostStatistics(){
+		return JSON.make(
+			"tokens", tokens,
+			"retries", retries,
+			"rejectedRetries", rejectedRetries
+		);
+	}
+}
@@ -11,7 +11,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import net.b07z.sepia.server.core.server.ConfigDefaults;
 import net.b07z.sepia.server.core.server.RequestParameters;
@@ -20,6 +20,7 @@ import net.b07z.sepia.server.core.tools.Converters;
 import net.b07z.sepia.server.core.tools.Debugger;
 import net.b07z.sepia.server.core.tools.Is;
 import net.b07z.sepia.server.core.tools.JSON;
+import net.b07z.sepia.server.core.tools.JsonMappers;
 import net.b07z.sepia.server.core.tools.Security;
 
 /**
@@ -33,6 +34,9 @@ public class Account {
 
 	//private static final Logger log = LogManager.getLogger();
 	private static final Logger log = LoggerFactory.getLogger(Account.class);
+	
+	//shared reader for 'shared_access' field
+	private static final ObjectReader sharedAccessReader = JsonMappers.reader(JsonMappers.Style.plain, new TypeReference<Map<String, List<SharedAccessItem>>>(){});
 
 	//service that is able to perform user authentication
 	private final AuthenticationInterface authService = (AuthenticationInterface) ClassBuilder.construct(ConfigDefaults.defaultAuthModule);
@@ -310,9 +314,8 @@ public class Account {
 		if (info.containsKey("shared_access")){
 			JSONObject sharedAcc = (JSONObject) info.get("shared_access");
 			if (Is.notNullOrEmpty(sharedAcc)){
-				ObjectMapper objectMapper = new ObjectMapper();
 				try{
-					sharedAccess = objectMapper.readValue(sharedAcc.toString(), new TypeReference<Map<String, List<SharedAccessItem>>>(){});
+					sharedAccess = sharedAccessReader.readValue(sharedAcc.toString());
 				}catch (Exception e){
 					Debugger.println("Failed to parse user account 'shared_access' field during 'copyBasicInfo'!", 1);
 					e.printStackTrace();
@@ -389,9 +392,8 @@ public class Account {
 		//SHARED ACCESS
 		JSONObject sharedAcc = (JSONObject) account.get("sharedAccess");
 		if (Is.notNullOrEmpty(sharedAcc)){
-			ObjectMapper objectMapper = new ObjectMapper();
 			try{
-				sharedAccess = objectMapper.readValue(sharedAcc.toString(), new TypeReference<Map<String, List<SharedAccessItem>>>(){});
+				sharedAccess = sharedAccessReader.readValue(sharedAcc.toString());
 			}catch (Exception e){
 				Debugger.println("Failed to parse user account 'shared_access' field during 'importJSON'!", 1);
 				e.printStackTrace();
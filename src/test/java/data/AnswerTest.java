@@ -1,10 +1,12 @@
 package data;
 
 import org.apache.commons.io.IOUtils;
+import org.json.simple.JSONObject;
 import org.junit.Test;
 
 import net.b07z.sepia.server.core.data.Answer;
 import net.b07z.sepia.server.core.data.Language;
+import net.b07z.sepia.server.core.tools.JSON;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -46,6 +48,11 @@ public class AnswerTest {
 		//System.out.println("testToJSON: " + json); 			//debug
 		assertTrue(json.contains("\"language\":\"en\""));
 		assertTrue(json.contains("\"public_answer\":true"));
+		
+		//direct tree conversion gives the same result as the string round-trip
+		JSONObject jo = answer.toJson();
+		assertThat(jo, is(JSON.parseStringOrFail(json)));
+		assertThat(Answer.importAnswerJSON(jo).toJsonString(), is(json));
 	}
 
 }
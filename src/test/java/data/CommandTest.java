@@ -1,6 +1,7 @@
 package data;
 
 import net.b07z.sepia.server.core.data.Command;
+import net.b07z.sepia.server.core.tools.JSON;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
@@ -23,6 +24,10 @@ public class CommandTest {
 			String jsonFromCommand = TestTools.asFormattedJson(cmd.toJsonString());
 			String jsonFromExample = TestTools.asFormattedJson(exampleJson);
 			assertEquals(jsonFromExample, jsonFromCommand);
+			
+			//direct tree conversion
+			assertEquals(JSON.parseStringOrFail(exampleJson), cmd.toJson());
+			assertEquals(cmd.toJsonString(), Command.importAnswerJSON(cmd.toJson()).toJsonString());
 		}
 	}
 	
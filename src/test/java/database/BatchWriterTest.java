@@ -0,0 +1,82 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+import net.b07z.sepia.server.core.database.BatchAction;
+import net.b07z.sepia.server.core.database.BatchWriter;
+import net.b07z.sepia.server.core.tools.JSON;
+
+public class BatchWriterTest {
+
+	@Test
+	public void testBatchesBySizeAndFlush() throws Exception {
+		RecordingDatabase db = new RecordingDatabase();
+		try (BatchWriter writer = new BatchWriter(db, 3, 1024 * 1024, 60000, 2)){
+			for (int i = 0; i < 7; i++){
+				writer.add(BatchAction.index("users", "all", "u" + i, JSON.make("n", i)));
+			}
+			writer.flush();
+			assertEquals("[3, 3, 1]", db.getBatchSizes().toString());
+			assertEquals(7, writer.getWrittenCount());
+			assertEquals(0, writer.getFailedCount());
+		}
+		assertEquals(6, ((Number) JSON.getJObject(db.getItem("users", "all", "u6"), "_source").get("n")).intValue());
+	}
+
+	@Test
+	public void testLingerAndClose() throws Exception {
+		RecordingDatabase db = new RecordingDatabase();
+		BatchWriter writer = new BatchWriter(db, 100, 1024 * 1024, 50, 2);
+		writer.add(BatchAction.index("users", "all", "u1", JSON.make("n", 1)));
+		//written by background thread after linger time, without flush
+		long waitUntil = System.currentTimeMillis() + 5000;
+		while (writer.getWrittenCount() < 1 && System.currentTimeMillis() < waitUntil){
+			Thread.sleep(10);
+		}
+		assertEquals(1, writer.getWrittenCount());
+
+		//close writes the rest
+		writer.add(BatchAction.update("users", "all", "u1", JSON.make("m", 2)));
+		writer.add(BatchAction.index("users", "all", "u2", JSON.make("n", 2)));
+		writer.close();
+		assertEquals(3, writer.getWrittenCount());
+		assertEquals(2, ((Number) JSON.getJObject(db.getItem("users", "all", "u1"), "_source").get("m")).intValue());
+		try{
+			writer.add(BatchAction.delete("users", "all", "u1"));
+			fail("expected IllegalStateException");
+		}catch (IllegalStateException e){
+			//expected
+		}
+		writer.close();		//second close does nothing
+	}
+
+	@Test
+	public void testFailedBatchIsReported() throws Exception {
+		RecordingDatabase db = new RecordingDatabase();
+		db.fail = true;
+		List<JSONObject> results = new ArrayList<>();
+		try (BatchWriter writer = new BatchWriter(db, 2, 1024 * 1024, 60000, 2)){
+			writer.setListener((actions, result) -> {
+				synchronized (results){
+					results.add(result);
+				}
+			});
+			writer.add(BatchAction.index("users", "all", "u1", JSON.make("n", 1)));
+			writer.add(BatchAction.index("users", "all", "u2", JSON.make("n", 2)));
+			writer.flush();
+			assertEquals(2, writer.getFailedCount());
+			assertEquals(0, writer.getWrittenCount());
+		}
+		assertEquals(1, results.size());
+		assertEquals(2, JSON.getIntegerOrDefault(results.get(0), "errors", 0));
+		assertTrue(JSON.getJArray(results.get(0), "items").size() == 2);
+	}
+}
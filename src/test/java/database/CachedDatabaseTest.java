@@ -0,0 +1,118 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.simple.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.b07z.sepia.server.core.database.BatchAction;
+import net.b07z.sepia.server.core.database.CachedDatabase;
+import net.b07z.sepia.server.core.database.InMemoryDatabase;
+import net.b07z.sepia.server.core.tools.JSON;
+
+public class CachedDatabaseTest {
+
+	/**
+	 * In-memory database that counts reads and can run an action in the middle of a read.
+	 */
+	private static class CountingDatabase extends InMemoryDatabase {
+		final AtomicInteger reads = new AtomicInteger();
+		Runnable duringRead = null;
+		@Override
+		public JSONObject getItemFiltered(String index, String type, String item_id, String[] filters){
+			reads.incrementAndGet();
+			JSONObject result = super.getItemFiltered(index, type, item_id, filters);
+			Runnable r = duringRead;
+			if (r != null){
+				duringRead = null;
+				r.run();
+			}
+			return result;
+		}
+	}
+
+	private CountingDatabase db;
+	private CachedDatabase cached;
+
+	@Before
+	public void setup(){
+		db = new CountingDatabase();
+		db.setItemData("users", "all", "u1", JSON.make("name", "John", "age", 30));
+		db.setItemData("users", "all", "u2", JSON.make("name", "Jane", "age", 25));
+		cached = new CachedDatabase(db, 100, 60000);
+	}
+
+	private static Object getSourceField(JSONObject result, String field){
+		return JSON.getJObject(result, "_source").get(field);
+	}
+
+	@Test
+	public void testReadsAreCachedAndCopied(){
+		JSONObject first = cached.getItem("users", "all", "u1");
+		JSON.put(JSON.getJObject(first, "_source"), "name", "changed by caller");
+		JSONObject second = cached.getItem("users", "all", "u1");
+		assertEquals(1, db.reads.get());
+		assertEquals("John", getSourceField(second, "name"));
+
+		//filters are cached separately
+		cached.getItemFiltered("users", "all", "u1", new String[]{"name"});
+		cached.getItemFiltered("users", "all", "u1", new String[]{"name"});
+		assertEquals(2, db.reads.get());
+
+		//not found is not cached
+		cached.getItem("users", "all", "nobody");
+		cached.getItem("users", "all", "nobody");
+		assertEquals(4, db.reads.get());
+		assertEquals(2, ((Number) cached.getStatistics().get("hits")).intValue());
+	}
+
+	@Test
+	public void testWritesInvalidate(){
+		cached.getItem("users", "all", "u1");
+		cached.updateItemData("users", "all", "u1", JSON.make("age", 31));
+		assertEquals(31, ((Number) getSourceField(cached.getItem("users", "all", "u1"), "age")).intValue());
+		assertEquals(2, db.reads.get());
+
+		cached.writeBatch(Arrays.asList(BatchAction.update("users", "all", "u1", JSON.make("age", 32))));
+		assertEquals(32, ((Number) getSourceField(cached.getItem("users", "all", "u1"), "age")).intValue());
+
+		cached.deleteItem("users", "all", "u1");
+		assertFalse(JSON.getBoolean(cached.getItem("users", "all", "u1"), "found"));
+
+		//index invalidation
+		cached.getItem("users", "all", "u2");
+		int reads = db.reads.get();
+		cached.invalidateIndex("users");
+		cached.getItem("users", "all", "u2");
+		assertEquals(reads + 1, db.reads.get());
+	}
+
+	@Test
+	public void testReadBeforeWriteIsNotStored(){
+		//a write happens while the (old) result is on its way back
+		db.duringRead = () -> cached.setItemData("users", "all", "u1", JSON.make("name", "John", "age", 99));
+		JSONObject old = cached.getItem("users", "all", "u1");
+		assertEquals(30, ((Number) getSourceField(old, "age")).intValue());
+		assertEquals(99, ((Number) getSourceField(cached.getItem("users", "all", "u1"), "age")).intValue());
+		assertEquals(1, ((Number) cached.getStatistics().get("staleRejected")).intValue());
+	}
+
+	@Test
+	public void testGetItems(){
+		cached.getItem("users", "all", "u1");
+		Map<String, JSONObject> items = cached.getItems("users", "all", Arrays.asList("u1", "u2", "u1", "u3"), null);
+		assertEquals("[u1, u2, u3]", items.keySet().toString());
+		assertEquals("Jane", getSourceField(items.get("u2"), "name"));
+		assertFalse(JSON.getBoolean(items.get("u3"), "found"));
+		//u1 came from cache, u2 and u3 from database
+		assertEquals(3, db.reads.get());
+		cached.getItems("users", "all", Arrays.asList("u1", "u2"), null);
+		assertEquals(3, db.reads.get());
+	}
+}
@@ -0,0 +1,147 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.b07z.sepia.server.core.database.BatchAction;
+import net.b07z.sepia.server.core.database.Elasticsearch;
+import net.b07z.sepia.server.core.tools.JSON;
+import tools.HttpStubServer;
+
+public class ElasticsearchTest {
+
+	private HttpStubServer server;
+	private Elasticsearch es;
+
+	@Before
+	public void setup() throws Exception {
+		server = new HttpStubServer();
+		es = new Elasticsearch(server.getUrl());
+	}
+
+	@After
+	public void cleanup(){
+		server.close();
+	}
+
+	private static JSONObject getItem(JSONObject result, int i){
+		return (JSONObject) JSON.getJArray(result, "items").get(i);
+	}
+
+	@Test
+	public void testBulkWrite(){
+		server.on("/_bulk", req -> "{\"took\":3,\"errors\":true,\"items\":["
+				+ "{\"index\":{\"_id\":\"u1\",\"status\":201}},"
+				+ "{\"update\":{\"_id\":\"u2\",\"status\":400,\"error\":{\"type\":\"mapper_parsing_exception\"}}},"
+				+ "{\"delete\":{\"_id\":\"u3\",\"status\":404,\"result\":\"not_found\"}}"
+				+ "]}");
+		List<BatchAction> actions = Arrays.asList(
+			BatchAction.index("users", "all", "u1", JSON.make("name", "line\nbreak")),
+			BatchAction.update("users", "all", "u2", JSON.make("age", 30)),
+			BatchAction.delete("users", "all", "u3")
+		);
+		JSONObject result = es.writeBulk(actions);
+		assertEquals(1, JSON.getIntegerOrDefault(result, "code", -1));
+		assertEquals(1, JSON.getIntegerOrDefault(result, "errors", -1));
+		assertEquals(0, JSON.getIntegerOrDefault(getItem(result, 0), "code", -1));
+		assertEquals("u1", getItem(result, 0).get("_id"));
+		assertEquals(1, JSON.getIntegerOrDefault(getItem(result, 1), "code", -1));
+		assertTrue(getItem(result, 1).get("error").toString().contains("mapper_parsing_exception"));
+		//delete of missing doc counts as success
+		assertEquals(0, JSON.getIntegerOrDefault(getItem(result, 2), "code", -1));
+
+		//NDJSON body: meta + source for index and update, only meta for delete, one line each
+		assertEquals(1, server.requests.size());
+		String[] lines = server.requests.get(0).body.split("\n");
+		assertEquals(5, lines.length);
+		JSONObject meta = JSON.getJObject(JSON.parseStringOrFail(lines[0]), "index");
+		assertEquals("users", meta.get("_index"));
+		assertEquals("u1", meta.get("_id"));
+		assertEquals("line\nbreak", JSON.parseStringOrFail(lines[1]).get("name"));
+		JSONObject updateBody = JSON.parseStringOrFail(lines[3]);
+		assertEquals(Boolean.TRUE, updateBody.get("doc_as_upsert"));
+		assertEquals(30, ((Number) JSON.getJObject(updateBody, "doc").get("age")).intValue());
+		assertTrue(JSON.parseStringOrFail(lines[4]).containsKey("delete"));
+	}
+
+	@Test
+	public void testBulkWriteRequestFailure(){
+		//wrong number of items (or failed request) fails all actions
+		server.on("/_bulk", req -> "{\"errors\":false,\"items\":[{\"index\":{\"_id\":\"u1\",\"status\":201}}]}");
+		JSONObject result = es.writeBulk(Arrays.asList(
+			BatchAction.index("users", "all", "u1", JSON.make("n", 1)),
+			BatchAction.index("users", "all", "u2", JSON.make("n", 2))
+		));
+		assertEquals(1, JSON.getIntegerOrDefault(result, "code", -1));
+		assertEquals(2, JSON.getIntegerOrDefault(result, "errors", -1));
+		JSONArray items = JSON.getJArray(result, "items");
+		assertEquals("u2", ((JSONObject) items.get(1)).get("_id"));
+
+		//empty list needs no request
+		server.requests.clear();
+		assertEquals(0, JSON.getIntegerOrDefault(es.writeBulk(Arrays.asList()), "code", -1));
+		assertEquals(0, server.requests.size());
+	}
+
+	@Test
+	public void testMultiGet(){
+		//answer each requested id, "u3" is unknown
+		server.on("/users/all/_mget", req -> {
+			JSONArray docs = new JSONArray();
+			for (Object id : JSON.getJArray(JSON.parseStringOrFail(req.body), "ids")){
+				if (id.equals("u3")){
+					JSON.add(docs, JSON.make("_index", "users", "_id", id, "found", false));
+				}else{
+					JSON.add(docs, JSON.make("_index", "users", "_id", id, "found", true, "_source", JSON.make("name", "name-" + id)));
+				}
+			}
+			return JSON.make("docs", docs).toJSONString();
+		});
+		int chunkSize = Elasticsearch.mgetChunkSize;
+		try{
+			//duplicates are requested once, result has every id in request order
+			Map<String, JSONObject> docs = es.getDocuments("users", "all", Arrays.asList("u2", "u1", "u2", "u3", "u4"), null);
+			assertEquals("[u2, u1, u3, u4]", new ArrayList<>(docs.keySet()).toString());
+			assertEquals(Boolean.TRUE, docs.get("u1").get("found"));
+			assertEquals("name-u1", JSON.getJObject(docs.get("u1"), "_source").get("name"));
+			assertEquals(Boolean.FALSE, docs.get("u3").get("found"));
+			assertEquals(1, server.requests.size());
+			assertEquals(4, JSON.getJArray(JSON.parseStringOrFail(server.requests.get(0).body), "ids").size());
+
+			//large id sets are split into chunks
+			server.requests.clear();
+			Elasticsearch.mgetChunkSize = 2;
+			docs = es.getDocuments("users", "all", Arrays.asList("a", "b", "c", "d", "e"), Arrays.asList("name"));
+			assertEquals(3, server.requests.size());
+			assertEquals(5, docs.size());
+			for (JSONObject doc : docs.values()){
+				assertEquals(Boolean.TRUE, doc.get("found"));
+			}
+			assertEquals("name-e", JSON.getJObject(docs.get("e"), "_source").get("name"));
+			assertTrue(server.requests.get(0).path.contains("_source_includes=name"));
+		}finally{
+			Elasticsearch.mgetChunkSize = chunkSize;
+		}
+	}
+
+	@Test
+	public void testMultiGetFailure(){
+		server.on("/users/all/_mget", req -> "{\"error\":{\"type\":\"index_not_found_exception\"},\"status\":404}");
+		Map<String, JSONObject> docs = es.getDocuments("users", "all", Arrays.asList("u1", "u2"), null);
+		assertEquals(2, docs.size());
+		assertEquals(Boolean.FALSE, docs.get("u1").get("found"));
+		assertEquals(Boolean.FALSE, docs.get("u2").get("found"));
+		assertTrue(docs.get("u2").containsKey("error"));
+	}
+}
@@ -0,0 +1,133 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.b07z.sepia.server.core.database.InMemoryDatabase;
+import net.b07z.sepia.server.core.tools.Connectors;
+import net.b07z.sepia.server.core.tools.EsQueryBuilder;
+import net.b07z.sepia.server.core.tools.EsQueryBuilder.QueryElement;
+import net.b07z.sepia.server.core.tools.JSON;
+
+public class InMemoryDatabaseTest {
+
+	private InMemoryDatabase db;
+
+	@Before
+	public void setup(){
+		db = new InMemoryDatabase();
+		db.setItemData("users", "all", "u1", JSON.make("name", "John Doe", "age", 30, "lang", "en",
+				"lists", JSON.makeArray(JSON.make("title", "Shopping", "user", "u1"))));
+		db.setItemData("users", "all", "u2", JSON.make("name", "Jane Doe", "age", 25, "lang", "de",
+				"lists", JSON.makeArray(JSON.make("title", "Todo", "user", "u2"), JSON.make("title", "Shopping", "user", "x"))));
+		db.setItemData("users", "all", "u3", JSON.make("name", "Max Mustermann", "age", 40, "lang", "de"));
+	}
+
+	private static List<String> getIds(JSONObject result){
+		assertTrue(Connectors.httpSuccess(result));
+		List<String> ids = new ArrayList<>();
+		for (Object o : JSON.getJArray(result, new String[]{"hits", "hits"})){
+			ids.add((String) ((JSONObject) o).get("_id"));
+		}
+		return ids;
+	}
+
+	@Test
+	public void testGetAndUpdate(){
+		JSONObject item = db.getItem("users", "all", "u1");
+		assertTrue(Connectors.httpSuccess(item));
+		assertTrue(JSON.getBoolean(item, "found"));
+		assertEquals("John Doe", JSON.getJObject(item, "_source").get("name"));
+
+		assertEquals(0, db.updateItemData("users", "all", "u1", JSON.make("age", 31)));
+		item = db.getItemFiltered("users", "all", "u1", new String[]{"age"});
+		assertEquals("{\"age\":31}", JSON.getJObject(item, "_source").toJSONString());
+		assertEquals(2l, item.get("_version"));
+
+		//"doc" is a normal field unless the body is wrapped with "doc_as_upsert" (same as Elasticsearch)
+		assertEquals(0, db.updateItemData("users", "all", "u1", JSON.make("doc", "notes")));
+		assertEquals(0, db.updateItemData("users", "all", "u1", JSON.make("doc", JSON.make("age", 32), "doc_as_upsert", true)));
+		item = db.getItemFiltered("users", "all", "u1", new String[]{"age", "doc"});
+		assertEquals("notes", JSON.getJObject(item, "_source").get("doc"));
+		assertEquals(32, ((Number) JSON.getJObject(item, "_source").get("age")).intValue());
+
+		assertFalse(Connectors.httpSuccess(db.getItem("users", "all", "missing")));
+		Map<String, JSONObject> items = db.getItems("users", "all", Arrays.asList("u2", "missing"), null);
+		assertTrue(JSON.getBoolean(items.get("u2"), "found"));
+		assertFalse(JSON.getBoolean(items.get("missing"), "found"));
+	}
+
+	@Test
+	public void testSearch(){
+		assertEquals(Arrays.asList("u1", "u2"), getIds(db.searchSimple("users/all/", "doe")));
+		assertEquals(Arrays.asList("u3"), getIds(db.searchSimple("users/", "name:max")));
+		assertEquals(3, getIds(db.searchSimple("users/", "*")).size());
+
+		List<QueryElement> must = new ArrayList<>();
+		must.add(new QueryElement("lang", "de"));
+		assertEquals(Arrays.asList("u2", "u3"), getIds(db.searchByJson("users/all/", EsQueryBuilder.getBoolMustMatch(must).toJSONString())));
+
+		List<QueryElement> mustNot = new ArrayList<>();
+		mustNot.add(new QueryElement("name", "max"));
+		assertEquals(Arrays.asList("u2"), getIds(db.searchByJson("users/all/", EsQueryBuilder.getBoolMustAndMustNotMatch(must, mustNot).toJSONString())));
+
+		List<QueryElement> range = new ArrayList<>();
+		range.add(new QueryElement("age", JSON.make("gte", 30)));
+		assertEquals(Arrays.asList("u3"), getIds(db.searchByJson("users/all/", EsQueryBuilder.getBoolMustAndRangeMatch(must, range).toJSONString())));
+
+		//nested: both conditions have to match the same list
+		List<QueryElement> nested = new ArrayList<>();
+		nested.add(new QueryElement("lists.title", "shopping"));
+		nested.add(new QueryElement("lists.user", "u2"));
+		assertTrue(getIds(db.searchByJson("users/all/", EsQueryBuilder.getNestedBoolMustMatch("lists", nested).toJSONString())).isEmpty());
+		nested.set(1, new QueryElement("lists.user", "u1"));
+		assertEquals(Arrays.asList("u1"), getIds(db.searchByJson("users/all/", EsQueryBuilder.getNestedBoolMustMatch("lists", nested).toJSONString())));
+
+		//sort, size and source filter
+		JSONObject body = JSON.make("query", JSON.make("match_all", new JSONObject()),
+				"sort", JSON.makeArray(JSON.make("age", JSON.make("order", "desc"))), "size", 2, "_source", JSON.makeArray("age"));
+		JSONObject result = db.searchByJson("users/", body.toJSONString());
+		assertEquals(Arrays.asList("u3", "u1"), getIds(result));
+		JSONArray hits = JSON.getJArray(result, new String[]{"hits", "hits"});
+		assertEquals("{\"age\":40}", ((JSONObject) ((JSONObject) hits.get(0)).get("_source")).toJSONString());
+
+		//term and index update
+		db.updateItemData("users", "all", "u3", JSON.make("lang", "en"));
+		assertEquals(Arrays.asList("u1", "u3"), getIds(db.searchByJson("users/", JSON.make("query", JSON.make("term", JSON.make("lang", "en"))).toJSONString())));
+	}
+
+	@Test
+	public void testDelete() throws Exception {
+		JSONObject result = db.deleteByJson("users/all/", JSON.make("query", JSON.make("match", JSON.make("lang", "de"))).toJSONString());
+		assertEquals(2l, result.get("deleted"));
+		assertEquals(Arrays.asList("u1"), getIds(db.searchSimple("users/", "*")));
+		assertEquals(0, db.deleteItem("users", "all", "u1"));
+		assertEquals(1, db.deleteItem("users", "all", "u1"));
+		assertTrue(getIds(db.searchSimple("users/", "*")).isEmpty());
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		File file = File.createTempFile("in-memory-db", ".ndjson");
+		try{
+			assertEquals(3, db.saveSnapshot(file.getPath()));
+			InMemoryDatabase restored = new InMemoryDatabase();
+			assertEquals(3, restored.loadSnapshot(file.getPath()));
+			assertEquals(Arrays.asList("u2", "u3"), getIds(restored.searchSimple("users/all/", "lang:de")));
+		}finally{
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.b07z.sepia.server.core.database.LogDatabase;
+import net.b07z.sepia.server.core.tools.Connectors;
+import net.b07z.sepia.server.core.tools.JSON;
+
+public class LogDatabaseTest {
+
+	private File dir;
+
+	@Before
+	public void setup() throws Exception {
+		dir = Files.createTempDirectory("log-db").toFile();
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		Files.walk(dir.toPath()).sorted(Comparator.reverseOrder()).map(p -> p.toFile()).forEach(File::delete);
+	}
+
+	private static List<String> getIds(JSONObject result){
+		assertTrue(Connectors.httpSuccess(result));
+		List<String> ids = new ArrayList<>();
+		for (Object o : JSON.getJArray(result, new String[]{"hits", "hits"})){
+			ids.add((String) ((JSONObject) o).get("_id"));
+		}
+		return ids;
+	}
+
+	private static File getLastSegment(File dir){
+		File[] segments = dir.listFiles((d, name) -> name.endsWith(".log"));
+		Arrays.sort(segments);
+		return segments[segments.length - 1];
+	}
+
+	@Test
+	public void testReadWriteAndReopen() throws Exception {
+		try (LogDatabase db = new LogDatabase(dir.getPath())){
+			assertEquals(0, db.setItemData("users", "all", "u1", JSON.make("name", "John Doe", "age", 30)));
+			assertEquals(0, db.setItemData("users", "all", "u2", JSON.make("name", "Jane Doe", "age", 25)));
+			assertEquals(0, db.updateItemData("users", "all", "u1", JSON.make("age", 31)));
+
+			JSONObject item = db.getItem("users", "all", "u1");
+			assertTrue(JSON.getBoolean(item, "found"));
+			assertEquals(2l, item.get("_version"));
+			assertEquals("John Doe", JSON.getJObject(item, "_source").get("name"));
+			assertEquals("{\"age\":31}", JSON.getJObject(db.getItemFiltered("users", "all", "u1", new String[]{"age"}), "_source").toJSONString());
+			assertFalse(Connectors.httpSuccess(db.getItem("users", "all", "missing")));
+
+			assertEquals(Arrays.asList("u1"), getIds(db.searchSimple("users/all/", "john")));
+			assertEquals(0, db.deleteItem("users", "all", "u2"));
+			assertEquals(1, db.deleteItem("users", "all", "u2"));
+		}
+		try (LogDatabase db = new LogDatabase(dir.getPath())){
+			assertEquals(0l, JSON.getLongOrDefault(db.getStatistics(), "recoveredRecords", -1));		//clean: no replay
+			assertEquals(31l, JSON.getJObject(db.getItem("users", "all", "u1"), "_source").get("age"));
+			assertFalse(JSON.getBoolean(db.getItem("users", "all", "u2"), "found"));
+		}
+	}
+
+	@Test
+	public void testCrashRecovery() throws Exception {
+		LogDatabase crashed = new LogDatabase(dir.getPath());
+		for (int i = 0; i < 2000; i++){
+			crashed.setItemData("items", "all", "i" + i, JSON.make("n", i));		//resizes index
+		}
+		crashed.deleteItem("items", "all", "i0");
+		crashed.updateItemData("items", "all", "i1", JSON.make("n", -1));
+		//no close (index not clean) and a torn record at the end
+		try (RandomAccessFile f = new RandomAccessFile(getLastSegment(dir), "rw")){
+			f.seek(f.length());
+			f.write(new byte[]{ 0, 0, 0, 100, 1, 2, 3 });
+		}
+		try (LogDatabase db = new LogDatabase(dir.getPath())){
+			JSONObject stats = db.getStatistics();
+			assertEquals(2002l, JSON.getLongOrDefault(stats, "recoveredRecords", -1));
+			assertEquals(7l, JSON.getLongOrDefault(stats, "truncatedBytes", -1));
+			assertEquals(1999, JSON.getIntegerOrDefault(stats, "documents", -1));
+			assertFalse(JSON.getBoolean(db.getItem("items", "all", "i0"), "found"));
+			assertEquals(-1l, JSON.getJObject(db.getItem("items", "all", "i1"), "_source").get("n"));
+			assertEquals(1999l, JSON.getJObject(db.getItem("items", "all", "i1999"), "_source").get("n"));
+			//writes after recovery
+			assertEquals(0, db.setItemData("items", "all", "i0", JSON.make("n", 0)));
+			assertTrue(JSON.getBoolean(db.getItem("items", "all", "i0"), "found"));
+		}
+		//old index files of resizes and of the crashed session are gone
+		assertEquals(1, dir.listFiles((d, name) -> name.endsWith(".hash")).length);
+	}
+
+	@Test
+	public void testCompactionAndSearch() throws Exception {
+		try (LogDatabase db = new LogDatabase(dir.getPath())){
+			for (int round = 0; round < 5; round++){
+				for (int i = 0; i < 100; i++){
+					db.setItemData("items", (i % 2 == 0)? "even" : "odd", "i" + i, JSON.make("n", i, "round", round));
+				}
+			}
+			db.deleteAnything("items/odd");
+			long freed = db.compact();
+			assertTrue(freed > 0);
+			JSONObject stats = db.getStatistics();
+			assertEquals(50, JSON.getIntegerOrDefault(stats, "documents", -1));
+			assertEquals(0.0, JSON.getDoubleOrDefault(stats, "garbageRatio", -1), 0.0);
+			assertEquals(4l, JSON.getJObject(db.getItem("items", "even", "i42"), "_source").get("round"));
+			assertEquals(5l, db.getItem("items", "even", "i42").get("_version"));
+
+			JSONObject body = JSON.make("query", JSON.make("range", JSON.make("n", JSON.make("lt", 6))),
+					"sort", JSON.makeArray(JSON.make("n", JSON.make("order", "desc"))));
+			assertEquals(Arrays.asList("i4", "i2", "i0"), getIds(db.searchByJson("items/", body.toJSONString())));
+			JSONObject deleted = db.deleteByJson("items/even/", body.toJSONString());
+			assertEquals(3l, deleted.get("deleted"));
+			db.setItemData("items", "even", "new", JSON.make("n", 1000));
+		}
+		try (LogDatabase db = new LogDatabase(dir.getPath())){
+			assertEquals(48, JSON.getIntegerOrDefault(db.getStatistics(), "documents", -1));
+			assertEquals(1000l, JSON.getJObject(db.getItem("items", "even", "new"), "_source").get("n"));
+		}
+	}
+}
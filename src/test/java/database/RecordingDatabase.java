@@ -0,0 +1,48 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.simple.JSONObject;
+
+import net.b07z.sepia.server.core.database.BatchAction;
+import net.b07z.sepia.server.core.database.InMemoryDatabase;
+
+/**
+ * In-memory database that remembers all batches written via {@link #writeBatch(List)} and can simulate a failing database.
+ */
+public class RecordingDatabase extends InMemoryDatabase {
+
+	private final List<List<BatchAction>> batches = new ArrayList<>();
+	public volatile boolean fail = false;		//throw on every batch
+
+	@Override
+	public JSONObject writeBatch(List<BatchAction> actions){
+		synchronized (batches){
+			batches.add(new ArrayList<>(actions));
+		}
+		if (fail){
+			throw new RuntimeException("database down");
+		}
+		return super.writeBatch(actions);
+	}
+
+	/**
+	 * Copy of all batches written so far.
+	 */
+	public List<List<BatchAction>> getBatches(){
+		synchronized (batches){
+			return new ArrayList<>(batches);
+		}
+	}
+	/**
+	 * Number of actions of each batch, e.g. [3, 3, 1].
+	 */
+	public List<Integer> getBatchSizes(){
+		List<Integer> sizes = new ArrayList<>();
+		for (List<BatchAction> batch : getBatches()){
+			sizes.add(batch.size());
+		}
+		return sizes;
+	}
+}
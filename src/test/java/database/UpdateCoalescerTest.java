@@ -0,0 +1,89 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+import net.b07z.sepia.server.core.database.InMemoryDatabase;
+import net.b07z.sepia.server.core.database.UpdateCoalescer;
+import net.b07z.sepia.server.core.tools.JSON;
+
+public class UpdateCoalescerTest {
+
+	private static JSONObject getSource(InMemoryDatabase db, String id){
+		return JSON.getJObject(db.getItem("users", "all", id), "_source");
+	}
+
+	@Test
+	public void testUpdatesAreMerged() throws Exception {
+		RecordingDatabase db = new RecordingDatabase();
+		try (UpdateCoalescer uc = new UpdateCoalescer(db, 60000, 1000)){
+			CompletableFuture<Integer> f1 = uc.update("users", "all", "u1", JSON.make("a", 1, "nested", JSON.make("x", 1)));
+			JSONObject data = JSON.make("b", 2, "nested", JSON.make("y", 2));
+			CompletableFuture<Integer> f2 = uc.update("users", "all", "u1", data);
+			JSON.put(data, "b", 99);		//data is copied
+			CompletableFuture<Integer> f3 = uc.update("users", "all", "u2", JSON.make("a", 3));
+			uc.flush();
+
+			assertEquals(0, (int) f1.get(5, TimeUnit.SECONDS));
+			assertEquals(0, (int) f2.get(5, TimeUnit.SECONDS));
+			assertEquals(0, (int) f3.get(5, TimeUnit.SECONDS));
+			assertEquals(1, db.getBatches().size());
+			assertEquals(2, db.getBatches().get(0).size());
+
+			JSONObject u1 = getSource(db, "u1");
+			assertEquals(1, ((Number) u1.get("a")).intValue());
+			assertEquals(2, ((Number) u1.get("b")).intValue());
+			assertEquals(1, ((Number) JSON.getJObject(u1, "nested").get("x")).intValue());
+			assertEquals(2, ((Number) JSON.getJObject(u1, "nested").get("y")).intValue());
+			assertEquals(1, ((Number) uc.getStatistics().get("merged")).intValue());
+			assertEquals(2, ((Number) uc.getStatistics().get("written")).intValue());
+		}
+	}
+
+	@Test
+	public void testCustomUpdatesKeepOrder() throws Exception {
+		RecordingDatabase db = new RecordingDatabase();
+		try (UpdateCoalescer uc = new UpdateCoalescer(db, 60000, 1000)){
+			uc.update("users", "all", "u1", JSON.make("a", 1));
+			uc.update("users", "all", "u1", JSON.make("doc", JSON.make("a", 2), "doc_as_upsert", true));
+			uc.update("users", "all", "u1", JSON.make("a", 3));
+			uc.flush();
+			//the 'doc' update can't be merged and the last update must not be merged into the first
+			assertEquals(3, db.getBatches().get(0).size());
+			assertEquals(3, ((Number) getSource(db, "u1").get("a")).intValue());
+		}
+	}
+
+	@Test
+	public void testWindowAndClose() throws Exception {
+		RecordingDatabase db = new RecordingDatabase();
+		UpdateCoalescer uc = new UpdateCoalescer(db, 20, 1000);
+		//written by background thread after window
+		assertEquals(0, (int) uc.update("users", "all", "u1", JSON.make("a", 1)).get(5, TimeUnit.SECONDS));
+		assertEquals(1, ((Number) getSource(db, "u1").get("a")).intValue());
+
+		uc.close();
+		//after close updates are written directly
+		CompletableFuture<Integer> f = uc.update("users", "all", "u1", JSON.make("a", 2));
+		assertEquals(0, (int) f.getNow(-1));
+		assertEquals(2, ((Number) getSource(db, "u1").get("a")).intValue());
+		assertEquals(1, db.getBatches().size());
+	}
+
+	@Test
+	public void testFailedWrite() throws Exception {
+		RecordingDatabase db = new RecordingDatabase();
+		db.fail = true;
+		try (UpdateCoalescer uc = new UpdateCoalescer(db, 60000, 1000)){
+			CompletableFuture<Integer> f = uc.update("users", "all", "u1", JSON.make("a", 1));
+			uc.flush();
+			assertEquals(1, (int) f.get(5, TimeUnit.SECONDS));
+			assertEquals(1, ((Number) uc.getStatistics().get("failed")).intValue());
+		}
+	}
+}
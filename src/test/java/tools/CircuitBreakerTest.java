@@ -0,0 +1,164 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.b07z.sepia.server.core.tools.CircuitBreaker;
+import net.b07z.sepia.server.core.tools.CircuitBreaker.State;
+import net.b07z.sepia.server.core.tools.RetryBudget;
+
+public class CircuitBreakerTest {
+
+	private int windowSize, minCalls, halfOpenTrialCalls;
+	private long openDurationMs, slowCallThresholdMs;
+	private double depositPerRequest, maxTokens;
+
+	@Before
+	public void setup(){
+		//remember defaults
+		windowSize = CircuitBreaker.windowSize;
+		minCalls = CircuitBreaker.minCalls;
+		halfOpenTrialCalls = CircuitBreaker.halfOpenTrialCalls;
+		openDurationMs = CircuitBreaker.openDurationMs;
+		slowCallThresholdMs = CircuitBreaker.slowCallThresholdMs;
+		depositPerRequest = RetryBudget.depositPerRequest;
+		maxTokens = RetryBudget.maxTokens;
+
+		CircuitBreaker.windowSize = 10;
+		CircuitBreaker.minCalls = 4;
+		CircuitBreaker.halfOpenTrialCalls = 2;
+		CircuitBreaker.openDurationMs = 500;
+		CircuitBreaker.slowCallThresholdMs = 10000;
+		CircuitBreaker.resetAll();
+		RetryBudget.resetAll();
+	}
+
+	@After
+	public void cleanup(){
+		CircuitBreaker.windowSize = windowSize;
+		CircuitBreaker.minCalls = minCalls;
+		CircuitBreaker.halfOpenTrialCalls = halfOpenTrialCalls;
+		CircuitBreaker.openDurationMs = openDurationMs;
+		CircuitBreaker.slowCallThresholdMs = slowCallThresholdMs;
+		RetryBudget.depositPerRequest = depositPerRequest;
+		RetryBudget.maxTokens = maxTokens;
+		CircuitBreaker.resetAll();
+		RetryBudget.resetAll();
+	}
+
+	@Test
+	public void testBreakerOpensAndCloses() throws Exception {
+		List<String> changes = new ArrayList<>();
+		CircuitBreaker.StateListener listener = (host, from, to) -> changes.add(from + ">" + to);
+		CircuitBreaker.addStateListener(listener);
+		try{
+			CircuitBreaker cb = CircuitBreaker.forHost(CircuitBreaker.getHostKey("Example.com", 9200));
+			assertEquals("example.com:9200", cb.getHost());
+			assertTrue(cb == CircuitBreaker.forHost("example.com:9200"));
+
+			//not enough calls yet
+			for (int i = 0; i < 3; i++){
+				assertTrue(cb.tryAcquire());
+				cb.onResult(true, 5);
+			}
+			assertEquals(State.closed, cb.getState());
+
+			//4th failure reaches minCalls and opens the breaker
+			assertTrue(cb.tryAcquire());
+			cb.onResult(true, 5);
+			assertEquals(State.open, cb.getState());
+			assertFalse(cb.tryAcquire());
+
+			//after open duration only 'halfOpenTrialCalls' trial calls are allowed
+			Thread.sleep(CircuitBreaker.openDurationMs + 50);
+			assertTrue(cb.tryAcquire());
+			assertEquals(State.half_open, cb.getState());
+			assertTrue(cb.tryAcquire());
+			assertFalse(cb.tryAcquire());
+
+			//cancelled call frees its slot
+			cb.onCancelled();
+			assertTrue(cb.tryAcquire());
+
+			//successful trials close it again
+			cb.onResult(false, 5);
+			cb.onResult(false, 5);
+			assertEquals(State.closed, cb.getState());
+			assertEquals("[closed>open, open>half_open, half_open>closed]", changes.toString());
+		}finally{
+			CircuitBreaker.removeStateListener(listener);
+		}
+	}
+
+	@Test
+	public void testFailedTrialReopensBreaker() throws Exception {
+		CircuitBreaker cb = CircuitBreaker.forHost("host-a");
+		for (int i = 0; i < 4; i++){
+			cb.tryAcquire();
+			cb.onResult(i % 2 == 0, 5);		//50% failures
+		}
+		assertEquals(State.open, cb.getState());
+		Thread.sleep(CircuitBreaker.openDurationMs + 50);
+		assertTrue(cb.tryAcquire());
+		cb.onResult(true, 5);
+		assertEquals(State.open, cb.getState());
+		assertFalse(cb.tryAcquire());
+
+		//other hosts are not affected
+		assertEquals(State.closed, CircuitBreaker.forHost("host-b").getState());
+		assertTrue(CircuitBreaker.forHost("host-b").tryAcquire());
+	}
+
+	@Test
+	public void testSlowCallsOpenBreaker(){
+		CircuitBreaker.slowCallThresholdMs = 100;
+		CircuitBreaker cb = CircuitBreaker.forHost("slow-host");
+		for (int i = 0; i < 4; i++){
+			cb.tryAcquire();
+			cb.onResult(false, 500);
+		}
+		assertEquals(State.open, cb.getState());
+	}
+
+	@Test
+	public void testRetryBudget(){
+		RetryBudget.maxTokens = 2;
+		RetryBudget.depositPerRequest = 0.5;
+		RetryBudget rb = RetryBudget.forHost("host-a");
+		assertTrue(rb.tryRetry());
+		assertTrue(rb.tryRetry());
+		assertFalse(rb.tryRetry());
+
+		//two requests earn one retry
+		rb.onRequest();
+		assertFalse(rb.tryRetry());
+		rb.onRequest();
+		assertTrue(rb.tryRetry());
+		assertFalse(rb.tryRetry());
+
+		//deposits are capped at maxTokens
+		for (int i = 0; i < 20; i++){
+			rb.onRequest();
+		}
+		assertEquals(2.0, ((Number) rb.getHostStatistics().get("tokens")).doubleValue(), 0.0001);
+		assertEquals(3, ((Number) rb.getHostStatistics().get("retries")).intValue());
+		assertEquals(3, ((Number) rb.getHostStatistics().get("rejectedRetries")).intValue());
+	}
+
+	@Test
+	public void testBackoff(){
+		for (int attempt = 1; attempt < 30; attempt++){
+			long backoff = RetryBudget.getBackoffMs(attempt);
+			long cap = Math.min(RetryBudget.maxBackoffMs, RetryBudget.baseBackoffMs << Math.min(attempt - 1, 20));
+			assertTrue(backoff >= 0 && backoff <= cap);
+		}
+	}
+}
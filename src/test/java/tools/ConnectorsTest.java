@@ -0,0 +1,201 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.b07z.sepia.server.core.tools.CircuitBreaker;
+import net.b07z.sepia.server.core.tools.Connectors;
+import net.b07z.sepia.server.core.tools.HedgedRequests;
+import net.b07z.sepia.server.core.tools.HttpCache;
+import net.b07z.sepia.server.core.tools.HttpClientPool;
+import net.b07z.sepia.server.core.tools.RetryBudget;
+
+public class ConnectorsTest {
+
+	private HttpStubServer server;
+	private int maxWorkerThreads;
+	private long defaultDelayMs;
+
+	private final CountDownLatch releaseBlocked = new CountDownLatch(1);
+	private final Semaphore blockedArrived = new Semaphore(0);
+	private final List<Thread> blockers = new ArrayList<>();
+
+	@Before
+	public void setup() throws Exception {
+		maxWorkerThreads = HttpClientPool.maxWorkerThreads;
+		defaultDelayMs = HedgedRequests.defaultDelayMs;
+		server = new HttpStubServer();
+		//blocks until test is done
+		server.on("/block", req -> {
+			blockedArrived.release();
+			try{
+				releaseBlocked.await(30, TimeUnit.SECONDS);
+			}catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return "{\"result\":\"blocked\"}";
+		});
+		CircuitBreaker.resetAll();
+		RetryBudget.resetAll();
+		HedgedRequests.resetAll();
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		releaseBlocked.countDown();
+		for (Thread t : blockers){
+			t.join(5000);
+		}
+		server.close();
+		HttpClientPool.maxWorkerThreads = maxWorkerThreads;
+		HedgedRequests.defaultDelayMs = defaultDelayMs;
+		HttpClientPool.reset();
+		CircuitBreaker.resetAll();
+		RetryBudget.resetAll();
+		HedgedRequests.resetAll();
+	}
+
+	/**
+	 * Occupy one worker thread with a hedged call (without hedge budget) to "/block" and wait until it arrived.
+	 * Blocking calls go to "localhost" so they don't share the hedge budget of the tested host "127.0.0.1".
+	 */
+	private void occupyWorkerThread() throws InterruptedException {
+		String blockUrl = server.getUrl().replace("127.0.0.1", "localhost") + "/block";
+		HedgedRequests blockHost = HedgedRequests.forHost(CircuitBreaker.getHostKey("localhost", Integer.parseInt(server.getUrl().replaceFirst(".*:", ""))));
+		while (blockHost.tryHedge()){
+			//no hedges for blocking calls
+		}
+		Thread t = new Thread(() -> Connectors.httpGETHedged(blockUrl, null));
+		t.start();
+		blockers.add(t);
+		assertTrue(blockedArrived.tryAcquire(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testHedgeRejectedAfterPrimaryFailed() throws Exception {
+		HttpClientPool.maxWorkerThreads = 2;
+		HttpClientPool.reset();
+		HedgedRequests.defaultDelayMs = 50;
+		server.on("/fail", 500, req -> {
+			try{
+				Thread.sleep(100);
+			}catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return "{\"error\":\"primary failed\"}";
+		});
+		occupyWorkerThread();
+
+		//headers are applied right before each attempt is submitted, so we can hold the hedge there until the primary failed
+		//and the primary's worker thread is busy again -> primary fails first, then the hedge is rejected
+		AtomicInteger headerCalls = new AtomicInteger();
+		Map<String, String> headers = new HashMap<String, String>(){
+			private static final long serialVersionUID = 1L;
+			@Override
+			public Set<Map.Entry<String, String>> entrySet(){
+				if (headerCalls.incrementAndGet() == 2){
+					try{
+						Thread.sleep(300);
+						occupyWorkerThread();
+					}catch (InterruptedException e){
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.entrySet();
+			}
+		};
+		headers.put("Accept", "application/json");
+
+		CompletableFuture<JSONObject> call = CompletableFuture.supplyAsync(() -> Connectors.httpGETHedged(server.getUrl() + "/fail", headers));
+		JSONObject res = call.get(10, TimeUnit.SECONDS);		//NOTE: did hang forever before
+		assertEquals(2, headerCalls.get());
+		assertFalse(Connectors.httpSuccess(res));
+		assertEquals("500", String.valueOf(res.get("code")));
+	}
+
+	@Test
+	public void testBatchWaitsForBusyWorkerThreads() throws Exception {
+		HttpClientPool.maxWorkerThreads = 2;
+		HttpClientPool.reset();
+		server.on("/slow", req -> {
+			try{
+				Thread.sleep(30);
+			}catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return "{\"result\":\"ok\"}";
+		});
+		//one of the two worker threads is busy with another call
+		occupyWorkerThread();
+
+		List<Connectors.Request> requests = new ArrayList<>();
+		for (int i = 0; i < 8; i++){
+			requests.add(Connectors.Request.get(server.getUrl() + "/slow?i=" + i, null));
+		}
+		//no concurrency limit, more requests than worker threads
+		List<JSONObject> results = Connectors.executeAll(requests, 0, 10000);
+		assertEquals(8, results.size());
+		for (JSONObject res : results){
+			assertTrue(res.toJSONString(), Connectors.httpSuccess(res));
+			assertEquals("ok", res.get("result"));
+		}
+	}
+
+	@Test
+	public void testResponseCharset(){
+		String text = "{\"text\":\"Grüße aus Köln\"}";
+		server.on("/no-content-type", 200, "", req -> text);
+		server.on("/no-charset", 200, "application/json", req -> text);
+		assertEquals("Grüße aus Köln", Connectors.httpGET(server.getUrl() + "/no-content-type").get("text"));
+		assertEquals("Grüße aus Köln", Connectors.httpGET(server.getUrl() + "/no-charset").get("text"));
+	}
+
+	@Test
+	public void testCacheHitsAreNotTracked(){
+		double maxTokens = RetryBudget.maxTokens;
+		double depositPerRequest = RetryBudget.depositPerRequest;
+		RetryBudget.maxTokens = 10;
+		RetryBudget.depositPerRequest = 1;
+		HttpCache.enable();
+		try{
+			server.on("/cached", req -> "{\"result\":\"ok\"}");
+			server.setHeader("/cached", "Cache-Control", "max-age=60");
+			String host = CircuitBreaker.getHostKey("127.0.0.1", Integer.parseInt(server.getUrl().replaceFirst(".*:", "")));
+			RetryBudget budget = RetryBudget.forHost(host);
+			while (budget.tryRetry()){
+				//start with empty budget
+			}
+			for (int i = 0; i < 3; i++){
+				assertEquals("ok", Connectors.httpGET(server.getUrl() + "/cached").get("result"));
+			}
+			assertEquals(1, server.requests.size());
+
+			//only the call that reached the server counts
+			assertEquals(1, ((Number) HedgedRequests.forHost(host).getHostStatistics().get("samples")).intValue());
+			assertEquals(1, ((Number) CircuitBreaker.forHost(host).getHostStatistics().get("totalCalls")).intValue());
+			assertTrue(budget.tryRetry());
+			assertFalse(budget.tryRetry());
+		}finally{
+			HttpCache.disable();
+			RetryBudget.maxTokens = maxTokens;
+			RetryBudget.depositPerRequest = depositPerRequest;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal local HTTP server that answers requests with canned JSON, so request building and response parsing
+ * (e.g. of Elasticsearch) can be tested without a real server.
+ */
+public class HttpStubServer implements AutoCloseable {
+
+	/**
+	 * A received request.
+	 */
+	public static class Request {
+		public final String method;
+		public final String path;		//including query
+		public final String body;
+		public Request(String method, String path, String body){
+			this.method = method;
+			this.path = path;
+			this.body = body;
+		}
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();		//handlers may block
+	private final Map<String, Function<Request, String>> handlers = new ConcurrentHashMap<>();
+	private final Map<String, Integer> statusCodes = new ConcurrentHashMap<>();
+	private final Map<String, String> contentTypes = new ConcurrentHashMap<>();		//"" for no header
+	private final Map<String, Map<String, String>> responseHeaders = new ConcurrentHashMap<>();
+	public final List<Request> requests = new CopyOnWriteArrayList<>();
+
+	public HttpStubServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			String body;
+			try (InputStream in = exchange.getRequestBody()){
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[4096];
+				int n;
+				while ((n = in.read(buffer)) != -1){
+					bytes.write(buffer, 0, n);
+				}
+				body = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+			}
+			String path = exchange.getRequestURI().getPath();
+			Request req = new Request(exchange.getRequestMethod(), exchange.getRequestURI().toString(), body);
+			requests.add(req);
+			Function<Request, String> handler = handlers.get(path);
+			byte[] response = ((handler != null)? handler.apply(req) : "{\"error\":\"no handler\",\"status\":404}").getBytes(StandardCharsets.UTF_8);
+			String contentType = contentTypes.getOrDefault(path, "application/json");
+			if (!contentType.isEmpty()){
+				exchange.getResponseHeaders().set("Content-Type", contentType);
+			}
+			responseHeaders.getOrDefault(path, new ConcurrentHashMap<>()).forEach((k, v) -> exchange.getResponseHeaders().set(k, v));
+			exchange.sendResponseHeaders((handler != null)? statusCodes.getOrDefault(path, 200) : 404, response.length);
+			try (OutputStream out = exchange.getResponseBody()){
+				out.write(response);
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Answer requests to path (without query) with the result of the handler.
+	 */
+	public void on(String path, Function<Request, String> handler){
+		on(path, 200, handler);
+	}
+	/**
+	 * Answer requests to path (without query) with the given HTTP status and the result of the handler.
+	 */
+	public void on(String path, int status, Function<Request, String> handler){
+		on(path, status, "application/json", handler);
+	}
+	/**
+	 * Answer requests to path (without query) with the given HTTP status, Content-Type ("" for no header) and the result of the handler.
+	 */
+	public void on(String path, int status, String contentType, Function<Request, String> handler){
+		statusCodes.put(path, status);
+		contentTypes.put(path, contentType);
+		handlers.put(path, handler);
+	}
+
+	/**
+	 * Add header to all responses of path (without query), e.g. "Cache-Control".
+	 */
+	public void setHeader(String path, String name, String value){
+		responseHeaders.computeIfAbsent(path, p -> new ConcurrentHashMap<>()).put(name, value);
+	}
+
+	/**
+	 * Base URL like "http://127.0.0.1:12345".
+	 */
+	public String getUrl(){
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@Override
+	public void close(){
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
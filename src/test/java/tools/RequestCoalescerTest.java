@@ -0,0 +1,112 @@
+package tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+import net.b07z.sepia.server.core.tools.JSON;
+import net.b07z.sepia.server.core.tools.RequestCoalescer;
+
+public class RequestCoalescerTest {
+
+	@Test
+	public void testConcurrentCallsShareOneResult() throws Exception {
+		RequestCoalescer<JSONObject> coalescer = new RequestCoalescer<>(10, JSON::deepCopy);
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch leaderStarted = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		int n = 5;
+		ExecutorService pool = Executors.newFixedThreadPool(n);
+		try{
+			List<Future<JSONObject>> results = new ArrayList<>();
+			results.add(pool.submit(() -> coalescer.execute("GET /a", () -> {
+				calls.incrementAndGet();
+				leaderStarted.countDown();
+				try{
+					release.await(5, TimeUnit.SECONDS);
+				}catch (InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+				return JSON.make("result", "a");
+			})));
+			assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+			for (int i = 1; i < n; i++){
+				results.add(pool.submit(() -> coalescer.execute("GET /a", () -> {
+					calls.incrementAndGet();
+					return JSON.make("result", "other");
+				})));
+			}
+			//wait until all followers joined the flight
+			long waitUntil = System.currentTimeMillis() + 5000;
+			while (((Number) coalescer.getStatistics().get("coalesced")).intValue() < (n - 1) && System.currentTimeMillis() < waitUntil){
+				Thread.sleep(5);
+			}
+			release.countDown();
+
+			List<JSONObject> jsons = new ArrayList<>();
+			for (Future<JSONObject> f : results){
+				jsons.add(f.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(1, calls.get());
+			for (JSONObject j : jsons){
+				assertEquals("a", j.get("result"));
+			}
+			//every caller got its own copy
+			JSON.put(jsons.get(0), "result", "changed");
+			for (int i = 1; i < n; i++){
+				assertEquals("a", jsons.get(i).get("result"));
+				assertFalse(jsons.get(i) == jsons.get(0));
+			}
+			assertEquals(1, ((Number) coalescer.getStatistics().get("executed")).intValue());
+			assertEquals(n - 1, ((Number) coalescer.getStatistics().get("coalesced")).intValue());
+			assertEquals(0, coalescer.getInFlightCount());
+		}finally{
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testSequentialCallsAndBypass(){
+		RequestCoalescer<JSONObject> coalescer = new RequestCoalescer<>(0, JSON::deepCopy);
+		AtomicInteger calls = new AtomicInteger();
+		JSONObject original = JSON.make("n", 1);
+		//no slots in flight table (and null key): executed without coalescing, original result is returned
+		assertTrue(coalescer.execute("k", () -> { calls.incrementAndGet(); return original; }) == original);
+		assertTrue(coalescer.execute(null, () -> { calls.incrementAndGet(); return original; }) == original);
+		assertEquals(2, calls.get());
+		assertEquals(2, ((Number) coalescer.getStatistics().get("bypassed")).intValue());
+
+		//leader without followers gets the original
+		RequestCoalescer<JSONObject> coalescer2 = new RequestCoalescer<>(10, JSON::deepCopy);
+		assertTrue(coalescer2.execute("k", () -> original) == original);
+		assertTrue(coalescer2.execute("k", () -> original) == original);
+		assertEquals(2, ((Number) coalescer2.getStatistics().get("executed")).intValue());
+	}
+
+	@Test
+	public void testExceptionIsPassedToCaller(){
+		RequestCoalescer<JSONObject> coalescer = new RequestCoalescer<>(10, JSON::deepCopy);
+		try{
+			coalescer.execute("k", () -> { throw new IllegalStateException("boom"); });
+			fail("expected exception");
+		}catch (IllegalStateException e){
+			assertEquals("boom", e.getMessage());
+		}
+		//key is free again
+		assertEquals(0, coalescer.getInFlightCount());
+		assertEquals("ok", coalescer.execute("k", () -> JSON.make("r", "ok")).get("r"));
+	}
+}
@@ -6,14 +6,21 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.io.File;
+import java.io.StringWriter;
 import java.util.Arrays;
 
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.junit.Test;
 
 import net.b07z.sepia.server.core.tools.ContentBuilder;
 import net.b07z.sepia.server.core.tools.Converters;
 import net.b07z.sepia.server.core.tools.JSON;
+import net.b07z.sepia.server.core.tools.JSONWriter;
+import net.b07z.sepia.server.core.tools.JsonPath;
+import net.b07z.sepia.server.core.tools.JsonPrettyPrinter;
+import net.b07z.sepia.server.core.tools.JsonTreeParser;
 import net.b07z.sepia.server.core.tools.Security;
 import net.b07z.sepia.server.core.tools.StringTools;
 
@@ -77,6 +84,88 @@ public class ToolsTest {
 		assertTrue(JSON.getJObject(startJson, ("other.level1.level2a").split("\\.")).containsKey("level3"));
 	}
 	
+	@Test
+	public void testJsonParserEngines() throws Exception {
+		String json = "{\"a\":1,\"b\":-2.5e3,\"c\":[true,null,\"x\\u00e4\\n\",{\"d\":{}}],\"e\":\"{:,}\",\"f\":9223372036854775807}";
+		JsonTreeParser.Engine engine = JsonTreeParser.engine;
+		try{
+			JsonTreeParser.engine = JsonTreeParser.Engine.json_simple;
+			JSONObject simple = JSON.parseStringOrFail(json);
+			JsonTreeParser.engine = JsonTreeParser.Engine.jackson;
+			JSONObject jackson = JSON.parseStringOrFail(json);
+			assertTrue(simple.equals(jackson));
+			assertTrue(jackson.get("a") instanceof Long);
+			assertTrue(jackson.get("b") instanceof Double);
+			assertThat(jackson.toJSONString(), is(simple.toJSONString()));
+			assertNull(JSON.parseString("{\"a\":1} x"));
+			assertNull(JSON.parseString("{\"a\":"));
+			
+			//sloppy input that json-simple accepts
+			String[] lenient = { "{\"a\":\"x\ny\tz\"}", "[1,,2]", "[,1,null,,]", "{\"a\":1,}", "{\"a\":[[],,[]],\"b\":[1,]}" };
+			for (String s : lenient){
+				JsonTreeParser.engine = JsonTreeParser.Engine.json_simple;
+				Object simpleValue = JsonTreeParser.parse(s);
+				JsonTreeParser.engine = JsonTreeParser.Engine.jackson;
+				Object jacksonValue = JsonTreeParser.parse(s);
+				assertThat(s, jacksonValue, is(simpleValue));
+			}
+			assertThat(JSON.parseStringToArrayOrFail("[1,,2]").toJSONString(), is("[1,2]"));
+		}finally{
+			JsonTreeParser.engine = engine;
+		}
+	}
+	
+	@Test
+	public void testJsonPath(){
+		JSONObject result = JSON.parseStringOrFail("{\"hits\":{\"total\":2,\"hits\":[{\"_id\":\"a\",\"_source\":{\"user_name\":{\"nick\":\"Bob\"},\"score\":1.5}},"
+				+ "{\"_id\":\"b\",\"_source\":{\"ok\":true,\"x.y\":7}}]}}");
+		assertTrue(JsonPath.compile("hits.hits") == JsonPath.compile("hits.hits"));		//cached
+		assertThat(JsonPath.compile("hits.hits").getJArray(result).size(), is(2));
+		assertThat(JsonPath.compile("hits.total").getLong(result, -1), is(2l));
+		assertThat(JsonPath.compile("hits.hits[0]._source.user_name.nick").getString(result, null), is("Bob"));
+		assertThat(JsonPath.compile("$.hits.hits[-1]._id").getString(result, null), is("b"));
+		assertThat(JsonPath.compile("hits.hits[0]._source.score").getDouble(result, 0), is(1.5));
+		assertTrue(JsonPath.compile("hits.hits[1]._source.ok").getBoolean(result, false));
+		assertThat(JsonPath.compile("hits.hits[1]._source['x.y']").getInt(result, 0), is(7));
+		assertThat(JsonPath.compile("hits.hits[*]._id").getAll(result).toString(), is("[a, b]"));
+		assertThat(JsonPath.compile("hits.hits[*]._source.ok").get(result), is(true));
+		assertThat(JsonPath.compile("hits.*").getAll(result).size(), is(2));
+		assertNull(JsonPath.compile("hits.hits[5]._id").get(result));
+		assertNull(JsonPath.compile("hits.total.nope").get(result));
+		assertThat(JsonPath.compile("hits.missing").getLong(result, -1), is(-1l));
+		
+		JsonPath.compile("hits.hits[0]._source.user_name.first").put(result, "Robert");
+		assertThat(JSON.getString(JsonPath.compile("hits.hits[0]._source.user_name").getJObject(result), "first"), is("Robert"));
+	}
+	
+	@Test
+	public void testJsonPrettyPrinter() throws Exception {
+		JSONObject jo = JSON.make("text", "a: {b}, [c] \"quoted\" / \u0001 \u2028 \u00e4", "n", 10, "d", 1.5, "nan", Double.NaN,
+				"list", JSON.makeArray(1, null, true, new JSONObject(), new JSONArray()), "obj", JSON.make("x", JSON.make("y", "z")));
+		//compact: same as json-simple
+		assertThat(JsonPrettyPrinter.COMPACT.toString(jo), is(jo.toJSONString()));
+		//pretty: string values are not touched and result is valid JSON
+		String pretty = JsonPrettyPrinter.DEFAULT.toString(jo);
+		assertTrue(pretty.contains("\"text\": \"a: {b}, [c] "));
+		assertTrue(pretty.contains("\n    \"list\": [\n        1,\n"));
+		assertTrue(pretty.contains("{},\n        []\n    ]"));
+		assertThat(JSON.parseStringOrFail(pretty), is(JSON.parseStringOrFail(jo.toJSONString())));
+		assertThat(new JsonPrettyPrinter("\t", "").toString(JSON.make("a", 1)), is("{\n\t\"a\":1\n}"));
+		//same format as old JSONWriter for simple objects
+		JSONObject simple = JSON.make("a", 1, "b", JSON.makeArray("x", "y"));
+		StringWriter sw = new JSONWriter();
+		simple.writeJSONString(sw);
+		assertThat(JSONWriter.getPrettyString(simple), is(sw.toString()));
+		
+		File file = File.createTempFile("pretty", ".json");
+		try{
+			assertTrue(JSON.writeJsonToFile(file.getPath(), jo, JsonPrettyPrinter.DEFAULT));
+			assertThat(JSON.readJsonFromFile(file.getPath()), is(JSON.parseStringOrFail(jo.toJSONString())));
+		}finally{
+			file.delete();
+		}
+	}
+	
 	@Test
 	public void testPrivateNetworkCheck() throws Exception{
 		boolean isPrivate;